@@ -0,0 +1,64 @@
+package xyz.asitanokibou.data.influxdb;
+
+import org.influxdb.dto.BoundParameterQuery;
+import org.openjdk.jmh.annotations.*;
+import xyz.asitanokibou.data.influxdb.benchmark.FixedResultClientFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InfluxDBTemplate.getBoundParameterQuery - #measurement# 替换和tz补充, 以及直接使用 PreparedInfluxQuery 的情况
+ * (与模板在同一个包下以访问包可见的方法)
+ * @author aimysaber@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BoundQueryBenchmark {
+
+    private static final String SINGLE_STATEMENT =
+            "SELECT mean(usage) FROM #measurement# WHERE host = $host AND time >= $start AND time < $end GROUP BY time(1m), region";
+    private static final String MULTI_STATEMENT =
+            "SELECT mean(usage) FROM #measurement# WHERE host = $host AND time >= $start GROUP BY time(1m);"
+                    + "SELECT max(load) FROM #measurement# WHERE host = $host AND time >= $start GROUP BY time(1m);"
+                    + "SELECT count(count) FROM #measurement# WHERE host = $host AND time >= $start";
+
+    private InfluxDBTemplate template;
+    private PreparedInfluxQuery prepared;
+    private Map<String, Object> args;
+
+    @Setup
+    public void setup() {
+        template = new InfluxDBTemplate(new InfluxDBClientPool(new FixedResultClientFactory()));
+        prepared = PreparedInfluxQuery.prepare(SINGLE_STATEMENT);
+        args = new HashMap<>();
+        args.put("host", "host-1");
+        args.put("start", "2020-01-01T00:00:00Z");
+        args.put("end", "2020-01-02T00:00:00Z");
+    }
+
+    @Benchmark
+    public BoundParameterQuery singleStatement() {
+        return template.getBoundParameterQuery("telegraf", "cpu", SINGLE_STATEMENT, args, true);
+    }
+
+    @Benchmark
+    public BoundParameterQuery multiStatement() {
+        return template.getBoundParameterQuery("telegraf", "cpu", MULTI_STATEMENT, args, true);
+    }
+
+    @Benchmark
+    public BoundParameterQuery withoutTimezone() {
+        return template.getBoundParameterQuery("telegraf", "cpu", SINGLE_STATEMENT, args, false);
+    }
+
+    @Benchmark
+    public BoundParameterQuery preparedSingleStatement() {
+        return prepared.bind("telegraf", "cpu", args, " tz('Asia/Shanghai') ");
+    }
+}
@@ -0,0 +1,62 @@
+package xyz.asitanokibou.data.influxdb;
+
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.BoundParameterQuery;
+import org.influxdb.dto.Point;
+import org.influxdb.dto.QueryResult;
+import org.openjdk.jmh.annotations.*;
+import xyz.asitanokibou.data.influxdb.benchmark.FixedResultClientFactory;
+import xyz.asitanokibou.data.influxdb.benchmark.LegacyReflectiveProxy;
+import xyz.asitanokibou.data.influxdb.benchmark.NoopInfluxDB;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接池client包装层的单次调用开销: 原jdk动态代理 与 PooledInfluxDB 的对比(被包装的client什么都不做)
+ * @author aimysaber@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClientWrapperBenchmark {
+
+    private InfluxDB reflectiveProxy;
+    private InfluxDB pooledClient;
+
+    private BoundParameterQuery query;
+    private Point point;
+
+    @Setup
+    public void setup() {
+        NoopInfluxDB target = new NoopInfluxDB();
+        reflectiveProxy = LegacyReflectiveProxy.newProxy(target);
+        pooledClient = new PooledInfluxDB(target, new InfluxDBClientPool(new FixedResultClientFactory()), false);
+
+        query = BoundParameterQuery.QueryBuilder.newQuery("SELECT usage FROM cpu WHERE host = $host")
+                .forDatabase("telegraf").bind("host", "host-1").create();
+        point = Point.measurement("cpu").addField("usage", 1.0).build();
+    }
+
+    @Benchmark
+    public QueryResult queryReflectiveProxy() {
+        return reflectiveProxy.query(query, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    public QueryResult queryPooledClient() {
+        return pooledClient.query(query, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    public void writeReflectiveProxy() {
+        reflectiveProxy.write("telegraf", "autogen", point);
+    }
+
+    @Benchmark
+    public void writePooledClient() {
+        pooledClient.write("telegraf", "autogen", point);
+    }
+}
@@ -0,0 +1,64 @@
+package xyz.asitanokibou.data.influxdb;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 时间列转换 - RFC3339字符串 / Long / Double 转为 epoch 或 Instant,
+ * rfc3339Formatter 为原来基于 DateTimeFormatter 的解析, 作为对比
+ * @author aimysaber@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimeConversionBenchmark {
+
+    private static final DateTimeFormatter RFC3339_FORMATTER = new DateTimeFormatterBuilder()
+            .appendPattern("yyyy-MM-dd'T'HH:mm:ss")
+            .appendFraction(ChronoField.NANO_OF_SECOND, 0, 9, true)
+            .appendZoneOrOffsetId()
+            .toFormatter();
+
+    private Object rfc3339 = "2020-01-01T08:00:00.123456789+08:00";
+    private Object rfc3339Utc = "2020-01-01T00:00:00Z";
+    private Object epochLong = 1_577_836_800_123L;
+    private Object epochDouble = 1_577_836_800_123d;
+
+    @Benchmark
+    public Instant rfc3339Formatter() {
+        return Instant.from(RFC3339_FORMATTER.parse((String) rfc3339));
+    }
+
+    @Benchmark
+    public Instant rfc3339String() {
+        return InfluxDBUtil.parseRFC3339((String) rfc3339);
+    }
+
+    @Benchmark
+    public long rfc3339StringEpoch() {
+        return InfluxDBUtil.toEpoch(rfc3339, TimeUnit.NANOSECONDS, TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    public long rfc3339UtcStringEpoch() {
+        return InfluxDBUtil.toEpoch(rfc3339Utc, TimeUnit.NANOSECONDS, TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    public long epochLong() {
+        return InfluxDBUtil.toEpoch(epochLong, TimeUnit.MILLISECONDS, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    public long epochDouble() {
+        return InfluxDBUtil.toEpoch(epochDouble, TimeUnit.MILLISECONDS, TimeUnit.MILLISECONDS);
+    }
+}
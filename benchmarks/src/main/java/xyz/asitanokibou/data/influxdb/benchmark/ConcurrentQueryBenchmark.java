@@ -0,0 +1,82 @@
+package xyz.asitanokibou.data.influxdb.benchmark;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.influxdb.InfluxDB;
+import org.openjdk.jmh.annotations.*;
+import xyz.asitanokibou.data.influxdb.InfluxDBClientFactory;
+import xyz.asitanokibou.data.influxdb.InfluxDBClientPool;
+import xyz.asitanokibou.data.influxdb.InfluxDBTemplate;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * callers 个调用方同时查询本地桩服务: 在连接池上等待(pool) 与 在信号量上排队(semaphore), 同时执行的请求数都是64.
+ * 在JDK 21+上运行时每个调用方是一个虚拟线程, 否则是平台线程
+ * @author aimysaber@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentQueryBenchmark {
+
+    private static final int MAX_CONCURRENT_REQUESTS = 64;
+
+    @Param({"pool", "semaphore"})
+    private String mode;
+
+    @Param({"10000"})
+    private int callers;
+
+    private StubInfluxDBServer server;
+    private InfluxDBClientPool pool;
+    private InfluxDBTemplate template;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() throws IOException {
+        server = new StubInfluxDBServer(MAX_CONCURRENT_REQUESTS);
+
+        GenericObjectPoolConfig<InfluxDB> config = new GenericObjectPoolConfig<>();
+        config.setMaxTotal(MAX_CONCURRENT_REQUESTS);
+        config.setMaxIdle(MAX_CONCURRENT_REQUESTS);
+        config.setJmxEnabled(false);
+        pool = new InfluxDBClientPool(new InfluxDBClientFactory(server.getUrl()), config);
+        template = new InfluxDBTemplate(pool);
+        if ("semaphore".equals(mode)) {
+            template.setMaxConcurrentRequests(MAX_CONCURRENT_REQUESTS, 60_000);
+        }
+        executor = callerExecutor();
+    }
+
+    private static ExecutorService callerExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        pool.close();
+        server.close();
+    }
+
+    @Benchmark
+    public void concurrentQueries() {
+        CompletableFuture<?>[] futures = new CompletableFuture[callers];
+        for (int i = 0; i < callers; i++) {
+            futures[i] = CompletableFuture.runAsync(() ->
+                    template.queryForTimedScalarList("telegraf", "cpu", "SELECT usage FROM #measurement#", Double.class, null), executor);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+}
@@ -0,0 +1,35 @@
+package xyz.asitanokibou.data.influxdb.benchmark;
+
+import org.influxdb.annotation.Column;
+import org.influxdb.annotation.Measurement;
+
+import java.time.Instant;
+
+/**
+ * 基准测试用的映射类
+ * @author aimysaber@gmail.com
+ */
+@Measurement(name = SyntheticResults.MEASUREMENT)
+public class Cpu {
+
+    @Column(name = "time")
+    private Instant time;
+    @Column(name = "host", tag = true)
+    private String host;
+    @Column(name = "region", tag = true)
+    private String region;
+    @Column(name = "usage")
+    private double usage;
+    @Column(name = "load")
+    private Double load;
+    @Column(name = "count")
+    private Long count;
+
+    public Instant getTime() {
+        return time;
+    }
+
+    public double getUsage() {
+        return usage;
+    }
+}
@@ -0,0 +1,57 @@
+package xyz.asitanokibou.data.influxdb.benchmark;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+import xyz.asitanokibou.data.influxdb.InfluxDBClientFactory;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * 产生不访问网络的client: query 直接返回固定的QueryResult, close 归还到连接池, 用于只测量模板中的映射开销
+ * @author aimysaber@gmail.com
+ */
+public class FixedResultClientFactory extends InfluxDBClientFactory {
+
+    private volatile QueryResult queryResult;
+
+    public FixedResultClientFactory() {
+        super("http://127.0.0.1:0");
+    }
+
+    public void setQueryResult(QueryResult queryResult) {
+        this.queryResult = queryResult;
+    }
+
+    @Override
+    public PooledObject<InfluxDB> makeObject() {
+        InfluxDB[] self = new InfluxDB[1];
+        self[0] = (InfluxDB) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{InfluxDB.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "query":
+                            if (args.length >= 1 && args[0] instanceof Query && method.getReturnType() == QueryResult.class) {
+                                return queryResult;
+                            }
+                            throw new UnsupportedOperationException(method.toString());
+                        case "close":
+                            getInnerPool().returnObject(self[0]);
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.toString());
+                    }
+                });
+        return new DefaultPooledObject<>(self[0]);
+    }
+
+    @Override
+    public void destroyObject(PooledObject<InfluxDB> pooledObject) {
+        //nothing to release
+    }
+}
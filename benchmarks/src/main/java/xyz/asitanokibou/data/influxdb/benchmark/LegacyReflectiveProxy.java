@@ -0,0 +1,86 @@
+package xyz.asitanokibou.data.influxdb.benchmark;
+
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.BoundParameterQuery;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xyz.asitanokibou.data.influxdb.Utils;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * 原 InfluxDBClientFactory.InfluxDBProxy 的jdk动态代理实现(已被PooledInfluxDB替代), 保留在这里作为对比的基准.
+ * close 不归还到连接池, 其余调用路径与原实现一致
+ * @author aimysaber@gmail.com
+ */
+public class LegacyReflectiveProxy implements InvocationHandler {
+
+    private static final Logger log = LoggerFactory.getLogger("influxdb.query");
+
+    private final InfluxDB target;
+    private final boolean logQueryResult;
+    private boolean isBroken;
+
+    private LegacyReflectiveProxy(InfluxDB target, boolean logQueryResult) {
+        this.target = target;
+        this.logQueryResult = logQueryResult;
+    }
+
+    public static InfluxDB newProxy(InfluxDB target) {
+        return (InfluxDB) Proxy.newProxyInstance(Utils.getClassLoader(), new Class[]{InfluxDB.class},
+                new LegacyReflectiveProxy(target, false));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String methodName = method.getName();
+        Class<?> returnType = method.getReturnType();
+
+        if (methodName.equals("close")) {
+            return null;
+        } else if (methodName.equals("query") && (args.length > 1 && args[0] instanceof Query)) {
+            logQuery((Query) args[0]);
+        }
+
+        try {
+            Object result = method.invoke(target, args);
+            if (methodName.equals("query") && logQueryResult && returnType == QueryResult.class) {
+                log.debug("Query Result : {}", result);
+            }
+            return result;
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                isBroken = true;
+            }
+            throw e;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void logQuery(Query query) {
+        if (log.isDebugEnabled()) {
+            String queryString = query.getCommand();
+            if (query instanceof BoundParameterQuery) {
+                Field paramsField = Utils.findField(BoundParameterQuery.class, "params");
+                if (paramsField != null) {
+                    Utils.makeAccessible(paramsField);
+                    Map<String, Object> params = (Map<String, Object>) Utils.getField(paramsField, query);
+                    if (params != null) {
+                        for (Map.Entry<String, Object> entry : params.entrySet()) {
+                            queryString = queryString.replaceAll("\\$" + entry.getKey(), "'" + entry.getValue() + "'");
+                        }
+                    }
+                }
+                log.debug("Query Command : {}", queryString);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package xyz.asitanokibou.data.influxdb.benchmark;
+
+import org.influxdb.dto.Point;
+import org.openjdk.jmh.annotations.*;
+import xyz.asitanokibou.data.influxdb.LineProtocolEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1000个点生成写入请求体: Point.lineProtocol() 后拼接 与 LineProtocolEncoder 直接生成
+ * @author aimysaber@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LineProtocolBenchmark {
+
+    private static final int POINTS = 1000;
+
+    private String[] hosts;
+    private double[] usages;
+    private long[] times;
+
+    @Setup
+    public void setup() {
+        hosts = new String[POINTS];
+        usages = new double[POINTS];
+        times = new long[POINTS];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < POINTS; i++) {
+            hosts[i] = "device-" + (i % 200);
+            usages[i] = i * 0.37;
+            times[i] = now + i;
+        }
+    }
+
+    @Benchmark
+    public String point() {
+        List<String> lines = new ArrayList<>(POINTS);
+        for (int i = 0; i < POINTS; i++) {
+            Point point = Point.measurement("sensor")
+                    .time(times[i], TimeUnit.MILLISECONDS)
+                    .tag("device", hosts[i])
+                    .tag("region", "eu-west")
+                    .addField("value", usages[i])
+                    .addField("status", (long) i)
+                    .build();
+            lines.add(point.lineProtocol(TimeUnit.NANOSECONDS));
+        }
+        return String.join("\n", lines);
+    }
+
+    @Benchmark
+    public String encoder() {
+        LineProtocolEncoder encoder = LineProtocolEncoder.forCurrentThread();
+        try {
+            for (int i = 0; i < POINTS; i++) {
+                encoder.measurement("sensor")
+                        .tag("device", hosts[i])
+                        .tag("region", "eu-west")
+                        .field("status", (long) i)
+                        .field("value", usages[i])
+                        .time(times[i], TimeUnit.MILLISECONDS);
+            }
+            return encoder.toString();
+        } finally {
+            encoder.release();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package xyz.asitanokibou.data.influxdb.benchmark;
+
+import org.influxdb.dto.QueryResult;
+import org.influxdb.impl.InfluxDBResultMapper;
+import org.openjdk.jmh.annotations.*;
+import xyz.asitanokibou.data.influxdb.mapper.MeasurementResultMapper;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MeasurementResultMapper 与 influxdb-java 自带的反射映射 InfluxDBResultMapper 的对比
+ * @author aimysaber@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapperBenchmark {
+
+    @Param({"1000", "100000"})
+    private int rows;
+
+    private QueryResult queryResult;
+    private InfluxDBResultMapper reflectiveMapper;
+    private MeasurementResultMapper measurementMapper;
+
+    @Setup
+    public void setup() {
+        queryResult = SyntheticResults.cpu(rows, false);
+        reflectiveMapper = new InfluxDBResultMapper();
+        measurementMapper = new MeasurementResultMapper();
+    }
+
+    @Benchmark
+    public List<Cpu> influxDBResultMapper() {
+        return reflectiveMapper.toPOJO(queryResult, Cpu.class, SyntheticResults.MEASUREMENT);
+    }
+
+    @Benchmark
+    public List<Cpu> measurementResultMapper() {
+        return measurementMapper.toPOJO(queryResult, Cpu.class, SyntheticResults.MEASUREMENT);
+    }
+}
@@ -0,0 +1,42 @@
+package xyz.asitanokibou.data.influxdb.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import xyz.asitanokibou.data.influxdb.Utils;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Utils.convertNumberToTargetClass - json解析出的Double转换为各数值类型
+ * @author aimysaber@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NumberConversionBenchmark {
+
+    private Number value = 12345.678d;
+
+    @Benchmark
+    public Double toDouble() {
+        return Utils.convertNumberToTargetClass(value, Double.class);
+    }
+
+    @Benchmark
+    public Long toLong() {
+        return Utils.convertNumberToTargetClass(value, Long.class);
+    }
+
+    @Benchmark
+    public Integer toInteger() {
+        return Utils.convertNumberToTargetClass(value, Integer.class);
+    }
+
+    @Benchmark
+    public BigDecimal toBigDecimal() {
+        return Utils.convertNumberToTargetClass(value, BigDecimal.class);
+    }
+}
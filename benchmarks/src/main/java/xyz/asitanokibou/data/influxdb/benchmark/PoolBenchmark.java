@@ -0,0 +1,76 @@
+package xyz.asitanokibou.data.influxdb.benchmark;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.influxdb.InfluxDB;
+import org.openjdk.jmh.annotations.*;
+import xyz.asitanokibou.data.influxdb.InfluxDBClientFactory;
+import xyz.asitanokibou.data.influxdb.InfluxDBClientPool;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InfluxDBClientPool 借用/归还的吞吐量(连接到本地桩服务, testOnBorrow时只有超过validationIntervalMillis没有使用的client会ping)
+ * @author aimysaber@gmail.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PoolBenchmark {
+
+    @Param({"false", "true"})
+    private boolean testOnBorrow;
+
+    private StubInfluxDBServer server;
+    private InfluxDBClientPool pool;
+
+    @Setup
+    public void setup() throws IOException {
+        server = new StubInfluxDBServer(16);
+
+        GenericObjectPoolConfig<InfluxDB> config = new GenericObjectPoolConfig<>();
+        config.setMaxTotal(16);
+        config.setMaxIdle(16);
+        config.setTestOnBorrow(testOnBorrow);
+        config.setJmxEnabled(false);
+        pool = new InfluxDBClientPool(new InfluxDBClientFactory(server.getUrl()), config);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.close();
+        server.close();
+    }
+
+    private void borrowAndReturn() throws Exception {
+        InfluxDB client = pool.borrowObject();
+        client.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void threads1() throws Exception {
+        borrowAndReturn();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void threads8() throws Exception {
+        borrowAndReturn();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void threads16() throws Exception {
+        borrowAndReturn();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void threads64() throws Exception {
+        borrowAndReturn();
+    }
+}
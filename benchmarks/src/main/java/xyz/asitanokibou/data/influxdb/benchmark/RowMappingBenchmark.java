@@ -0,0 +1,53 @@
+package xyz.asitanokibou.data.influxdb.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import xyz.asitanokibou.data.influxdb.InfluxDBClientPool;
+import xyz.asitanokibou.data.influxdb.InfluxDBTemplate;
+import xyz.asitanokibou.data.influxdb.columnar.ColumnarResult;
+import xyz.asitanokibou.data.influxdb.pojo.GroupByResult;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * queryForGroupByList / queryForMapListByQuery / queryForColumnar 的行映射开销(client直接返回构造好的QueryResult, 不包含网络和json解析)
+ * @author aimysaber@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class RowMappingBenchmark {
+
+    private static final String QUERY = "SELECT mean(usage), max(load), sum(count) FROM #measurement# GROUP BY time(10s), host";
+
+    @Param({"1000", "100000", "1000000"})
+    private int rows;
+
+    private InfluxDBTemplate template;
+
+    @Setup
+    public void setup() {
+        FixedResultClientFactory factory = new FixedResultClientFactory();
+        factory.setQueryResult(SyntheticResults.cpu(rows, false));
+        template = new InfluxDBTemplate(new InfluxDBClientPool(factory));
+    }
+
+    @Benchmark
+    public List<GroupByResult> queryForGroupByList() {
+        return template.queryForGroupByList("telegraf", SyntheticResults.MEASUREMENT, QUERY, null);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> queryForMapListByQuery() {
+        return template.queryForMapListByQuery("telegraf", SyntheticResults.MEASUREMENT, QUERY, null);
+    }
+
+    @Benchmark
+    public ColumnarResult queryForColumnar() {
+        return template.queryForColumnar("telegraf", SyntheticResults.MEASUREMENT, QUERY, null);
+    }
+}
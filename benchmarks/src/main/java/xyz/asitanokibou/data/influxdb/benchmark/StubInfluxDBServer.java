@@ -0,0 +1,73 @@
+package xyz.asitanokibou.data.influxdb.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 本地的influxdb http桩服务 - /ping 返回204, /write 读取请求体后返回204, /query 返回固定的json
+ * @author aimysaber@gmail.com
+ */
+public class StubInfluxDBServer implements AutoCloseable {
+
+    private static final String EMPTY_QUERY_RESPONSE = "{\"results\":[{\"statement_id\":0}]}";
+
+    static {
+        //响应头和响应体分两次写出, 不关闭Nagle时每个请求会多等待一次delayed ACK(约40ms)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile byte[] queryResponse = EMPTY_QUERY_RESPONSE.getBytes(StandardCharsets.UTF_8);
+
+    public StubInfluxDBServer(int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/ping", exchange -> {
+            exchange.getResponseHeaders().add("X-Influxdb-Version", "1.7.9");
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.createContext("/write", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                byte[] buffer = new byte[8192];
+                while (body.read(buffer) != -1) {
+                    //discard
+                }
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.createContext("/query", exchange -> {
+            byte[] response = queryResponse;
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public void setQueryResponse(String json) {
+        this.queryResponse = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,58 @@
+package xyz.asitanokibou.data.influxdb.benchmark;
+
+import org.influxdb.dto.QueryResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 构造与influxdb json响应结构一致的QueryResult(数值均为Double, 与moshi解析结果一致)
+ * @author aimysaber@gmail.com
+ */
+public final class SyntheticResults {
+
+    public static final String MEASUREMENT = "cpu";
+    private static final long START_MILLIS = 1_577_836_800_000L;
+    private static final int ROWS_PER_SERIES = 1000;
+
+    private SyntheticResults() {
+    }
+
+    /**
+     * @param rows 总行数, 每1000行一个series(按host分组)
+     * @param rfc3339Time 时间列为RFC3339字符串(未指定epoch时) 或 epoch毫秒
+     */
+    public static QueryResult cpu(int rows, boolean rfc3339Time) {
+        List<QueryResult.Series> seriesList = new ArrayList<>();
+        for (int offset = 0, seriesIndex = 0; offset < rows; offset += ROWS_PER_SERIES, seriesIndex++) {
+            QueryResult.Series series = new QueryResult.Series();
+            series.setName(MEASUREMENT);
+            series.setColumns(Arrays.asList("time", "usage", "load", "count"));
+
+            Map<String, String> tags = new HashMap<>();
+            tags.put("host", "host-" + seriesIndex);
+            tags.put("region", "region-" + (seriesIndex % 4));
+            series.setTags(tags);
+
+            int seriesRows = Math.min(ROWS_PER_SERIES, rows - offset);
+            List<List<Object>> values = new ArrayList<>(seriesRows);
+            for (int i = 0; i < seriesRows; i++) {
+                long millis = START_MILLIS + (offset + i) * 10_000L;
+                Object time = rfc3339Time ? java.time.Instant.ofEpochMilli(millis).toString() : (Object) (double) millis;
+                values.add(Arrays.asList(time, (double) (i % 100), i / 7.0, (double) i));
+            }
+            series.setValues(values);
+            seriesList.add(series);
+        }
+
+        QueryResult.Result result = new QueryResult.Result();
+        result.setSeries(seriesList);
+        QueryResult queryResult = new QueryResult();
+        queryResult.setResults(Collections.singletonList(result));
+        return queryResult;
+    }
+}
@@ -0,0 +1,228 @@
+package xyz.asitanokibou.data.influxdb;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.Point;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步写入 - 写入的点先进入有界的环形缓冲区, 由固定数量的writer线程批量取出,
+ * 按 (database, retentionPolicy) 合并成line protocol请求体后写入. 每个writer线程持有一个连接池中的client
+ * <p>
+ * 缓冲区满时的行为由 {@link AsyncWriteConfig.BackpressurePolicy} 决定
+ * @author aimysaber@gmail.com
+ */
+@Slf4j
+public class AsyncPointWriter implements AutoCloseable {
+
+    private final InfluxDBTemplate template;
+    private final AsyncWriteConfig config;
+    private final BoundedRingBuffer<PendingWrite> buffer;
+    private final List<Thread> writerThreads;
+
+    private volatile boolean running = true;
+    //所有writer线程都已退出, 之后进入缓冲区的点不会再被写入
+    private volatile boolean stopped;
+    private final AtomicInteger liveWriters;
+
+    public AsyncPointWriter(InfluxDBTemplate template, AsyncWriteConfig config) {
+        this.template = template;
+        this.config = config;
+        this.buffer = new BoundedRingBuffer<>(config.getBufferSize());
+
+        int threads = Math.max(1, config.getWriterThreads());
+        this.writerThreads = new ArrayList<>(threads);
+        this.liveWriters = new AtomicInteger(threads);
+        for (int i = 1; i <= threads; i++) {
+            Thread thread = new Thread(this::drainLoop, "influxdb-async-writer-" + i);
+            thread.setDaemon(true);
+            writerThreads.add(thread);
+        }
+        writerThreads.forEach(Thread::start);
+    }
+
+    public CompletableFuture<Void> write(String database, String retentionPolicy, Point point) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (!running || stopped) {
+            future.completeExceptionally(new InfluxDBXException("AsyncPointWriter is closed"));
+            return future;
+        }
+
+        PendingWrite pendingWrite = new PendingWrite(database, retentionPolicy, point.lineProtocol(TimeUnit.NANOSECONDS), future);
+
+        switch (config.getBackpressurePolicy()) {
+            case BLOCK:
+                try {
+                    buffer.put(pendingWrite);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.completeExceptionally(new InfluxDBXException("Interrupted while waiting for write buffer", e));
+                }
+                break;
+            case DROP_OLDEST:
+                PendingWrite dropped = buffer.offerDropOldest(pendingWrite);
+                if (dropped != null) {
+                    dropped.future.completeExceptionally(new InfluxDBXException("Write buffer is full, point dropped"));
+                }
+                break;
+            case FAIL_FAST:
+            default:
+                if (!buffer.offer(pendingWrite)) {
+                    future.completeExceptionally(new InfluxDBXException("Write buffer is full"));
+                }
+                break;
+        }
+        //与close()竞争时, writer线程可能已经退出, 由写入方自己清理
+        if (stopped) {
+            failPending();
+        }
+        return future;
+    }
+
+    public CompletableFuture<Void> write(String database, String retentionPolicy, List<Point> points) {
+        CompletableFuture<?>[] futures = points.stream()
+                .map(point -> write(database, retentionPolicy, point))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * @return 缓冲区中等待写入的点数
+     */
+    public int getPendingCount() {
+        return buffer.size();
+    }
+
+    /**
+     * 停止接收新的写入, 等待缓冲区中的点写完后归还client.
+     * writer线程退出后仍留在缓冲区中的点(如与close竞争的写入)以异常结束
+     */
+    @Override
+    public void close() {
+        running = false;
+        for (Thread thread : writerThreads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void drainLoop() {
+        List<PendingWrite> batch = new ArrayList<>(config.getMaxBatchPoints());
+        InfluxDB client = null;
+        try {
+            while (running || !buffer.isEmpty()) {
+                batch.clear();
+                try {
+                    buffer.drainTo(batch, config.getMaxBatchPoints(), config.getPollTimeoutMillis(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (batch.isEmpty()) {
+                    continue;
+                }
+
+                //按 (database, retentionPolicy) 合并
+                Map<WriteTarget, List<PendingWrite>> groups = new LinkedHashMap<>();
+                for (PendingWrite pendingWrite : batch) {
+                    groups.computeIfAbsent(pendingWrite.target, k -> new ArrayList<>()).add(pendingWrite);
+                }
+
+                for (Map.Entry<WriteTarget, List<PendingWrite>> group : groups.entrySet()) {
+                    client = writeGroup(client, group.getKey(), group.getValue());
+                }
+            }
+        } finally {
+            if (client != null) {
+                client.close();
+            }
+            if (liveWriters.decrementAndGet() == 0) {
+                stopped = true;
+                failPending();
+            }
+        }
+    }
+
+    private void failPending() {
+        List<PendingWrite> pendingWrites = new ArrayList<>();
+        buffer.drainAll(pendingWrites);
+        if (!pendingWrites.isEmpty()) {
+            InfluxDBXException e = new InfluxDBXException("AsyncPointWriter is closed");
+            pendingWrites.forEach(pendingWrite -> pendingWrite.future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * @return 写入后仍然可用的client, 写入失败时client已被归还(由连接池判断是否销毁), 返回null
+     */
+    private InfluxDB writeGroup(InfluxDB client, WriteTarget target, List<PendingWrite> pendingWrites) {
+        List<String> lines = new ArrayList<>(pendingWrites.size());
+        pendingWrites.forEach(pendingWrite -> lines.add(pendingWrite.line));
+        try {
+            if (template.isRouting()) {
+                //多节点时写入所有健康的节点, 不持有client
+                template.executeWrite(new InfluxDBClientCallbackWithNoResult() {
+                    @Override
+                    public void executeWithNoResult(InfluxDB nodeClient) {
+                        writeLines(nodeClient, target, lines);
+                    }
+                });
+            } else {
+                if (client == null) {
+                    client = template.getResource();
+                }
+                writeLines(client, target, lines);
+            }
+            pendingWrites.forEach(pendingWrite -> pendingWrite.future.complete(null));
+            return client;
+        } catch (RuntimeException e) {
+            log.warn("Async write of {} points to {}.{} failed", lines.size(), target.database, target.retentionPolicy, e);
+            pendingWrites.forEach(pendingWrite -> pendingWrite.future.completeExceptionally(e));
+            if (client != null) {
+                client.close();
+            }
+            return null;
+        }
+    }
+
+    private void writeLines(InfluxDB client, WriteTarget target, List<String> lines) {
+        long start = System.nanoTime();
+        try {
+            client.write(target.database, target.retentionPolicy, InfluxDB.ConsistencyLevel.ONE, TimeUnit.NANOSECONDS, lines);
+        } catch (RuntimeException e) {
+            template.getMetrics().recordWrite(target.database, lines.size(), System.nanoTime() - start, false);
+            throw e;
+        }
+        template.getMetrics().recordWrite(target.database, lines.size(), System.nanoTime() - start, true);
+    }
+
+    @Value
+    private static class WriteTarget {
+        String database;
+        String retentionPolicy;
+    }
+
+    private static final class PendingWrite {
+        private final WriteTarget target;
+        private final String line;
+        private final CompletableFuture<Void> future;
+
+        private PendingWrite(String database, String retentionPolicy, String line, CompletableFuture<Void> future) {
+            this.target = new WriteTarget(database, retentionPolicy);
+            this.line = line;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package xyz.asitanokibou.data.influxdb;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 异步写入({@link AsyncPointWriter})的配置
+ * @author aimysaber@gmail.com
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class AsyncWriteConfig {
+
+    public enum BackpressurePolicy {
+        /** 缓冲区满时阻塞调用线程直到有空位 */
+        BLOCK,
+        /** 缓冲区满时丢弃最旧的点(其future以异常结束) */
+        DROP_OLDEST,
+        /** 缓冲区满时直接返回失败的future */
+        FAIL_FAST
+    }
+
+    //缓冲区能容纳的点数
+    @Builder.Default
+    private int bufferSize = 65536;
+    //writer线程数, 每个线程持有一个连接池中的client
+    @Builder.Default
+    private int writerThreads = 2;
+    //一个写请求最多包含的点数
+    @Builder.Default
+    private int maxBatchPoints = 5000;
+    //writer线程在缓冲区为空时的等待时间
+    @Builder.Default
+    private long pollTimeoutMillis = 100;
+    @Builder.Default
+    private BackpressurePolicy backpressurePolicy = BackpressurePolicy.BLOCK;
+}
@@ -0,0 +1,155 @@
+package xyz.asitanokibou.data.influxdb;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 定长环形缓冲区, 多个生产者写入, writer线程批量取出.
+ * 与ArrayBlockingQueue相比多了一个原子的 "满时丢弃最旧元素再写入" 操作(用于 DROP_OLDEST 背压策略)
+ * @author aimysaber@gmail.com
+ */
+class BoundedRingBuffer<E> {
+
+    private final Object[] items;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private int head; //下一个读取的位置
+    private int tail; //下一个写入的位置
+    private int count;
+
+    BoundedRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.items = new Object[capacity];
+    }
+
+    int capacity() {
+        return items.length;
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 缓冲区满时直接返回false
+     */
+    boolean offer(E e) {
+        lock.lock();
+        try {
+            if (count == items.length) {
+                return false;
+            }
+            enqueue(e);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 缓冲区满时阻塞等待
+     */
+    void put(E e) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == items.length) {
+                notFull.await();
+            }
+            enqueue(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 缓冲区满时丢弃最旧的元素后写入
+     * @return 被丢弃的元素, 没有丢弃时返回null
+     */
+    E offerDropOldest(E e) {
+        lock.lock();
+        try {
+            E dropped = count == items.length ? dequeue() : null;
+            enqueue(e);
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取出最多maxElements个元素, 缓冲区为空时最多等待timeout
+     * @return 取出的元素个数
+     */
+    int drainTo(Collection<? super E> collection, int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0) {
+                    return 0;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            int n = Math.min(maxElements, count);
+            for (int i = 0; i < n; i++) {
+                collection.add(dequeue());
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 不等待, 取出所有元素(不响应中断, 用于关闭时清理)
+     * @return 取出的元素个数
+     */
+    int drainAll(Collection<? super E> collection) {
+        lock.lock();
+        try {
+            int n = count;
+            for (int i = 0; i < n; i++) {
+                collection.add(dequeue());
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(E e) {
+        items[tail] = e;
+        if (++tail == items.length) {
+            tail = 0;
+        }
+        count++;
+        notEmpty.signal();
+    }
+
+    @SuppressWarnings("unchecked")
+    private E dequeue() {
+        E e = (E) items[head];
+        items[head] = null;
+        if (++head == items.length) {
+            head = 0;
+        }
+        count--;
+        notFull.signal();
+        return e;
+    }
+}
@@ -0,0 +1,153 @@
+package xyz.asitanokibou.data.influxdb;
+
+import lombok.extern.slf4j.Slf4j;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.Point;
+import xyz.asitanokibou.data.influxdb.pojo.BatchChunkResult;
+import xyz.asitanokibou.data.influxdb.pojo.BatchWriteResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 将大批量的Point按点数/字节数拆分为多个分片, 每个分片编码为一个line protocol请求体写入(与BatchPoints的请求一致),
+ * 分片由多个worker并行写入, 每个分片单独从连接池中借用client, 避免一个大请求长时间占用一个client或超过soTimeout.
+ * 只有所有点都带时间戳的分片才会重试; 没有时间戳的点由服务端填充写入时间, 重试(如读超时后服务端其实已经写入)会产生重复的点
+ * @author aimysaber@gmail.com
+ */
+@Slf4j
+class ChunkedBatchWriter {
+
+    private final InfluxDBTemplate template;
+    private final int chunkSize;
+    private final long chunkMaxBytes;
+    private final int parallelism;
+    private final Executor executor;
+
+    ChunkedBatchWriter(InfluxDBTemplate template, int chunkSize, long chunkMaxBytes, int parallelism, Executor executor) {
+        this.template = template;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.chunkMaxBytes = chunkMaxBytes;
+        this.parallelism = Math.max(1, parallelism);
+        this.executor = executor;
+    }
+
+    BatchWriteResult write(String database, String retentionPolicy, List<Point> points) {
+        long start = System.nanoTime();
+
+        List<Chunk> chunks = split(points);
+        BatchChunkResult[] results = new BatchChunkResult[chunks.size()];
+
+        AtomicInteger next = new AtomicInteger();
+        Runnable worker = () -> {
+            int index;
+            while ((index = next.getAndIncrement()) < chunks.size()) {
+                results[index] = writeChunk(database, retentionPolicy, index, chunks.get(index));
+            }
+        };
+
+        int workers = Math.min(parallelism, chunks.size());
+        List<CompletableFuture<Void>> futures = new ArrayList<>(workers);
+        for (int i = 1; i < workers; i++) {
+            try {
+                futures.add(CompletableFuture.runAsync(worker, executor));
+            } catch (RejectedExecutionException e) {
+                //线程池满了就由当前线程处理剩下的分片
+                break;
+            }
+        }
+        //当前线程也作为一个worker
+        worker.run();
+        futures.forEach(CompletableFuture::join);
+
+        return new BatchWriteResult(Arrays.asList(results), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private BatchChunkResult writeChunk(String database, String retentionPolicy, int index, Chunk chunk) {
+        long start = System.nanoTime();
+        Throwable error = null;
+        InfluxDBClientCallbackWithNoResult callback = new InfluxDBClientCallbackWithNoResult() {
+            @Override
+            public void executeWithNoResult(InfluxDB client) {
+                long writeStart = System.nanoTime();
+                boolean success = false;
+                try {
+                    client.write(database, retentionPolicy, InfluxDB.ConsistencyLevel.ONE, TimeUnit.NANOSECONDS, chunk.lines);
+                    success = true;
+                } finally {
+                    template.getMetrics().recordWrite(database, chunk.lines.size(), System.nanoTime() - writeStart, success);
+                }
+            }
+        };
+        try {
+            if (chunk.timestamped) {
+                //分片中的点都有时间戳, 重复写入会覆盖为相同的点
+                template.executeIdempotentWrite(callback);
+            } else {
+                template.executeWrite(callback);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Write batch chunk {} ({} points) to {}.{} failed", index, chunk.lines.size(), database, retentionPolicy, e);
+            error = e;
+        }
+        return new BatchChunkResult(index, chunk.lines.size(), chunk.bytes,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), error);
+    }
+
+    List<Chunk> split(List<Point> points) {
+        List<Chunk> chunks = new ArrayList<>(points.size() / chunkSize + 1);
+
+        int initialCapacity = Math.min(chunkSize, points.size());
+        Chunk current = new Chunk(initialCapacity);
+        for (Point point : points) {
+            String line = point.lineProtocol(TimeUnit.NANOSECONDS);
+            long lineBytes = Utils.utf8Length(line) + 1; // '\n'
+
+            if (!current.lines.isEmpty() && (current.lines.size() >= chunkSize || current.bytes + lineBytes > chunkMaxBytes)) {
+                chunks.add(current);
+                current = new Chunk(initialCapacity);
+            }
+            current.lines.add(line);
+            current.bytes += lineBytes;
+            current.timestamped &= hasTimestamp(line);
+        }
+        chunks.add(current);
+        return chunks;
+    }
+
+    /**
+     * line protocol 为 measurement[,tags] fields [timestamp], 字符串字段值和转义字符之外的空格有两个时带有时间戳
+     */
+    static boolean hasTimestamp(String line) {
+        int spaces = 0;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ' ' && !quoted && ++spaces == 2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static class Chunk {
+        final List<String> lines;
+        long bytes;
+        //所有点都带有时间戳, 可以重试
+        boolean timestamped = true;
+
+        Chunk(int initialCapacity) {
+            this.lines = new ArrayList<>(initialCapacity);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package xyz.asitanokibou.data.influxdb;
+
+import lombok.extern.slf4j.Slf4j;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXException;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 基于influxdb chunked query 的结果迭代器, 每次返回一个chunk(QueryResult).
+ * <p>
+ * chunk由okhttp的回调线程读取, 通过一个有界队列交给调用线程, 队列满时回调线程等待, 所以内存占用只和chunkSize有关.
+ * 读取完毕或出错时自动归还client; 提前结束时需要调用 {@link #close()} 取消http请求并归还client
+ * @author aimysaber@gmail.com
+ */
+@Slf4j
+class ChunkedQueryIterator implements Iterator<QueryResult>, AutoCloseable {
+
+    //chunk查询结束时 influxdb-java 会回调一个error为DONE的QueryResult
+    private static final String DONE = "DONE";
+    private static final Object END = new Object();
+    private static final int PREFETCH_CHUNKS = 2;
+
+    private final BlockingQueue<Object> chunks = new ArrayBlockingQueue<>(PREFETCH_CHUNKS + 1);
+    private final AtomicBoolean released = new AtomicBoolean();
+    private final InfluxDB client;
+
+    private volatile boolean closed;
+    private volatile InfluxDB.Cancellable cancellable;
+
+    private Object next;
+    private boolean finished;
+
+    ChunkedQueryIterator(InfluxDB client, Query query, int chunkSize) {
+        this.client = client;
+        try {
+            client.query(query, chunkSize, this::onChunk, () -> enqueue(END), this::onFailure);
+        } catch (RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            try {
+                next = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new InfluxDBXException("Interrupted while waiting for query chunk", e);
+            }
+            if (next == END) {
+                finished = true;
+                next = null;
+                release();
+            } else if (next instanceof Throwable) {
+                finished = true;
+                Throwable error = (Throwable) next;
+                next = null;
+                close();
+                throw error instanceof InfluxDBXException ? (InfluxDBXException) error
+                        : new InfluxDBXException("Chunked query failed: " + error.getMessage(), error);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public QueryResult next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        QueryResult result = (QueryResult) next;
+        next = null;
+        return result;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        InfluxDB.Cancellable current = cancellable;
+        if (current != null && !current.isCanceled()) {
+            current.cancel();
+        }
+        //让阻塞在队列上的回调线程退出
+        chunks.clear();
+        release();
+    }
+
+    private void onChunk(InfluxDB.Cancellable cancellable, QueryResult queryResult) {
+        this.cancellable = cancellable;
+        if (closed) {
+            cancellable.cancel();
+            return;
+        }
+
+        if (queryResult.getError() != null) {
+            if (!DONE.equals(queryResult.getError())) {
+                enqueue(new InfluxDBXException("InfluxDB returned an error: " + queryResult.getError()));
+            }
+            return;
+        }
+        if (queryResult.getResults() != null) {
+            for (QueryResult.Result result : queryResult.getResults()) {
+                if (result.getError() != null) {
+                    enqueue(new InfluxDBXException("InfluxDB returned an error with Series: " + result.getError()));
+                    return;
+                }
+            }
+        }
+        enqueue(queryResult);
+    }
+
+    private void onFailure(Throwable throwable) {
+        if (!closed) {
+            enqueue(throwable);
+        }
+    }
+
+    private void enqueue(Object item) {
+        try {
+            while (!closed) {
+                if (chunks.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        InfluxDB.Cancellable current = cancellable;
+        if (current != null && !current.isCanceled()) {
+            current.cancel();
+        }
+    }
+
+    private void release() {
+        if (released.compareAndSet(false, true)) {
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package xyz.asitanokibou.data.influxdb;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 熔断器: 统计最近 windowSize 次调用, 调用数不少于 minimumCalls 且失败率达到 failureRateThreshold 时打开,
+ * 打开期间直接拒绝调用; openMillis 后进入半开状态, 放行一个试探调用, 成功则关闭, 失败则重新打开.
+ * 只有 {@link RetryPolicy#isTransientFailure} 这类服务端/网络故障计为失败.
+ * 使用 ReentrantLock 而不是 synchronized, 不会固定虚拟线程的载体线程
+ * @author aimysaber@gmail.com
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openMillis;
+
+    //最近调用的结果(true为失败)
+    private final boolean[] window;
+    private int next;
+    private int calls;
+    private int failures;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    //关闭状态下 tryAcquire 不加锁
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    private final LongAdder rejected = new LongAdder();
+
+    public CircuitBreaker() {
+        this(100, 20, 0.5, 10_000);
+    }
+
+    public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, long openMillis) {
+        this.window = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * @return 是否允许调用; 允许时调用结束后必须调用 {@link #onSuccess()} 或 {@link #onFailure()}
+     */
+    public boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        lock.lock();
+        try {
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (System.currentTimeMillis() - openedAt < openMillis) {
+                        break;
+                    }
+                    state = State.HALF_OPEN;
+                    trialInFlight = true;
+                    return true;
+                case HALF_OPEN:
+                default:
+                    if (!trialInFlight) {
+                        trialInFlight = true;
+                        return true;
+                    }
+                    break;
+            }
+        } finally {
+            lock.unlock();
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public void onSuccess() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) {
+                log.info("Circuit breaker closed");
+                reset(State.CLOSED);
+            } else if (state == State.CLOSED) {
+                record(false);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onFailure() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) {
+                log.warn("Circuit breaker trial call failed, reopened for {} ms", openMillis);
+                open();
+            } else if (state == State.CLOSED) {
+                record(true);
+                if (calls >= minimumCalls && failures >= failureRateThreshold * calls) {
+                    log.warn("Circuit breaker opened for {} ms, {} of the last {} calls failed", openMillis, failures, calls);
+                    open();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(boolean failure) {
+        if (calls == window.length) {
+            if (window[next]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % window.length;
+    }
+
+    private void open() {
+        reset(State.OPEN);
+        openedAt = System.currentTimeMillis();
+    }
+
+    private void reset(State state) {
+        this.state = state;
+        next = 0;
+        calls = 0;
+        failures = 0;
+        trialInFlight = false;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return 因熔断被拒绝的调用数
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
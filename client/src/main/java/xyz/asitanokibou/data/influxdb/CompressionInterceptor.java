@@ -0,0 +1,119 @@
+package xyz.asitanokibou.data.influxdb;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+import xyz.asitanokibou.data.influxdb.metrics.WireStats;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.LongConsumer;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 按 {@link CompressionPolicy} 压缩写入请求体(只有 /write 接口支持gzip请求体), 并统计压缩前的请求/解压后的响应大小.
+ * 实际传输的字节数由 {@link WireCounter} 作为network interceptor统计
+ * @author aimysaber@gmail.com
+ */
+class CompressionInterceptor implements Interceptor {
+
+    private final CompressionPolicy policy;
+    private final WireStats wireStats;
+
+    CompressionInterceptor(CompressionPolicy policy, WireStats wireStats) {
+        this.policy = policy;
+        this.wireStats = wireStats;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Request.Builder builder = request.newBuilder();
+        if (!policy.isAcceptGzipResponse() && request.header("Accept-Encoding") == null) {
+            builder.header("Accept-Encoding", "identity");
+        }
+
+        RequestBody body = request.body();
+        if (body != null) {
+            long length = body.contentLength();
+            int level = request.header("Content-Encoding") == null && request.url().encodedPath().endsWith("/write")
+                    ? policy.levelFor(length) : Deflater.NO_COMPRESSION;
+            if (level != Deflater.NO_COMPRESSION) {
+                builder.header("Content-Encoding", "gzip").method(request.method(), gzip(body, level));
+            }
+            wireStats.recordRequestBody(length, level != Deflater.NO_COMPRESSION);
+        }
+
+        return countBody(chain.proceed(builder.build()), wireStats::recordResponseBody);
+    }
+
+    private static RequestBody gzip(RequestBody body, int level) throws IOException {
+        Buffer compressed = new Buffer();
+        try (OutputStream out = new LeveledGZIPOutputStream(compressed.outputStream(), level)) {
+            BufferedSink sink = Okio.buffer(Okio.sink(out));
+            body.writeTo(sink);
+            sink.flush();
+        }
+        //可能因重试被多次写出, 使用不可变的ByteString
+        return RequestBody.create(body.contentType(), compressed.readByteString());
+    }
+
+    /**
+     * 包装响应体, 每次读取时统计读取的字节数(在读取响应的线程上)
+     */
+    static Response countBody(Response response, LongConsumer counter) {
+        ResponseBody body = response.body();
+        if (body == null) {
+            return response;
+        }
+        Source counting = new ForwardingSource(body.source()) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read = super.read(sink, byteCount);
+                if (read > 0) {
+                    counter.accept(read);
+                }
+                return read;
+            }
+        };
+        return response.newBuilder()
+                .body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(counting)))
+                .build();
+    }
+
+    private static final class LeveledGZIPOutputStream extends GZIPOutputStream {
+        private LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, 8192);
+            def.setLevel(level);
+        }
+    }
+
+    /**
+     * network interceptor: 统计实际发送/接收的字节数(压缩后)
+     */
+    static class WireCounter implements Interceptor {
+
+        private final WireStats wireStats;
+
+        WireCounter(WireStats wireStats) {
+            this.wireStats = wireStats;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            if (request.body() != null) {
+                wireStats.recordRequestWire(Math.max(0, request.body().contentLength()));
+            }
+            return countBody(chain.proceed(request), wireStats::recordResponseWire);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package xyz.asitanokibou.data.influxdb;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.zip.Deflater;
+
+/**
+ * 请求/响应的压缩策略: 写入请求体超过 minRequestBytes 时gzip压缩, 不超过 fastLevelMaxBytes 时使用较快的压缩级别;
+ * 查询时请求服务端gzip压缩响应
+ * @author aimysaber@gmail.com
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CompressionPolicy {
+
+    //是否压缩写入请求体
+    @Builder.Default
+    private boolean compressRequests = true;
+    //小于这个大小的请求体不压缩
+    @Builder.Default
+    private int minRequestBytes = 4 * 1024;
+    //不超过这个大小的请求体使用 fastLevel
+    @Builder.Default
+    private int fastLevelMaxBytes = 64 * 1024;
+    @Builder.Default
+    private int fastLevel = Deflater.BEST_SPEED;
+    @Builder.Default
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    //是否请求gzip压缩的响应(Accept-Encoding: gzip), 关闭时请求不压缩的响应
+    @Builder.Default
+    private boolean acceptGzipResponse = true;
+
+    public static CompressionPolicy defaults() {
+        return CompressionPolicy.builder().build();
+    }
+
+    /**
+     * @return 请求和响应都不压缩
+     */
+    public static CompressionPolicy disabled() {
+        return CompressionPolicy.builder().compressRequests(false).acceptGzipResponse(false).build();
+    }
+
+    /**
+     * @return 请求体的压缩级别, 不压缩时返回 {@link Deflater#NO_COMPRESSION}
+     */
+    int levelFor(long contentLength) {
+        if (!compressRequests || contentLength < minRequestBytes) {
+            return Deflater.NO_COMPRESSION;
+        }
+        return contentLength <= fastLevelMaxBytes ? fastLevel : level;
+    }
+}
@@ -0,0 +1,83 @@
+package xyz.asitanokibou.data.influxdb;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * GROUP BY time() 查询的时间窗口, 用于增量缓存({@link xyz.asitanokibou.data.influxdb.cache.GroupByBucketCache}).
+ * 查询语句中需要用绑定参数表示时间范围(左闭右开), 分组间隔与 GROUP BY time() 中的一致, 如:
+ * <pre>
+ *     SELECT mean(usage) FROM cpu WHERE time >= $start AND time &lt; $end GROUP BY time(1m), host
+ * </pre>
+ * 开始时间会向前对齐到分组的开始, 使第一个分组也是完整的. 查询带有 tz() 时 influxdb 按该时区的本地时间分组,
+ * 分组边界按查询的时区(InfluxDBTemplate#getZoneId)计算, 与 influxdb 的算法一致(包括夏令时切换附近的分组)
+ * @author aimysaber@gmail.com
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class GroupByWindow {
+
+    private Instant start;
+    private Instant end;
+    //GROUP BY time() 的间隔
+    private Duration interval;
+    //分组结束后多久不再有迟到的数据, 之后才会被缓存
+    @Builder.Default
+    private Duration settleDelay = Duration.ZERO;
+    //查询语句中表示开始/结束时间的绑定参数名
+    @Builder.Default
+    private String startParam = "start";
+    @Builder.Default
+    private String endParam = "end";
+
+    /**
+     * @return 截止到当前时间, 长度为range的窗口
+     */
+    public static GroupByWindow last(Duration range, Duration interval) {
+        Instant now = Instant.now();
+        return GroupByWindow.builder().start(now.minus(range)).end(now).interval(interval).build();
+    }
+
+    /**
+     * @return start 所在分组的开始时间
+     */
+    long alignedStartMillis(ZoneId zoneId) {
+        return bucketStart(start.toEpochMilli(), interval.toMillis(), zoneId);
+    }
+
+    /**
+     * @return 在此之前开始的分组都已经结束
+     */
+    long completeEndMillis(long nowMillis, ZoneId zoneId) {
+        long settled = Math.min(end.toEpochMilli(), nowMillis - settleDelay.toMillis());
+        return bucketStart(settled, interval.toMillis(), zoneId);
+    }
+
+    /**
+     * 与 influxdb 的 IteratorOptions.Window 相同: 按time所在时区偏移的本地时间向下取整到间隔,
+     * 取整后的时间偏移不同(跨过夏令时切换)且相差小于间隔时按偏移之差调整
+     * @return time 所在分组的开始时间
+     */
+    static long bucketStart(long time, long intervalMillis, ZoneId zoneId) {
+        long offset = offsetMillis(zoneId, time);
+        long bucketStart = time - Math.floorMod(time + offset, intervalMillis);
+        long startOffset = offsetMillis(zoneId, bucketStart);
+        long diff = offset - startOffset;
+        if (diff != 0 && Math.abs(diff) < intervalMillis) {
+            bucketStart += diff;
+        }
+        return bucketStart;
+    }
+
+    private static long offsetMillis(ZoneId zoneId, long time) {
+        return zoneId.getRules().getOffset(Instant.ofEpochMilli(time)).getTotalSeconds() * 1000L;
+    }
+}
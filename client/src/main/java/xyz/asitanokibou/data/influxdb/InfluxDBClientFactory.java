@@ -1,9 +1,13 @@
 package xyz.asitanokibou.data.influxdb;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.logging.HttpLoggingInterceptor;
 import org.apache.commons.pool2.PooledObject;
 import org.apache.commons.pool2.PooledObjectFactory;
@@ -11,16 +15,12 @@ import org.apache.commons.pool2.impl.DefaultPooledObject;
 import org.influxdb.InfluxDB;
 import org.influxdb.InfluxDBFactory;
 import org.influxdb.InfluxDBIOException;
-import org.influxdb.dto.BoundParameterQuery;
-import org.influxdb.dto.Query;
-import org.influxdb.dto.QueryResult;
-
-import java.io.Closeable;
-import java.io.IOException;
-import java.lang.reflect.*;
-import java.util.Map;
-import java.util.Objects;
+import xyz.asitanokibou.data.influxdb.metrics.WireStats;
+
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author aimysaber@gmail.com
@@ -39,7 +39,35 @@ public class InfluxDBClientFactory implements PooledObjectFactory<InfluxDB> {
     private String defaultDatabase;
 
     private boolean logHttp;
+    //写入请求体压缩和响应压缩
+    private CompressionPolicy compressionPolicy = CompressionPolicy.defaults();
+    //所有client共用的传输字节数统计
+    private final WireStats wireStats = new WireStats();
+    //所有client共用的http连接池: 最多保留的空闲连接数和空闲连接的保留时间
+    private int maxIdleConnections = 16;
+    private long keepAliveMillis = TimeUnit.MINUTES.toMillis(5);
+    //dispatcher(分块查询等异步请求)同时执行的请求数限制
+    private int dispatcherMaxRequests = 64;
+    private int dispatcherMaxRequestsPerHost = 64;
+    //https时通过ALPN协商使用HTTP/2, 关闭时只使用HTTP/1.1
+    private boolean http2 = true;
+    //自定义的http client(如TLS配置), 设置后以上http相关配置不生效, 只在其基础上添加压缩和统计的interceptor;
+    //与其共用dispatcher和连接池, 由调用方关闭
+    private OkHttpClient okHttpClient;
+    //所有client共用的http client(连接池和dispatcher), 第一次创建client时按配置创建
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile OkHttpClient sharedHttpClient;
+    //sharedHttpClient 的dispatcher和连接池是否由factory创建; 来自 okHttpClient 时由调用方管理, shutdown 不关闭
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile boolean ownsHttpResources;
     private boolean logQueryResult;
+    //校验client(testOnBorrow等)时, 该时间内创建或归还过的client直接视为有效, 不再ping
+    private long validationIntervalMillis = 30_000;
+    //校验失败(ping失败)的次数
+    @Getter(AccessLevel.NONE)
+    private final LongAdder validationFailures = new LongAdder();
     // private String clientName;
     private InfluxDBClientPool innerPool;
 
@@ -61,21 +89,53 @@ public class InfluxDBClientFactory implements PooledObjectFactory<InfluxDB> {
         this.innerPool = innerPool;
     }
 
-    @Override
-    public PooledObject<InfluxDB> makeObject() {
+    private OkHttpClient sharedHttpClient() {
+        OkHttpClient httpClient = sharedHttpClient;
+        if (httpClient == null) {
+            synchronized (this) {
+                if (sharedHttpClient == null) {
+                    ownsHttpResources = okHttpClient == null;
+                    sharedHttpClient = buildHttpClient();
+                }
+                httpClient = sharedHttpClient;
+            }
+        }
+        return httpClient;
+    }
 
-        OkHttpClient.Builder builder = new OkHttpClient.Builder()
-                .connectTimeout(connectionTimeout, TimeUnit.MILLISECONDS)
-                .readTimeout(soTimeout, TimeUnit.MILLISECONDS)
-                //.socketFactory()
-                //.sslSocketFactory()
-                ;
+    private OkHttpClient buildHttpClient() {
+        OkHttpClient.Builder builder;
+        if (okHttpClient != null) {
+            //与调用方的client共用dispatcher和连接池
+            builder = okHttpClient.newBuilder();
+        } else {
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(dispatcherMaxRequests);
+            dispatcher.setMaxRequestsPerHost(dispatcherMaxRequestsPerHost);
+            builder = new OkHttpClient.Builder()
+                    .connectTimeout(connectionTimeout, TimeUnit.MILLISECONDS)
+                    .readTimeout(soTimeout, TimeUnit.MILLISECONDS)
+                    .writeTimeout(soTimeout, TimeUnit.MILLISECONDS)
+                    .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMillis, TimeUnit.MILLISECONDS))
+                    .dispatcher(dispatcher)
+                    .protocols(http2 ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1) : Collections.singletonList(Protocol.HTTP_1_1));
+        }
 
+        builder.addInterceptor(new CompressionInterceptor(compressionPolicy, wireStats));
         if (logHttp) {
             HttpLoggingInterceptor httpLoggingInterceptor = new HttpLoggingInterceptor();
             httpLoggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
             builder.addNetworkInterceptor(httpLoggingInterceptor);
         }
+        builder.addNetworkInterceptor(new CompressionInterceptor.WireCounter(wireStats));
+        return builder.build();
+    }
+
+    @Override
+    public PooledObject<InfluxDB> makeObject() {
+
+        //newBuilder共用连接池和dispatcher; InfluxDBFactory会往builder中添加自己的interceptor, 所以每个client需要单独的builder
+        OkHttpClient.Builder builder = sharedHttpClient().newBuilder();
 
         InfluxDB client;
         if (Utils.isEmpty(username) || Utils.isEmpty(password)) {
@@ -89,40 +149,77 @@ public class InfluxDBClientFactory implements PooledObjectFactory<InfluxDB> {
 
         //client config/settings - 看下是全局设置还是在使用的时候设置然后return的时候重置?
 //        client.disableBatch();
-//        client.disableGzip();
+        //不使用 client.enableGzip(): 压缩由 CompressionInterceptor 按 compressionPolicy 处理
 
-        return new DefaultPooledObject<>(InfluxDBProxy.newProxy(client, innerPool, logQueryResult));
+        //没有连接池时不包装 - 包装只是为了在close的时候将client放回到对象池中
+        return new DefaultPooledObject<>(innerPool == null ? client : new PooledInfluxDB(client, innerPool, logQueryResult));
     }
 
     @Override
     public void destroyObject(PooledObject<InfluxDB> pooledObject) {
         InfluxDB client = getClient(pooledObject);
         if (client != null) {
-
-            if (client instanceof InfluxDBproxyHelper) {
-//                ((InfluxDBproxyHelper) client).getTarget().close();
-                ((InfluxDBproxyHelper) client).close();
-            } else {
-                client.close();
+            InfluxDB target = client instanceof InfluxDBproxyHelper ? ((InfluxDBproxyHelper) client).getTarget() : client;
+            //不调用close: InfluxDBImpl.close会关闭共用的dispatcher和连接池, 由 shutdown 统一关闭
+            if (target.isBatchEnabled()) {
+                target.disableBatch();
             }
         }
     }
 
+    /**
+     * @return 共用连接池中的连接数(含正在使用的)
+     */
+    public int getConnectionCount() {
+        OkHttpClient httpClient = sharedHttpClient;
+        return httpClient == null ? 0 : httpClient.connectionPool().connectionCount();
+    }
+
+    public int getIdleConnectionCount() {
+        OkHttpClient httpClient = sharedHttpClient;
+        return httpClient == null ? 0 : httpClient.connectionPool().idleConnectionCount();
+    }
+
+    /**
+     * 关闭共用的dispatcher线程池和连接池中的连接, 连接池关闭时调用; 设置了 okHttpClient 时由调用方关闭, 这里不处理
+     */
+    void shutdown() {
+        OkHttpClient httpClient = sharedHttpClient;
+        if (httpClient != null && ownsHttpResources) {
+            httpClient.dispatcher().executorService().shutdown();
+            httpClient.connectionPool().evictAll();
+        }
+    }
+
     private InfluxDB getClient(PooledObject<InfluxDB> pooledObject) {
         return pooledObject.getObject();
     }
 
     @Override
     public boolean validateObject(PooledObject<InfluxDB> pooledObject) {
+        long lastUsed = Math.max(pooledObject.getCreateTime(), pooledObject.getLastReturnTime());
+        if (System.currentTimeMillis() - lastUsed < validationIntervalMillis) {
+            return true;
+        }
         InfluxDB client = getClient(pooledObject);
+        boolean valid = false;
         try {
             client.ping();
+            valid = true;
             return true;
         } catch (InfluxDBIOException io) {
             return false;
+        } finally {
+            if (!valid) {
+                validationFailures.increment();
+            }
         }
     }
 
+    public long getValidationFailureCount() {
+        return validationFailures.sum();
+    }
+
     @Override
     public void activateObject(PooledObject<InfluxDB> p) {
         //dummy
@@ -135,120 +232,9 @@ public class InfluxDBClientFactory implements PooledObjectFactory<InfluxDB> {
 
 
     //package visible
-    interface InfluxDBproxyHelper extends Closeable {
+    interface InfluxDBproxyHelper {
         InfluxDB getTarget();
 
         InfluxDBClientPool getDataSource();
-
-        @Override
-        default void close() {
-            getTarget().close();
-        }
-    }
-
-    @Getter
-    private static class InfluxDBProxy implements InvocationHandler {
-
-        private final InfluxDB target;
-        private final InfluxDBClientPool datasource;
-
-        private boolean isBroken;
-
-        @Setter
-        private boolean logQueryResult;
-
-        private InfluxDBProxy(InfluxDB target, InfluxDBClientPool datasource, boolean logQueryResult) {
-            this.target = target;
-            this.datasource = datasource;
-            this.logQueryResult = logQueryResult;
-        }
-
-        static InfluxDB newProxy(InfluxDB client, InfluxDBClientPool datasource) {
-            return newProxy(client, datasource, false);
-        }
-
-        static InfluxDB newProxy(InfluxDB client, InfluxDBClientPool datasource, boolean logQueryResult) {
-            if (datasource == null) {//如果没有datasource就暂时不代理 - 代理只处理close的时候将target放回到对象池中
-                return client;
-            }
-            Objects.requireNonNull(client);
-            return (InfluxDB) Proxy.newProxyInstance(Utils.getClassLoader(),
-                    new Class[]{InfluxDB.class, InfluxDBproxyHelper.class},
-                    new InfluxDBProxy(client, datasource, logQueryResult));
-        }
-
-        @Override
-        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-
-            Class<?> declaringClass = method.getDeclaringClass();
-
-            String methodName = method.getName();
-            Class<?> returnType = method.getReturnType();
-
-            if (declaringClass == InfluxDBproxyHelper.class) {
-                if (methodName.equals("getTarget")) {
-                    return this.target;
-                } else if (methodName.equals("getDataSource")) {
-                    return this.datasource;
-                }
-                return null;
-
-            } else {
-                if (methodName.equals("close") && datasource != null) {
-                    if (isBroken) {
-                        datasource.invalidateObject((InfluxDB) proxy);
-                    } else {
-                        datasource.returnObject((InfluxDB) proxy);
-                    }
-                    return null;
-                } else if (methodName.equals("query") && (args.length > 1 && args[0] instanceof Query)/*in case..*/) {
-                    Query query = (Query) args[0];
-                    logQuery(query);
-                }
-
-                try {
-                    Object result = method.invoke(target, args);
-
-                    if (methodName.equals("query") && logQueryResult && returnType == QueryResult.class) {
-                        log.debug("Query Result : {}", result);
-                    }
-                    return result;
-                } catch (InvocationTargetException e) {
-                    if (e.getCause() instanceof IOException) {//TODO 需要看具体是什么异常
-                        //add log...
-                        isBroken = true;
-                    }
-                    throw e;
-                }
-            }
-        }
-
-        @SuppressWarnings("unchecked")
-        private void logQuery(Query query) {
-            if (log.isDebugEnabled()) {
-                String queryString = query.getCommand();
-
-                if (query instanceof BoundParameterQuery) {
-                    Field paramsField = Utils.findField(BoundParameterQuery.class, "params");
-
-                    if (paramsField != null) {
-                        Utils.makeAccessible(paramsField);
-                        Map<String, Object> params = (Map<String, Object>) Utils.getField(paramsField, query);
-
-                        if (params != null) {
-
-                            for (Map.Entry<String, Object> enrty : params.entrySet()) {
-                                String paramName = enrty.getKey();
-                                String paramValue = String.valueOf(enrty.getValue());
-
-                                queryString = queryString.replaceAll("\\$" + paramName, "'" + paramValue + "'");
-                            }
-                        }
-                    }
-                    log.debug("Query Command : {}", queryString);
-                }
-            }
-        }
-
     }
 }
@@ -1,16 +1,43 @@
 package xyz.asitanokibou.data.influxdb;
 
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.pool2.impl.AbandonedConfig;
 import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.influxdb.InfluxDB;
+import xyz.asitanokibou.data.influxdb.metrics.InfluxDBMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author aimysaber@gmail.com
  */
 //TODO 使用组合方式不用继承(InfluxDBPool)  当前发现作为bean被spring管理的时候发现重复注册MBean的情况
+@Slf4j
 public class InfluxDBClientPool extends GenericObjectPool<InfluxDB> {
 
+    private volatile InfluxDBMetrics metrics = InfluxDBMetrics.NOOP;
+    //已借出的client数, 与getNumActive相同但不需要加锁, 用于多节点的负载均衡
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final InfluxDBClientFactory factory;
+
+    //预热结果, 调用warmUp后不为null
+    private volatile CompletableFuture<Boolean> warmUp;
+    private volatile boolean ready;
+    private final AtomicBoolean priming = new AtomicBoolean();
+    //预热和后台重新预热共用, 每个client一个线程(同时ping才会建立多个连接), 空闲的线程60秒后退出
+    private final ExecutorService warmUpExecutor = Executors.newCachedThreadPool(Utils.namedDaemonThreadFactory("influxdb-pool-warmup"));
+
     public static InfluxDBClientPool create(String url,String username,String password){
         return new InfluxDBClientPool(url, username, password);
     }
@@ -21,16 +48,188 @@ public class InfluxDBClientPool extends GenericObjectPool<InfluxDB> {
 
     public InfluxDBClientPool(InfluxDBClientFactory factory) {
         super(factory);
+        this.factory = factory;
         factory.setInnerPool(this);
     }
 
     public InfluxDBClientPool(InfluxDBClientFactory factory, GenericObjectPoolConfig<InfluxDB> config) {
         super(factory, config);
+        this.factory = factory;
         factory.setInnerPool(this);
     }
 
     public InfluxDBClientPool(InfluxDBClientFactory factory, GenericObjectPoolConfig<InfluxDB> config, AbandonedConfig abandonedConfig) {
         super(factory, config, abandonedConfig);
+        this.factory = factory;
         factory.setInnerPool(this);
     }
+
+    /**
+     * @return 已借出的client数
+     */
+    public int getNumInUse() {
+        return inUse.get();
+    }
+
+    /**
+     * @return 校验(validateObject ping)失败的次数
+     */
+    public long getValidationFailureCount() {
+        return factory.getValidationFailureCount();
+    }
+
+    public InfluxDBMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(InfluxDBMetrics metrics) {
+        this.metrics = metrics == null ? InfluxDBMetrics.NOOP : metrics;
+    }
+
+    @Override
+    public InfluxDB borrowObject(long borrowMaxWaitMillis) throws Exception {
+        InfluxDBMetrics metrics = this.metrics;
+        if (metrics == InfluxDBMetrics.NOOP) {
+            InfluxDB client = super.borrowObject(borrowMaxWaitMillis);
+            inUse.incrementAndGet();
+            return client;
+        }
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            InfluxDB client = super.borrowObject(borrowMaxWaitMillis);
+            inUse.incrementAndGet();
+            success = true;
+            return client;
+        } finally {
+            metrics.recordBorrow(System.nanoTime() - start, success);
+            metrics.recordPoolState(getNumActive(), getNumIdle());
+        }
+    }
+
+    @Override
+    public void returnObject(InfluxDB obj) {
+        super.returnObject(obj);
+        inUse.decrementAndGet();
+        recordPoolState();
+    }
+
+    @Override
+    public void invalidateObject(InfluxDB obj) throws Exception {
+        super.invalidateObject(obj);
+        inUse.decrementAndGet();
+        recordPoolState();
+    }
+
+    /**
+     * 异步预热: 并行创建 minIdle(至少一个)个client并各ping一次, 同时在共用的http连接池中建立keep-alive连接,
+     * 避免启动后的第一批请求承担创建client和建立连接的开销. 重复调用返回同一个结果
+     * @return 至少一个ping成功时为true
+     */
+    public synchronized CompletableFuture<Boolean> warmUp() {
+        if (warmUp == null) {
+            priming.set(true);
+            warmUp = prime(warmUpSize());
+            warmUp.whenComplete((result, e) -> priming.set(false));
+        }
+        return warmUp;
+    }
+
+    /**
+     * 预热并等待完成
+     * @return 是否已就绪; 超时时返回false, 预热在后台继续
+     */
+    public boolean warmUp(long timeout, TimeUnit unit) {
+        try {
+            warmUp().get(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            //以ready为准
+        }
+        return ready;
+    }
+
+    /**
+     * @return 最近一次预热(或之后的后台预热)中是否有ping成功; 后台预热全部失败时变为false
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 调用过 {@link #warmUp()} 时, 每次空闲检测(需要设置timeBetweenEvictionRunsMillis)后如果还没有就绪,
+     * 或者共用连接池中的连接被回收到预热数量以下, 在后台重新预热; 否则ping一次, 失败时 {@link #isReady()} 变为false
+     */
+    @Override
+    public void evict() throws Exception {
+        super.evict();
+        if (warmUp != null && priming.compareAndSet(false, true)) {
+            boolean full = !ready || factory.getConnectionCount() < Math.min(warmUpSize(), factory.getMaxIdleConnections());
+            prime(full ? warmUpSize() : 1).whenComplete((result, e) -> priming.set(false));
+        }
+    }
+
+    private CompletableFuture<Boolean> prime(int size) {
+        if (size <= 0) {
+            return CompletableFuture.completedFuture(false);
+        }
+        List<CompletableFuture<Boolean>> pings = new ArrayList<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                pings.add(CompletableFuture.supplyAsync(this::primeClient, warmUpExecutor));
+            }
+        } catch (RejectedExecutionException e) {
+            //连接池已关闭
+            pings.add(CompletableFuture.completedFuture(false));
+        }
+        return CompletableFuture.allOf(pings.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            long success = pings.stream().filter(CompletableFuture::join).count();
+            boolean wasReady = ready;
+            ready = success > 0;
+            if (size > 1 || wasReady != ready) {
+                log.info("InfluxDB client pool warmed up, {} of {} pings succeeded, {} connections", success, size, factory.getConnectionCount());
+            }
+            return success > 0;
+        });
+    }
+
+    private boolean primeClient() {
+        try {
+            if (getNumIdle() + getNumActive() < warmUpSize()) {
+                addObject();
+            }
+            InfluxDB client = borrowObject();
+            try {
+                return client.ping().isGood();
+            } finally {
+                returnObject(client);
+            }
+        } catch (Exception e) {
+            log.warn("InfluxDB client pool warm-up ping failed", e);
+            return false;
+        }
+    }
+
+    private int warmUpSize() {
+        int size = Math.max(1, getMinIdle());
+        return getMaxTotal() < 0 ? size : Math.min(size, getMaxTotal());
+    }
+
+    /**
+     * 关闭连接池后关闭所有client共用的http client
+     */
+    @Override
+    public void close() {
+        super.close();
+        warmUpExecutor.shutdown();
+        factory.shutdown();
+    }
+
+    private void recordPoolState() {
+        InfluxDBMetrics metrics = this.metrics;
+        if (metrics != InfluxDBMetrics.NOOP) {
+            metrics.recordPoolState(getNumActive(), getNumIdle());
+        }
+    }
 }
@@ -0,0 +1,396 @@
+package xyz.asitanokibou.data.influxdb;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.influxdb.InfluxDB;
+import org.influxdb.InfluxDBIOException;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXConnectionException;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXException;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXPartialWriteException;
+import xyz.asitanokibou.data.influxdb.metrics.InfluxDBMetrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 多节点的数据源(如relay对, 只读副本): 每个节点一个连接池.
+ * <ul>
+ *     <li>读: 在健康的节点间按 {@link LoadBalancePolicy} 选择, 获取client失败时换下一个节点</li>
+ *     <li>写: 并行写入所有健康的节点, 按 {@link WriteSuccessPolicy} 判断是否成功(默认所有节点都成功)</li>
+ *     <li>获取client时校验失败(validateObject ping)或请求抛出IO异常的节点会被移出, 后台定时ping, 成功后恢复</li>
+ * </ul>
+ * 没有健康节点时仍会尝试所有节点
+ * @author aimysaber@gmail.com
+ */
+@Slf4j
+public class InfluxDBRoutingDataSource implements AutoCloseable {
+
+    public enum LoadBalancePolicy {
+        /**
+         * 正在使用的client最少的节点
+         */
+        LEAST_OUTSTANDING,
+        /**
+         * 平均延迟 * (正在使用的client数 + 1) 最小的节点
+         */
+        LATENCY_WEIGHTED
+    }
+
+    public enum WriteSuccessPolicy {
+        /**
+         * 所有节点都成功才算成功, 部分节点失败时抛出 {@link InfluxDBXPartialWriteException}(其中有失败的节点)
+         */
+        ALL,
+        /**
+         * 至少一个节点成功即为成功, 其他节点的失败只记录日志(节点之间的数据可能不一致)
+         */
+        ANY
+    }
+
+    //延迟的指数移动平均系数
+    private static final double LATENCY_DECAY = 0.2;
+
+    private final List<Node> nodes;
+    private final Map<InfluxDBClientPool, Node> nodesByPool = new IdentityHashMap<>();
+    private volatile LoadBalancePolicy loadBalancePolicy = LoadBalancePolicy.LEAST_OUTSTANDING;
+    private volatile WriteSuccessPolicy writeSuccessPolicy = WriteSuccessPolicy.ALL;
+    //选择时的起始位置, 使相同负载的节点轮流被选中
+    private final AtomicInteger nextStart = new AtomicInteger();
+
+    private final ScheduledExecutorService healthChecker;
+    //并行写入其他节点, 满了由调用线程执行(不能和分片写入共用线程池, 否则分片worker会等待排在自己后面的任务)
+    private final ThreadPoolExecutor fanOutExecutor;
+
+    public static InfluxDBRoutingDataSource create(List<String> urls, String username, String password) {
+        List<InfluxDBClientPool> pools = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            pools.add(InfluxDBClientPool.create(url, username, password));
+        }
+        return new InfluxDBRoutingDataSource(pools);
+    }
+
+    public InfluxDBRoutingDataSource(List<InfluxDBClientPool> pools) {
+        this(pools, 5000);
+    }
+
+    /**
+     * @param pools 每个节点的连接池
+     * @param healthCheckIntervalMillis 不健康节点的检查间隔
+     */
+    public InfluxDBRoutingDataSource(List<InfluxDBClientPool> pools, long healthCheckIntervalMillis) {
+        if (Utils.isEmpty(pools)) {
+            throw new IllegalArgumentException("at least one node is required");
+        }
+        List<Node> list = new ArrayList<>(pools.size());
+        for (int i = 0; i < pools.size(); i++) {
+            Node node = new Node(nodeName(pools.get(i), i), pools.get(i));
+            list.add(node);
+            nodesByPool.put(node.pool, node);
+        }
+        this.nodes = Collections.unmodifiableList(list);
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                Utils.namedDaemonThreadFactory("influxdb-health-check"));
+        executor.scheduleWithFixedDelay(this::checkUnhealthyNodes, healthCheckIntervalMillis, healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+        this.healthChecker = executor;
+
+        this.fanOutExecutor = new ThreadPoolExecutor(0, Math.max(1, (nodes.size() - 1) * 8), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), Utils.namedDaemonThreadFactory("influxdb-write-fan-out"));
+    }
+
+    private static String nodeName(InfluxDBClientPool pool, int index) {
+        PooledObjectFactory<InfluxDB> factory = pool.getFactory();
+        return factory instanceof InfluxDBClientFactory ? ((InfluxDBClientFactory) factory).getDburl() : "node-" + index;
+    }
+
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    public LoadBalancePolicy getLoadBalancePolicy() {
+        return loadBalancePolicy;
+    }
+
+    public void setLoadBalancePolicy(LoadBalancePolicy loadBalancePolicy) {
+        this.loadBalancePolicy = loadBalancePolicy;
+    }
+
+    public WriteSuccessPolicy getWriteSuccessPolicy() {
+        return writeSuccessPolicy;
+    }
+
+    public void setWriteSuccessPolicy(WriteSuccessPolicy writeSuccessPolicy) {
+        this.writeSuccessPolicy = writeSuccessPolicy;
+    }
+
+    public void setMetrics(InfluxDBMetrics metrics) {
+        nodes.forEach(node -> node.pool.setMetrics(metrics));
+    }
+
+    /**
+     * 获取一个读请求的client, 使用完需要close
+     */
+    InfluxDB getReadResource() {
+        List<Node> candidates = readCandidates();
+        RuntimeException error = null;
+        for (Node node : candidates) {
+            try {
+                return borrow(node);
+            } catch (RuntimeException e) {
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+        throw error;
+    }
+
+    /**
+     * 在选中的节点上执行, 记录节点的延迟; 请求抛出IO异常时移出该节点(不会在其他节点上重试, 以免重复执行非幂等的操作)
+     */
+    <T> T execute(InfluxDBClientCallback<T> callback) {
+        try (InfluxDB client = getReadResource()) {
+            Node node = nodeOf(client);
+            long start = System.nanoTime();
+            try {
+                T result = callback.execute(client);
+                if (node != null) {
+                    node.recordLatency(System.nanoTime() - start);
+                }
+                return result;
+            } catch (InfluxDBIOException e) {
+                if (node != null) {
+                    markDown(node, e);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 在所有健康的节点上执行(写入, DDL), 第一个节点由当前线程执行, 其余的并行执行.
+     * 全部失败时抛出第一个节点的异常; 部分失败时按 writeSuccessPolicy 抛出 {@link InfluxDBXPartialWriteException} 或只记录日志
+     */
+    void executeOnAll(InfluxDBClientCallbackWithNoResult callback) {
+        List<Node> targets = healthyNodes();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(targets.size() - 1);
+        for (int i = 1; i < targets.size(); i++) {
+            Node node = targets.get(i);
+            try {
+                futures.add(CompletableFuture.runAsync(() -> executeOn(node, callback), fanOutExecutor));
+            } catch (RejectedExecutionException e) {
+                futures.add(runNow(node, callback));
+            }
+        }
+        List<Throwable> errors = new ArrayList<>();
+        List<String> failedNodes = new ArrayList<>();
+        List<String> succeededNodes = new ArrayList<>();
+        for (int i = 0; i < targets.size(); i++) {
+            try {
+                if (i == 0) {
+                    executeOn(targets.get(0), callback);
+                } else {
+                    futures.get(i - 1).join();
+                }
+                succeededNodes.add(targets.get(i).name);
+            } catch (RuntimeException e) {
+                errors.add(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                failedNodes.add(targets.get(i).name);
+            }
+        }
+        if (errors.isEmpty()) {
+            return;
+        }
+        Throwable first = errors.get(0);
+        errors.stream().skip(1).forEach(first::addSuppressed);
+        if (succeededNodes.isEmpty()) {
+            if (first instanceof RuntimeException) {
+                throw (RuntimeException) first;
+            }
+            throw new InfluxDBXException("write to all nodes failed", first);
+        }
+        if (writeSuccessPolicy == WriteSuccessPolicy.ALL) {
+            throw new InfluxDBXPartialWriteException("Write to " + failedNodes.size() + " of " + targets.size()
+                    + " nodes failed: " + failedNodes, first, failedNodes, succeededNodes);
+        }
+        log.warn("Write to {} of {} nodes failed: {}", failedNodes.size(), targets.size(), failedNodes, first);
+    }
+
+    private CompletableFuture<Void> runNow(Node node, InfluxDBClientCallbackWithNoResult callback) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            executeOn(node, callback);
+            future.complete(null);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void executeOn(Node node, InfluxDBClientCallbackWithNoResult callback) {
+        try (InfluxDB client = borrow(node)) {
+            long start = System.nanoTime();
+            try {
+                callback.execute(client);
+                node.recordLatency(System.nanoTime() - start);
+            } catch (InfluxDBIOException e) {
+                markDown(node, e);
+                throw e;
+            }
+        }
+    }
+
+    private InfluxDB borrow(Node node) {
+        long validationFailures = node.pool.getValidationFailureCount();
+        try {
+            return node.pool.borrowObject();
+        } catch (NoSuchElementException nse) {
+            //连接池耗尽不代表节点不可用, 只有借出期间有校验(ping)失败时才移出
+            if (node.pool.getValidationFailureCount() > validationFailures) {
+                markDown(node, nse);
+            }
+            throw new InfluxDBXException("Could not get a resource from the pool of " + node.name, nse);
+        } catch (Exception e) {
+            markDown(node, e);
+            throw new InfluxDBXConnectionException("Could not get a resource from the pool of " + node.name, e);
+        }
+    }
+
+    private Node nodeOf(InfluxDB client) {
+        if (client instanceof InfluxDBClientFactory.InfluxDBproxyHelper) {
+            return nodesByPool.get(((InfluxDBClientFactory.InfluxDBproxyHelper) client).getDataSource());
+        }
+        return null;
+    }
+
+    /**
+     * @return 按负载排序的健康节点, 没有健康节点时为所有节点
+     */
+    private List<Node> readCandidates() {
+        List<Node> healthy = healthyNodes();
+        int size = healthy.size();
+        if (size == 1) {
+            return healthy;
+        }
+        int start = Math.floorMod(nextStart.getAndIncrement(), size);
+        List<Node> ordered = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ordered.add(healthy.get((start + i) % size));
+        }
+        LoadBalancePolicy policy = this.loadBalancePolicy;
+        //List.sort 是稳定的, 相同负载时保持轮询顺序
+        ordered.sort((a, b) -> Double.compare(a.load(policy), b.load(policy)));
+        return ordered;
+    }
+
+    private List<Node> healthyNodes() {
+        List<Node> healthy = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (node.healthy) {
+                healthy.add(node);
+            }
+        }
+        return healthy.isEmpty() ? nodes : healthy;
+    }
+
+    private void markDown(Node node, Throwable cause) {
+        node.failures.increment();
+        if (node.healthy) {
+            node.healthy = false;
+            log.warn("InfluxDB node {} is marked down", node.name, cause);
+        }
+    }
+
+    private void checkUnhealthyNodes() {
+        for (Node node : nodes) {
+            if (!node.healthy) {
+                try (InfluxDB client = node.pool.borrowObject()) {
+                    client.ping();
+                    node.healthy = true;
+                    log.info("InfluxDB node {} is back", node.name);
+                } catch (Exception e) {
+                    log.debug("InfluxDB node {} is still down", node.name, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        healthChecker.shutdownNow();
+        fanOutExecutor.shutdown();
+        nodes.forEach(node -> node.pool.close());
+    }
+
+    public static final class Node {
+        private final String name;
+        private final InfluxDBClientPool pool;
+        private volatile boolean healthy = true;
+        //请求延迟的指数移动平均(纳秒)
+        private volatile double latencyNanos;
+        private final LongAdder failures = new LongAdder();
+
+        private Node(String name, InfluxDBClientPool pool) {
+            this.name = name;
+            this.pool = pool;
+        }
+
+        private void recordLatency(long nanos) {
+            double current = latencyNanos;
+            latencyNanos = current == 0 ? nanos : current + LATENCY_DECAY * (nanos - current);
+        }
+
+        private double load(LoadBalancePolicy policy) {
+            int outstanding = pool.getNumInUse();
+            if (policy == LoadBalancePolicy.LATENCY_WEIGHTED) {
+                return Math.max(1, latencyNanos) * (outstanding + 1);
+            }
+            return outstanding;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public InfluxDBClientPool getPool() {
+            return pool;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        public double getLatencyMillis() {
+            return latencyNanos / 1_000_000;
+        }
+
+        public int getOutstanding() {
+            return pool.getNumInUse();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        @Override
+        public String toString() {
+            return name + (healthy ? "(up)" : "(down)");
+        }
+    }
+}
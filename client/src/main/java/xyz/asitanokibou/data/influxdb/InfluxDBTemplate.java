@@ -6,36 +6,53 @@ import org.influxdb.dto.BoundParameterQuery;
 import org.influxdb.dto.Point;
 import org.influxdb.dto.Query;
 import org.influxdb.dto.QueryResult;
-import org.influxdb.impl.InfluxDBResultMapper;
+import xyz.asitanokibou.data.influxdb.cache.GroupByBucketCache;
+import xyz.asitanokibou.data.influxdb.cache.QueryCacheKey;
+import xyz.asitanokibou.data.influxdb.cache.QueryCacheSpec;
+import xyz.asitanokibou.data.influxdb.cache.QueryResultCache;
+import xyz.asitanokibou.data.influxdb.cache.SchemaCache;
+import xyz.asitanokibou.data.influxdb.cache.SingleFlight;
+import xyz.asitanokibou.data.influxdb.columnar.ColumnarResult;
+import xyz.asitanokibou.data.influxdb.columnar.ColumnarResultCollector;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXBatchWriteException;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXCircuitOpenException;
 import xyz.asitanokibou.data.influxdb.ex.InfluxDBXConnectionException;
 import xyz.asitanokibou.data.influxdb.ex.InfluxDBXException;
+import xyz.asitanokibou.data.influxdb.mapper.MeasurementResultMapper;
+import xyz.asitanokibou.data.influxdb.metrics.InfluxDBMetrics;
+import xyz.asitanokibou.data.influxdb.metrics.WireStats;
+import xyz.asitanokibou.data.influxdb.pojo.BatchChunkResult;
+import xyz.asitanokibou.data.influxdb.pojo.BatchWriteResult;
 import xyz.asitanokibou.data.influxdb.pojo.GroupByResult;
 import xyz.asitanokibou.data.influxdb.pojo.TimedResult;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeFormatterBuilder;
-import java.time.temporal.ChronoField;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Slf4j
-public class InfluxDBTemplate {
-
-    private static final int FRACTION_MIN_WIDTH = 0;
-    private static final int FRACTION_MAX_WIDTH = 9;
-    private static final boolean ADD_DECIMAL_POINT = true;
-    private static final DateTimeFormatter RFC3339_FORMATTER = new DateTimeFormatterBuilder()
-            .appendPattern("yyyy-MM-dd'T'HH:mm:ss")
-            .appendFraction(ChronoField.NANO_OF_SECOND, FRACTION_MIN_WIDTH, FRACTION_MAX_WIDTH, ADD_DECIMAL_POINT)
-            .appendZoneOrOffsetId()
-            .toFormatter();
+public class InfluxDBTemplate implements AutoCloseable {
+
     private InfluxDBClientPool dataSource;
+    //多节点时使用, 不为null时忽略dataSource
+    private InfluxDBRoutingDataSource routingDataSource;
 
     /*
         String name = series.getName();//measurement name
@@ -43,15 +60,60 @@ public class InfluxDBTemplate {
         Map<String, String> tags = series.getTags();
         List<List<Object> seriesValues = series.getValues();
     */
-    private InfluxDBResultMapper resultMapper; //thread-safe
+    private MeasurementResultMapper resultMapper; //thread-safe
     private SchemaOperation schemaOperation;
 
+    //writeBatch 单个请求的最大点数和最大字节数, 超过时拆分成多个请求
+    private int batchChunkSize = 3000;
+    private long batchChunkMaxBytes = 4 * 1024 * 1024;
+    //writeBatch 并行写入的最大client数
+    private int batchWriteParallelism = 4;
+    private volatile Executor batchWriteExecutor;
+    //内部创建的分片写入线程池, close时关闭; 通过setBatchWriteExecutor设置的线程池由调用方关闭
+    private ThreadPoolExecutor defaultBatchWriteExecutor;
+    //按时间范围拆分的子查询
+    private volatile ThreadPoolExecutor rangeQueryExecutor;
+
+    private AsyncWriteConfig asyncWriteConfig = AsyncWriteConfig.builder().build();
+    private volatile AsyncPointWriter asyncPointWriter;
+    //重试和熔断, 为null时不启用
+    private volatile RetryPolicy retryPolicy;
+    private volatile CircuitBreaker circuitBreaker;
+    //同时执行的请求数限制, 为null时不限制
+    private volatile Semaphore requestPermits;
+    private volatile long requestPermitTimeoutMillis;
+    //本地写入日志, 为null时不能使用 opsForSpooledWrite
+    private SpoolConfig spoolConfig;
+    private volatile SpoolingPointWriter spoolingPointWriter;
+    //close之后不再创建writer和线程池
+    private boolean closed;
+
+    //查询结果缓存, 为null时不缓存
+    private volatile QueryResultCache queryResultCache;
+    //GROUP BY time() 滚动窗口查询的增量缓存, 为null时不缓存
+    private volatile GroupByBucketCache groupByBucketCache;
+    //是否合并并发的相同查询(相同数据库,最终语句,参数和结果类型), 合并的调用共享一次请求和映射结果
+    private volatile boolean queryCoalescing;
+    private final SingleFlight<QueryCacheKey, List<?>> inFlightQueries = new SingleFlight<>();
+
+    private volatile InfluxDBMetrics metrics = InfluxDBMetrics.NOOP;
+
     //指定时区 如果语句中没有加tz 会默认自动加上
     private ZoneId zoneId = ZoneId.of("Asia/Shanghai");     //ZoneId.systemDefault();
+    private volatile String tzClause = tzClause(zoneId);
+
+    //查询返回的时间精度, 见 setQueryPrecision
+    private volatile TimeUnit queryPrecision = TimeUnit.MILLISECONDS;
+
+    //原始查询语句 -> 解析后的模板, 避免每次查询都重新解析
+    private static final int MAX_PREPARED_QUERIES = 1024;
+    private final ConcurrentMap<String, PreparedInfluxQuery> preparedQueries = new ConcurrentHashMap<>();
 
     public void setTimeZone(String timeZone) {
         try {
             zoneId = ZoneId.of(timeZone);
+            tzClause = tzClause(zoneId);
+            resultMapper.setZoneId(zoneId);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -61,64 +123,571 @@ public class InfluxDBTemplate {
         return zoneId;
     }
 
+    private static String tzClause(ZoneId zoneId) {
+        return " tz('" + zoneId.toString() + "') ";
+    }
+
+    /**
+     * 解析查询模板, 相同的语句返回同一个(缓存的)实例
+     * @param rawQuery 原始查询语句
+     * @return -
+     */
+    public PreparedInfluxQuery prepare(@Nonnull String rawQuery) {
+        PreparedInfluxQuery prepared = preparedQueries.get(rawQuery);
+        if (prepared == null) {
+            prepared = PreparedInfluxQuery.prepare(rawQuery);
+            if (preparedQueries.size() >= MAX_PREPARED_QUERIES) {
+                preparedQueries.clear();
+            }
+            preparedQueries.put(rawQuery, prepared);
+        }
+        return prepared;
+    }
+
+    public InfluxDBTemplate(InfluxDBRoutingDataSource routingDataSource) {
+        this((InfluxDBClientPool) null);
+        this.routingDataSource = routingDataSource;
+    }
+
     public InfluxDBTemplate(InfluxDBClientPool influxDBClientPool) {
         this.dataSource = influxDBClientPool;
-        this.resultMapper = new InfluxDBResultMapper();
+        this.resultMapper = new MeasurementResultMapper();
+        this.resultMapper.setZoneId(zoneId);
 
         this.schemaOperation = new SchemaOperation(this);
     }
 
+    /**
+     * 停止异步写入(等待缓冲区写完)和本地写入日志的重放, 关闭内部创建的线程池以及schema缓存的后台刷新线程.
+     * 数据源和通过setter设置的线程池由调用方关闭; 关闭后不能再使用异步写入/本地写入日志
+     */
+    @Override
+    public void close() {
+        AsyncPointWriter asyncWriter;
+        SpoolingPointWriter spoolingWriter;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            asyncWriter = asyncPointWriter;
+            spoolingWriter = spoolingPointWriter;
+        }
+        //writer关闭时仍会通过本对象写入, 不在锁内等待
+        if (asyncWriter != null) {
+            asyncWriter.close();
+        }
+        if (spoolingWriter != null) {
+            spoolingWriter.close();
+        }
+        synchronized (this) {
+            if (defaultBatchWriteExecutor != null) {
+                defaultBatchWriteExecutor.shutdown();
+            }
+            if (rangeQueryExecutor != null) {
+                rangeQueryExecutor.shutdown();
+            }
+        }
+        SchemaCache schemaCache = schemaOperation.getSchemaCache();
+        if (schemaCache != null) {
+            schemaCache.close();
+        }
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new InfluxDBXException("InfluxDBTemplate is closed");
+        }
+    }
+
     public SchemaOperation opsForSchema() {
         return schemaOperation;
     }
 
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    public void setQueryResultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
+    public TimeUnit getQueryPrecision() {
+        return queryPrecision;
+    }
+
+    /**
+     * 查询结果中时间的精度, 默认为毫秒. 影响 TimedResult/GroupByResult 的epoch, 映射对象的时间字段和列存结果.
+     * 纳秒精度的epoch超出了double(json数值)的精确范围, 所以纳秒精度查询时不指定epoch, 由服务端返回RFC3339字符串再解析
+     */
+    public void setQueryPrecision(TimeUnit queryPrecision) {
+        this.queryPrecision = Objects.requireNonNull(queryPrecision);
+    }
+
+    private QueryResult queryWithPrecision(InfluxDB client, Query query) {
+        TimeUnit precision = queryPrecision;
+        return precision == TimeUnit.NANOSECONDS ? client.query(query) : client.query(query, precision);
+    }
+
+    public GroupByBucketCache getGroupByBucketCache() {
+        return groupByBucketCache;
+    }
+
+    public void setGroupByBucketCache(GroupByBucketCache groupByBucketCache) {
+        this.groupByBucketCache = groupByBucketCache;
+    }
+
+    public boolean isQueryCoalescing() {
+        return queryCoalescing;
+    }
+
+    /**
+     * 开启后并发的相同查询只发出一次请求, 每个调用者得到结果列表的拷贝(列表中的元素是共享的, 不应修改)
+     */
+    public void setQueryCoalescing(boolean queryCoalescing) {
+        this.queryCoalescing = queryCoalescing;
+    }
+
+    /**
+     * @return 因合并而没有发出请求的查询次数
+     */
+    public long getCoalescedQueryCount() {
+        return inFlightQueries.getSharedCount();
+    }
+
+    public InfluxDBMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 设置指标收集, 同时设置到连接池上
+     */
+    public void setMetrics(InfluxDBMetrics metrics) {
+        this.metrics = metrics == null ? InfluxDBMetrics.NOOP : metrics;
+        if (dataSource != null) {
+            dataSource.setMetrics(this.metrics);
+        }
+        if (routingDataSource != null) {
+            routingDataSource.setMetrics(this.metrics);
+        }
+    }
+
+    /**
+     * @return 单节点的连接池
+     * @throws IllegalStateException 多节点(InfluxDBRoutingDataSource)时没有单个连接池, 使用 {@link #getRoutingDataSource()}
+     */
     public InfluxDBClientPool getDataSource() {
+        if (routingDataSource != null) {
+            throw new IllegalStateException("Template uses a routing data source, use getRoutingDataSource()");
+        }
         return dataSource;
     }
 
     public void setDataSource(InfluxDBClientPool dataSource) {
         this.dataSource = dataSource;
+        if (dataSource != null && metrics != InfluxDBMetrics.NOOP) {
+            dataSource.setMetrics(metrics);
+        }
+    }
+
+    public InfluxDBRoutingDataSource getRoutingDataSource() {
+        return routingDataSource;
     }
 
+    /**
+     * 在一个client上执行, 多节点时按负载均衡选择一个节点(callback中的写入/DDL只到达这一个节点,
+     * 需要写入所有节点时使用 {@link #executeWrite(InfluxDBClientCallbackWithNoResult)}).
+     * 不重试(callback中可能有写入或DDL, 重复执行会产生重复数据), 只读的callback使用 {@link #executeRead(InfluxDBClientCallback)}
+     */
     public <T> T execute(InfluxDBClientCallback<T> callback) {
+        return withResilience(() -> doExecute(callback), false);
+    }
+
+    /**
+     * 同 {@link #execute(InfluxDBClientCallback)}, 但按 retryPolicy 重试; callback 只能包含读操作
+     */
+    public <T> T executeRead(InfluxDBClientCallback<T> callback) {
+        return withResilience(() -> doExecute(callback), true);
+    }
+
+    private <T> T doExecute(InfluxDBClientCallback<T> callback) {
+        if (routingDataSource != null) {
+            return routingDataSource.execute(callback);
+        }
         try (InfluxDB client = getResource()) {
             return callback.execute(client);
         }
     }
 
+    /**
+     * 执行写操作(写入, DDL), 多节点时写入所有健康的节点, 见 {@link InfluxDBRoutingDataSource.WriteSuccessPolicy};
+     * 不重试(点可能没有时间戳, 重复写入会产生重复数据)
+     */
+    public void executeWrite(InfluxDBClientCallbackWithNoResult callback) {
+        withResilience(() -> doExecuteWrite(callback), false);
+    }
+
+    /**
+     * 执行可以重复执行的写操作(如所有点都带时间戳的批量写入分片), 按 retryPolicy 重试
+     */
+    void executeIdempotentWrite(InfluxDBClientCallbackWithNoResult callback) {
+        withResilience(() -> doExecuteWrite(callback), true);
+    }
+
+    private Void doExecuteWrite(InfluxDBClientCallbackWithNoResult callback) {
+        if (routingDataSource != null) {
+            routingDataSource.executeOnAll(callback);
+        } else {
+            doExecute(callback);
+        }
+        return null;
+    }
+
+    /**
+     * 熔断器打开时直接失败; retryable 为true时按 retryPolicy 重试
+     */
+    private <T> T withResilience(Supplier<T> call, boolean retryable) {
+        RetryPolicy retryPolicy = retryable ? this.retryPolicy : null;
+        CircuitBreaker circuitBreaker = this.circuitBreaker;
+        if (retryPolicy == null && circuitBreaker == null) {
+            return withPermit(call);
+        }
+
+        long start = System.currentTimeMillis();
+        RuntimeException lastFailure = null;
+        for (int attempt = 1; ; attempt++) {
+            if (circuitBreaker != null && !circuitBreaker.tryAcquire()) {
+                InfluxDBXCircuitOpenException open = new InfluxDBXCircuitOpenException("Circuit breaker is open, call rejected");
+                if (lastFailure != null) {
+                    open.addSuppressed(lastFailure);
+                }
+                throw open;
+            }
+            T result = null;
+            boolean success = false;
+            RuntimeException e = null;
+            try {
+                result = withPermit(call);
+                success = true;
+            } catch (RuntimeException ex) {
+                e = ex;
+            } finally {
+                //在finally中报告结果, Error等也计为失败, 否则半开状态的试探调用不会被释放
+                if (circuitBreaker != null) {
+                    //服务端正常响应的错误(如语句错误)不影响熔断
+                    if (success || e != null && !RetryPolicy.isTransientFailure(e)) {
+                        circuitBreaker.onSuccess();
+                    } else {
+                        circuitBreaker.onFailure();
+                    }
+                }
+            }
+            if (success) {
+                return result;
+            }
+
+            if (retryPolicy == null || attempt >= retryPolicy.getMaxAttempts() || !retryPolicy.getRetryOn().test(e)) {
+                throw e;
+            }
+            long backoff = retryPolicy.backoffMillis(attempt);
+            long deadline = retryPolicy.getDeadlineMillis();
+            if (deadline > 0 && System.currentTimeMillis() - start + backoff >= deadline) {
+                throw e;
+            }
+            log.debug("Attempt {} failed, retry in {} ms", attempt, backoff, e);
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw e;
+            }
+            lastFailure = e;
+        }
+    }
+
+    private <T> T withPermit(Supplier<T> call) {
+        Semaphore permits = this.requestPermits;
+        if (permits == null) {
+            return call.get();
+        }
+        try {
+            if (!permits.tryAcquire(requestPermitTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new InfluxDBXException("Timed out waiting for a request permit after " + requestPermitTimeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InfluxDBXException("Interrupted while waiting for a request permit", e);
+        }
+        try {
+            return call.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 用信号量限制同时执行的请求数, 用于大量线程(如虚拟线程)同时调用的场景: 超出的调用在信号量上按顺序排队,
+     * 不在连接池上等待, 连接池的maxTotal会调整为不小于 maxConcurrentRequests (多节点时需要自行调整各节点的连接池).
+     * 持有client的流式/分块查询不受限制
+     * @param maxConcurrentRequests 最多同时执行的请求数, 不大于0时不限制
+     * @param acquireTimeoutMillis 等待的超时时间
+     */
+    public void setMaxConcurrentRequests(int maxConcurrentRequests, long acquireTimeoutMillis) {
+        if (maxConcurrentRequests <= 0) {
+            this.requestPermits = null;
+            return;
+        }
+        if (dataSource != null && dataSource.getMaxTotal() >= 0 && dataSource.getMaxTotal() < maxConcurrentRequests) {
+            dataSource.setMaxTotal(maxConcurrentRequests);
+        }
+        this.requestPermitTimeoutMillis = acquireTimeoutMillis;
+        this.requestPermits = new Semaphore(maxConcurrentRequests, true);
+    }
+
+    /**
+     * @return 正在等待执行的请求数, 没有限制时为0
+     */
+    public int getWaitingRequestCount() {
+        Semaphore permits = this.requestPermits;
+        return permits == null ? 0 : permits.getQueueLength();
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * 查询(含 executeRead)和批量写入(writeBatch, 只重试所有点都带时间戳的分片)的重试策略, 为null时不重试; execute 不重试
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * 所有读写共用的熔断器, 为null时不熔断
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    boolean isRouting() {
+        return routingDataSource != null;
+    }
+
+    /**
+     * @return 查询实际使用的数据库: database 为空时为连接池(多节点时为第一个节点)的默认数据库, 没有设置时为null
+     */
+    String effectiveDatabase(String database) {
+        if (Utils.isNotEmpty(database)) {
+            return database;
+        }
+        InfluxDBClientPool pool = routingDataSource != null
+                ? routingDataSource.getNodes().get(0).getPool() : dataSource;
+        if (pool != null && pool.getFactory() instanceof InfluxDBClientFactory) {
+            String defaultDatabase = ((InfluxDBClientFactory) pool.getFactory()).getDefaultDatabase();
+            return Utils.isNotEmpty(defaultDatabase) ? defaultDatabase : null;
+        }
+        return null;
+    }
+
     public void write(String database, String retentionPolicy,Point point){
-        execute(new InfluxDBClientCallbackWithNoResult() {
+        executeWrite(new InfluxDBClientCallbackWithNoResult() {
             @Override
             public void executeWithNoResult(InfluxDB client) {
                 //client.write(point); //保存到默认的dataase上
                 //为防止写错 需要显示指定
-                client.write(database, retentionPolicy, point);
+                long start = System.nanoTime();
+                boolean success = false;
+                try {
+                    client.write(database, retentionPolicy, point);
+                    success = true;
+                } finally {
+                    metrics.recordWrite(database, 1, System.nanoTime() - start, success);
+                }
             }
         });
     }
 
-    public void writeBatch(String database, String retentionPolicy, List<Point> points){
-
-        if (Utils.isEmpty(points)) {
+    /**
+     * 写入encoder中的所有点(不经过 Point), 见 {@link LineProtocolEncoder}
+     */
+    public void writeRaw(String database, String retentionPolicy, LineProtocolEncoder encoder) {
+        int points = encoder.getLineCount();
+        if (points == 0) {
             return;
         }
-
-        execute(new InfluxDBClientCallbackWithNoResult() {
+        String records = encoder.toString();
+        executeWrite(new InfluxDBClientCallbackWithNoResult() {
             @Override
             public void executeWithNoResult(InfluxDB client) {
-                boolean batnchEnablePrev = client.isBatchEnabled();
-                if (!batnchEnablePrev) {
-                    client.enableBatch();
+                long start = System.nanoTime();
+                boolean success = false;
+                try {
+                    client.write(database, retentionPolicy, InfluxDB.ConsistencyLevel.ONE, TimeUnit.NANOSECONDS, records);
+                    success = true;
+                } finally {
+                    metrics.recordWrite(database, points, System.nanoTime() - start, success);
+                }
+            }
+        });
+    }
+
+    /**
+     * 使用当前线程复用的encoder生成点并写入
+     */
+    public void writeRaw(String database, String retentionPolicy, Consumer<LineProtocolEncoder> lines) {
+        LineProtocolEncoder encoder = LineProtocolEncoder.forCurrentThread();
+        try {
+            lines.accept(encoder);
+            writeRaw(database, retentionPolicy, encoder);
+        } finally {
+            encoder.release();
+        }
+    }
+
+    /**
+     * 异步写入, 点先进入缓冲区后由writer线程批量写入; 缓冲区满时的行为见 {@link AsyncWriteConfig#getBackpressurePolicy()}
+     * @return 点写入(或失败/被丢弃)后完成的future
+     */
+    public CompletableFuture<Void> writeAsync(String database, String retentionPolicy, Point point) {
+        return opsForAsyncWrite().write(database, retentionPolicy, point);
+    }
+
+    public CompletableFuture<Void> writeAsync(String database, String retentionPolicy, List<Point> points) {
+        return opsForAsyncWrite().write(database, retentionPolicy, points);
+    }
+
+    /**
+     * 第一次调用时按 asyncWriteConfig 创建writer并启动writer线程
+     */
+    public AsyncPointWriter opsForAsyncWrite() {
+        AsyncPointWriter writer = asyncPointWriter;
+        if (writer == null) {
+            synchronized (this) {
+                if (asyncPointWriter == null) {
+                    checkNotClosed();
+                    asyncPointWriter = new AsyncPointWriter(this, asyncWriteConfig);
                 }
-                //TODO if points.size > 3000 or .... split it in multi batch process
-                points.forEach(point -> client.write(database,retentionPolicy,point));
-                client.flush();
+                writer = asyncPointWriter;
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * 需要在第一次异步写入前设置
+     */
+    public void setAsyncWriteConfig(AsyncWriteConfig asyncWriteConfig) {
+        this.asyncWriteConfig = asyncWriteConfig;
+    }
 
-                if (!batnchEnablePrev) {
-                    client.disableBatch();
+    /**
+     * 第一次调用时按 spoolConfig 打开本地写入日志并启动重放线程, 见 {@link SpoolingPointWriter}
+     */
+    public SpoolingPointWriter opsForSpooledWrite() {
+        SpoolingPointWriter writer = spoolingPointWriter;
+        if (writer == null) {
+            synchronized (this) {
+                if (spoolingPointWriter == null) {
+                    checkNotClosed();
+                    if (spoolConfig == null) {
+                        throw new InfluxDBXException("spoolConfig is not set");
+                    }
+                    spoolingPointWriter = new SpoolingPointWriter(this, spoolConfig);
                 }
+                writer = spoolingPointWriter;
             }
-        });
+        }
+        return writer;
+    }
+
+    /**
+     * 需要在第一次调用 opsForSpooledWrite 前设置
+     */
+    public void setSpoolConfig(SpoolConfig spoolConfig) {
+        this.spoolConfig = spoolConfig;
+    }
+
+    /**
+     * 批量写入 - 按 batchChunkSize(点数)/batchChunkMaxBytes(字节数) 拆分为多个分片,每个分片作为一个请求,
+     * 由最多 batchWriteParallelism 个client并行写入
+     * @param database 数据库
+     * @param retentionPolicy 保留策略
+     * @param points 数据点
+     * @return 每个分片的写入结果
+     * @throws InfluxDBXBatchWriteException 有分片写入失败时抛出, 其中包含每个分片的结果
+     */
+    public BatchWriteResult writeBatch(String database, String retentionPolicy, List<Point> points) {
+
+        if (Utils.isEmpty(points)) {
+            return BatchWriteResult.empty();
+        }
+
+        BatchWriteResult result = new ChunkedBatchWriter(this, batchChunkSize, batchChunkMaxBytes,
+                batchWriteParallelism, getBatchWriteExecutor()).write(database, retentionPolicy, points);
+
+        if (!result.isSuccess()) {
+            List<BatchChunkResult> failedChunks = result.getFailedChunks();
+            InfluxDBXBatchWriteException exception = new InfluxDBXBatchWriteException(
+                    failedChunks.size() + " of " + result.getChunks().size() + " batch chunks failed to write",
+                    failedChunks.get(0).getError(), result);
+            failedChunks.stream().skip(1).forEach(chunk -> exception.addSuppressed(chunk.getError()));
+            throw exception;
+        }
+        return result;
+    }
+
+    public int getBatchChunkSize() {
+        return batchChunkSize;
+    }
+
+    public void setBatchChunkSize(int batchChunkSize) {
+        this.batchChunkSize = batchChunkSize;
+    }
+
+    public long getBatchChunkMaxBytes() {
+        return batchChunkMaxBytes;
+    }
+
+    public void setBatchChunkMaxBytes(long batchChunkMaxBytes) {
+        this.batchChunkMaxBytes = batchChunkMaxBytes;
+    }
+
+    public int getBatchWriteParallelism() {
+        return batchWriteParallelism;
+    }
+
+    public void setBatchWriteParallelism(int batchWriteParallelism) {
+        this.batchWriteParallelism = batchWriteParallelism;
+    }
+
+    /**
+     * @param batchWriteExecutor 用于并行写入分片的线程池, 不设置时使用内部的daemon线程池
+     */
+    public void setBatchWriteExecutor(Executor batchWriteExecutor) {
+        this.batchWriteExecutor = batchWriteExecutor;
+    }
+
+    private Executor getBatchWriteExecutor() {
+        Executor executor = batchWriteExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                if (batchWriteExecutor == null) {
+                    checkNotClosed();
+                    //调用线程自身也会写入分片; 线程都在使用时(并发的writeBatch)不排队, 剩下的分片由调用线程写入
+                    int threads = Math.max(1, batchWriteParallelism - 1);
+                    defaultBatchWriteExecutor = new ThreadPoolExecutor(0, threads, 60, TimeUnit.SECONDS,
+                            new SynchronousQueue<>(), Utils.namedDaemonThreadFactory("influxdb-batch-writer"));
+                    batchWriteExecutor = defaultBatchWriteExecutor;
+                }
+                executor = batchWriteExecutor;
+            }
+        }
+        return executor;
     }
 
     /**
@@ -131,10 +700,10 @@ public class InfluxDBTemplate {
      */
     public <T> List<T> queryForList(QueryCreator queryCreator, String measurement, Class<T> clazz) {
 
-        return execute(client -> {
+        return executeRead(client -> {
             Query query = queryCreator.createQuery();
-            QueryResult queryResult = client.query(query, TimeUnit.MILLISECONDS);
-            return resultMapper.toPOJO(queryResult, clazz, measurement);
+            QueryResult queryResult = queryWithPrecision(client, query);
+            return resultMapper.toPOJO(queryResult, clazz, measurement, queryPrecision);
         });
     }
 
@@ -162,14 +731,97 @@ public class InfluxDBTemplate {
      * @return
      */
     public <T> List<T> queryForListByQuery(String database, String measurement, String queryString, Class<T> clazz, Map<String, Object> argsMap) {
+        return queryForListByQuery(database, measurement, prepare(queryString), clazz, argsMap);
+    }
+
+    /**
+     * 按时间范围拆分后并行查询, 见 {@link TimeRangeSplit}; 不使用结果缓存
+     */
+    public <T> List<T> queryForListByQuery(String database, String measurement, String queryString, Class<T> clazz,
+                                           Map<String, Object> argsMap, @Nonnull TimeRangeSplit split) {
+        return queryForListByTimeRange(database, measurement, queryString, argsMap, split,
+                queryResult -> mapToPOJO(queryResult, clazz, measurement));
+    }
+
+    /**
+     * 同 {@link #queryForListByQuery(String, String, String, Class, Map)}, 使用预先解析的查询模板
+     */
+    public <T> List<T> queryForListByQuery(String database, String measurement, PreparedInfluxQuery query, Class<T> clazz, Map<String, Object> argsMap) {
         //TODO 添加类似jdbc的  BeanPropertyRowMapper 或者是 dbutil的 ...  bean mappers
-        return queryForListByQuery(database, measurement, queryString, argsMap, queryResult -> {
-            if (Utils.isNotEmpty(measurement)) {
-                return resultMapper.toPOJO(queryResult, clazz, measurement);
-            } else {
-                return resultMapper.toPOJO(queryResult, clazz);
-            }
-        });
+        return queryForListByQuery(database, measurement, query, argsMap,
+                queryResult -> mapToPOJO(queryResult, clazz, measurement), true, clazz, null);
+    }
+
+    /**
+     * 使用influxdb的chunked query流式查询, 每个series(chunk中的)经过seriesMapper映射后返回.
+     * 内存占用只和chunkSize有关; 返回的Stream需要关闭(try-with-resources), 提前关闭会取消http请求并归还client
+     * @param database 数据库
+     * @param measurement 表
+     * @param queryString 查询语句
+     * @param argsMap 参数
+     * @param chunkSize 每个chunk的行数
+     * @param seriesMapper series映射器, 同一个series可能被拆分在多个chunk中
+     */
+    public <T> Stream<T> queryForStream(@Nullable String database, @Nullable String measurement, @Nonnull String queryString,
+                                        @Nullable Map<String, Object> argsMap, int chunkSize, QueryResultSeriesMapper<T> seriesMapper) {
+        return queryForChunkStream(database, measurement, queryString, argsMap, chunkSize)
+                .flatMap(queryResult -> {
+                    List<T> list = new ArrayList<>();
+                    InfluxDBUtil.queryResultSeriesCallback(queryResult, series -> list.add(seriesMapper.call(series)));
+                    return list.stream();
+                });
+    }
+
+    /**
+     * 按时间范围拆分后并行查询, 按子范围的顺序流式返回(最多 split.parallelism 个子范围的结果在内存中);
+     * 同一个series在每个子范围中各返回一次
+     */
+    public <T> Stream<T> queryForStream(@Nullable String database, @Nullable String measurement, @Nonnull String queryString,
+                                        @Nullable Map<String, Object> argsMap, @Nonnull TimeRangeSplit split, QueryResultSeriesMapper<T> seriesMapper) {
+        List<BoundParameterQuery> queries = splitQueries(database, measurement, prepare(queryString), argsMap, split);
+        Iterator<QueryResult> iterator = timeRangeQueryExecutor(split).iterator(queries);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .flatMap(queryResult -> {
+                    List<T> list = new ArrayList<>();
+                    InfluxDBUtil.queryResultSeriesCallback(queryResult, series -> list.add(seriesMapper.call(series)));
+                    return list.stream();
+                });
+    }
+
+    /**
+     * 流式查询 - 用clazz(为@Measurement注解)映射每一行, 见 {@link #queryForStream(String, String, String, Map, int, QueryResultSeriesMapper)}
+     */
+    public <T> Stream<T> queryForStream(@Nullable String database, @Nullable String measurement, @Nonnull String queryString,
+                                        @Nonnull Class<T> clazz, @Nullable Map<String, Object> argsMap, int chunkSize) {
+        return queryForChunkStream(database, measurement, queryString, argsMap, chunkSize)
+                .flatMap(queryResult -> mapToPOJO(queryResult, clazz, measurement).stream());
+    }
+
+    /**
+     * 流式查询 - 每个chunk中的series依次回调, 方法在查询结束后返回
+     */
+    public void queryForEachChunk(@Nullable String database, @Nullable String measurement, @Nonnull String queryString,
+                                  @Nullable Map<String, Object> argsMap, int chunkSize, QueryResultSeriesCallback callback) {
+        try (Stream<QueryResult> chunks = queryForChunkStream(database, measurement, queryString, argsMap, chunkSize)) {
+            chunks.forEachOrdered(queryResult -> InfluxDBUtil.queryResultSeriesCallback(queryResult, callback));
+        }
+    }
+
+    private Stream<QueryResult> queryForChunkStream(String database, String measurement, String rawQuery,
+                                                    Map<String, Object> argsMap, int chunkSize) {
+        BoundParameterQuery boundParameterQuery = getBoundParameterQuery(database, measurement, rawQuery, argsMap, true);
+
+        ChunkedQueryIterator iterator = new ChunkedQueryIterator(getResource(), boundParameterQuery, chunkSize);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+    <T> List<T> mapToPOJO(QueryResult queryResult, Class<T> clazz, String measurement) {
+        if (Utils.isNotEmpty(measurement)) {
+            return resultMapper.toPOJO(queryResult, clazz, measurement, queryPrecision);
+        } else {
+            return resultMapper.toPOJO(queryResult, clazz, queryPrecision);
+        }
     }
 
     public <T> Optional<T> queryForObjectByQuery(String measurement, String queryString, @Nonnull Class<T> clazz, @Nullable Map<String, Object> argsMap) {
@@ -198,8 +850,35 @@ public class InfluxDBTemplate {
         return queryForTimedScalarList(database, measurement, queryString, clazz, argsMap, true);
     }
 
+    /**
+     * @param cacheSpec 本次查询的缓存设置(需要设置queryResultCache), 为null时按缓存规则
+     */
+    public <T> List<TimedResult<T>> queryForTimedScalarList(@Nullable String database, @Nullable String measurement, @Nonnull String queryString, Class<T> clazz, @Nullable Map<String, Object> argsMap, @Nullable QueryCacheSpec cacheSpec) {
+        return queryForTimedScalarList(database, measurement, queryString, clazz, argsMap, true, cacheSpec);
+    }
+
     public <T> List<TimedResult<T>> queryForTimedScalarList(@Nullable String database, @Nullable String measurement, @Nonnull String queryString, Class<T> clazz, @Nullable Map<String, Object> argsMap, boolean timezoneAdjust) {
-        return queryForListByQuery(database, measurement, queryString, argsMap, queryResult -> {
+        return queryForTimedScalarList(database, measurement, queryString, clazz, argsMap, timezoneAdjust, null);
+    }
+
+    private <T> List<TimedResult<T>> queryForTimedScalarList(String database, String measurement, String queryString, Class<T> clazz, Map<String, Object> argsMap, boolean timezoneAdjust, QueryCacheSpec cacheSpec) {
+        return queryForListByQuery(database, measurement, queryString, argsMap, timedScalarMapper(clazz),
+                timezoneAdjust, Arrays.asList(TimedResult.class, clazz), cacheSpec);
+    }
+
+    /**
+     * 按时间范围拆分后并行查询, 不使用结果缓存. 只适用于原始数据和按 GROUP BY time() 分组的查询,
+     * 不按时间分组的聚合, LIMIT/SLIMIT 和 ORDER BY time DESC 的结果与不拆分时不同, 见 {@link TimeRangeSplit}.
+     * 任一子查询失败时抛出异常, 尚未执行的子查询被取消
+     */
+    public <T> List<TimedResult<T>> queryForTimedScalarList(@Nullable String database, @Nullable String measurement, @Nonnull String queryString,
+                                                            Class<T> clazz, @Nullable Map<String, Object> argsMap, @Nonnull TimeRangeSplit split) {
+        return queryForListByTimeRange(database, measurement, queryString, argsMap, split, timedScalarMapper(clazz));
+    }
+
+    <T> InfluxDBXMapper<TimedResult<T>> timedScalarMapper(Class<T> clazz) {
+        TimeUnit precision = queryPrecision;
+        return queryResult -> {
 
             List<TimedResult<T>> results = new ArrayList<>();
 
@@ -213,18 +892,17 @@ public class InfluxDBTemplate {
 
                 List<List<Object>> values = series.getValues();
                 values.forEach(valuePairs -> {
-                    Instant time = convertTimeValue(valuePairs.get(0), TimeUnit.MILLISECONDS);
+                    long epoch = InfluxDBUtil.toEpoch(valuePairs.get(0), precision, precision);
 
                     Object rawValue = valuePairs.get(1);
 
                     T value = convertTo(clazz, rawValue);
 
-                    results.add(new TimedResult<>(seriesName, columnName, tags,time, value));
+                    results.add(new TimedResult<>(seriesName, columnName, tags, epoch, precision, value));
                 });
             });
             return results;
-
-        },timezoneAdjust);
+        };
     }
 
     @SuppressWarnings("unchecked")
@@ -243,7 +921,62 @@ public class InfluxDBTemplate {
 
     public <T> List<GroupByResult> queryForGroupByList(@Nullable String database, @Nullable String measurement,
                                                        @Nonnull String queryString, @Nullable Map<String, Object> argsMap) {
-        return queryForListByQuery(database, measurement, queryString, argsMap, queryResult -> {
+        return queryForGroupByList(database, measurement, queryString, argsMap, (QueryCacheSpec) null);
+    }
+
+    /**
+     * @param cacheSpec 本次查询的缓存设置(需要设置queryResultCache), 为null时按缓存规则
+     */
+    public List<GroupByResult> queryForGroupByList(@Nullable String database, @Nullable String measurement,
+                                                   @Nonnull String queryString, @Nullable Map<String, Object> argsMap,
+                                                   @Nullable QueryCacheSpec cacheSpec) {
+        return queryForListByQuery(database, measurement, queryString, argsMap, groupByMapper(), true, GroupByResult.class, cacheSpec);
+    }
+
+    /**
+     * 按时间范围拆分后并行查询, 不使用结果缓存. 只适用于原始数据和按 GROUP BY time() 分组的查询,
+     * 不按时间分组的聚合, LIMIT/SLIMIT 和 ORDER BY time DESC 的结果与不拆分时不同, 见 {@link TimeRangeSplit}.
+     * 任一子查询失败时抛出异常, 尚未执行的子查询被取消
+     */
+    public List<GroupByResult> queryForGroupByList(@Nullable String database, @Nullable String measurement,
+                                                   @Nonnull String queryString, @Nullable Map<String, Object> argsMap,
+                                                   @Nonnull TimeRangeSplit split) {
+        return queryForListByTimeRange(database, measurement, queryString, argsMap, split, groupByMapper());
+    }
+
+    /**
+     * 滚动窗口的 GROUP BY time() 查询: 设置了 groupByBucketCache 时只查询缓存之后(未结束)的分组, 再与缓存的分组拼接;
+     * 没有设置时查询整个窗口. 见 {@link GroupByWindow}
+     */
+    public List<GroupByResult> queryForGroupByList(@Nullable String database, @Nullable String measurement,
+                                                   @Nonnull String queryString, @Nullable Map<String, Object> argsMap,
+                                                   @Nonnull GroupByWindow window) {
+        PreparedInfluxQuery preparedQuery = prepare(queryString);
+        ZoneId zoneId = this.zoneId;
+        long start = window.alignedStartMillis(zoneId);
+        long end = window.getEnd().toEpochMilli();
+        BiFunction<Instant, Instant, List<GroupByResult>> loader = (from, to) -> {
+            Map<String, Object> args = argsMap == null ? new HashMap<>() : new HashMap<>(argsMap);
+            args.put(window.getStartParam(), from.toString());
+            args.put(window.getEndParam(), to.toString());
+            return query(database, preparedQuery, preparedQuery.bind(database, measurement, args, tzClause), groupByMapper());
+        };
+
+        GroupByBucketCache cache = this.groupByBucketCache;
+        if (cache == null) {
+            return loader.apply(Instant.ofEpochMilli(start), window.getEnd());
+        }
+        Map<String, Object> keyArgs = argsMap == null ? new HashMap<>() : new HashMap<>(argsMap);
+        keyArgs.remove(window.getStartParam());
+        keyArgs.remove(window.getEndParam());
+        QueryCacheKey key = new QueryCacheKey(database, preparedQuery.render(measurement, tzClause), keyArgs,
+                Arrays.asList(GroupByResult.class, window.getInterval()));
+        return cache.get(key, start, end, window.completeEndMillis(System.currentTimeMillis(), zoneId), loader);
+    }
+
+    InfluxDBXMapper<GroupByResult> groupByMapper() {
+        TimeUnit precision = queryPrecision;
+        return queryResult -> {
 
             List<GroupByResult> results = new ArrayList<>();
 
@@ -257,7 +990,7 @@ public class InfluxDBTemplate {
                 List<List<Object>> values = series.getValues();
 
                 values.forEach(valuePairs -> {
-                    Instant time = convertTimeValue(valuePairs.get(0), TimeUnit.MILLISECONDS);
+                    long epoch = InfluxDBUtil.toEpoch(valuePairs.get(0), precision, precision);
 
                     Map<String, Object> groupFieldData = new HashMap<>();
                     for (int i = 1; i < valuePairs.size(); i++) {
@@ -268,15 +1001,54 @@ public class InfluxDBTemplate {
                         groupFieldData.put(columnName, rawValue);
                     }
 
-                    results.add(new GroupByResult(theMesurement,tags,time, groupFieldData));
+                    results.add(new GroupByResult(theMesurement, tags, epoch, precision, groupFieldData));
                 });
             });
             return results;
-        });
+        };
+    }
+
+    /**
+     * 查询结果保存为列存结构: time 列为 long[] 毫秒时间戳, 数值列为 double[]/long[], null 用位图记录, tags 每个series一份.
+     * 适合图表等大结果集的数值分析. 结果不可变, 合并查询时多个调用共享同一个实例; 不参与结果缓存
+     * @param database 数据库
+     * @param measurement 表
+     * @param queryString 查询语句
+     * @param argsMap 参数
+     * @return -
+     */
+    public ColumnarResult queryForColumnar(@Nullable String database, @Nullable String measurement,
+                                           @Nonnull String queryString, @Nullable Map<String, Object> argsMap) {
+        List<ColumnarResult> results = queryForListByQuery(database, measurement, queryString, argsMap, queryResult -> {
+            ColumnarResultCollector collector = new ColumnarResultCollector(queryPrecision);
+            collector.collect(queryResult);
+            return Collections.singletonList(collector.finish());
+        }, true, ColumnarResult.class, QueryCacheSpec.NONE);
+        return results.get(0);
+    }
+
+    /**
+     * 同 {@link #queryForColumnar(String, String, String, Map)}, 使用chunked query边接收边填充,
+     * 装箱的中间结果只有一个chunk大小
+     * @param chunkSize 每个chunk的行数
+     */
+    public ColumnarResult queryForColumnar(@Nullable String database, @Nullable String measurement,
+                                           @Nonnull String queryString, @Nullable Map<String, Object> argsMap, int chunkSize) {
+        ColumnarResultCollector collector = new ColumnarResultCollector();
+        queryForEachChunk(database, measurement, queryString, argsMap, chunkSize, collector);
+        return collector.finish();
+    }
+
+    /**
+     * 创建多语句合并查询, 见 {@link QueryBatch}
+     * @param database 数据库, 所有查询共用
+     */
+    public QueryBatch newQueryBatch(@Nullable String database) {
+        return new QueryBatch(this, database);
     }
 
     public <T> Optional<T> queryForObject(QueryCreator creator, QueryResultMapper<T> resultMapper) {
-        return execute(client -> {
+        return executeRead(client -> {
 
             QueryResult queryResult = client.query(creator.createQuery());
 
@@ -299,7 +1071,7 @@ public class InfluxDBTemplate {
 
     public <T> List<T> queryForList(QueryCreator creator, QueryResultSeriesMapper<T> seriesMapper) {
 
-        return execute(client -> {
+        return executeRead(client -> {
 
             QueryResult queryResult = client.query(creator.createQuery(), TimeUnit.MILLISECONDS);
 
@@ -327,7 +1099,10 @@ public class InfluxDBTemplate {
         });
     }
 
-    private InfluxDB getResource() {
+    InfluxDB getResource() {
+        if (routingDataSource != null) {
+            return routingDataSource.getReadResource();
+        }
         try {
             return dataSource.borrowObject();
         } catch (NoSuchElementException nse) {
@@ -353,17 +1128,240 @@ public class InfluxDBTemplate {
      * @return
      */
     private <T> List<T> queryForListByQuery(String database, String measurement, String rawQuery, Map<String, Object> argsMap, InfluxDBXMapper<T> mapper,boolean timezoneAdjust) {
-        return execute(client -> {
-            //因为query中的measurement不能使用bind 这里先手动替换 - 暂时固定名称为 measurement
+        return queryForListByQuery(database, measurement, prepare(rawQuery), argsMap, mapper, timezoneAdjust, null, null);
+    }
+
+    private <T> List<T> queryForListByQuery(String database, String measurement, String rawQuery, Map<String, Object> argsMap,
+                                            InfluxDBXMapper<T> mapper, boolean timezoneAdjust, Object resultType, QueryCacheSpec cacheSpec) {
+        return queryForListByQuery(database, measurement, prepare(rawQuery), argsMap, mapper, timezoneAdjust, resultType, cacheSpec);
+    }
 
-            BoundParameterQuery boundParameterQuery = getBoundParameterQuery(database, measurement, rawQuery, argsMap, timezoneAdjust);
+    /**
+     * @param resultType 映射结果的类型标识, 与最终查询语句和参数一起作为缓存/合并查询的key; 为null时不缓存也不合并
+     * @param cacheSpec 本次查询的缓存设置, 为null时按queryResultCache中的规则
+     */
+    private <T> List<T> queryForListByQuery(String database, String measurement, PreparedInfluxQuery preparedQuery, Map<String, Object> argsMap,
+                                            InfluxDBXMapper<T> mapper, boolean timezoneAdjust, Object resultType, QueryCacheSpec cacheSpec) {
+        //因为query中的measurement不能使用bind 这里先手动替换 - 暂时固定名称为 measurement
+        BoundParameterQuery boundParameterQuery = preparedQuery.bind(database, measurement, argsMap, timezoneAdjust ? tzClause : null);
 
-            QueryResult queryResult = client.query(boundParameterQuery, TimeUnit.MILLISECONDS);
+        if (resultType == null) {
+            return query(database, preparedQuery, boundParameterQuery, mapper);
+        }
 
-            return mapper.mapResult(queryResult);
+        QueryResultCache cache = this.queryResultCache;
+        if (cache != null) {
+            Duration ttl = cache.resolveTtl(preparedQuery.getTemplate(), cacheSpec);
+            if (!ttl.isZero()) {
+                QueryCacheKey cacheKey = new QueryCacheKey(database, boundParameterQuery.getCommand(), argsMap, resultType);
+                return cache.get(cacheKey, ttl, () -> query(database, preparedQuery, boundParameterQuery, mapper));
+            }
+        }
+        if (queryCoalescing) {
+            QueryCacheKey queryKey = new QueryCacheKey(database, boundParameterQuery.getCommand(), argsMap, resultType);
+            @SuppressWarnings("unchecked")
+            List<T> shared = (List<T>) inFlightQueries.execute(queryKey, () -> query(database, preparedQuery, boundParameterQuery, mapper));
+            return new ArrayList<>(shared);
+        }
+        return query(database, preparedQuery, boundParameterQuery, mapper);
+    }
+
+    private <T> List<T> queryForListByTimeRange(String database, String measurement, String rawQuery, Map<String, Object> argsMap,
+                                                TimeRangeSplit split, InfluxDBXMapper<T> mapper) {
+        PreparedInfluxQuery preparedQuery = prepare(rawQuery);
+        List<BoundParameterQuery> queries = splitQueries(database, measurement, preparedQuery, argsMap, split);
+
+        InfluxDBMetrics metrics = this.metrics;
+        long start = System.nanoTime();
+        QueryResult merged;
+        try {
+            merged = timeRangeQueryExecutor(split).executeAndMerge(queries);
+        } catch (RuntimeException e) {
+            metrics.recordQuery(database, preparedQuery.getNormalizedTemplate(), System.nanoTime() - start, 0, 0, false);
+            throw e;
+        }
+        long received = System.nanoTime();
+        boolean success = false;
+        try {
+            List<T> result = mapper.mapResult(merged);
+            success = true;
+            return result;
+        } finally {
+            metrics.recordQuery(database, preparedQuery.getNormalizedTemplate(), received - start,
+                    System.nanoTime() - received, success ? InfluxDBUtil.countRows(merged) : 0, success);
+        }
+    }
+
+    private List<BoundParameterQuery> splitQueries(String database, String measurement, PreparedInfluxQuery preparedQuery,
+                                                   Map<String, Object> argsMap, TimeRangeSplit split) {
+        List<Instant> boundaries = split.boundaries(zoneId);
+        List<BoundParameterQuery> queries = new ArrayList<>(boundaries.size() - 1);
+        for (int i = 1; i < boundaries.size(); i++) {
+            Map<String, Object> args = argsMap == null ? new HashMap<>() : new HashMap<>(argsMap);
+            args.put(split.getStartParam(), boundaries.get(i - 1).toString());
+            args.put(split.getEndParam(), boundaries.get(i).toString());
+            queries.add(preparedQuery.bind(database, measurement, args, tzClause));
+        }
+        return queries;
+    }
+
+    private TimeRangeQueryExecutor timeRangeQueryExecutor(TimeRangeSplit split) {
+        ThreadPoolExecutor executor = rangeQueryExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                if (rangeQueryExecutor == null) {
+                    checkNotClosed();
+                    //线程数由每次查询的parallelism限制, 线程池满时由调用线程执行
+                    rangeQueryExecutor = new ThreadPoolExecutor(0, 64, 60, TimeUnit.SECONDS,
+                            new SynchronousQueue<>(), Utils.namedDaemonThreadFactory("influxdb-range-query"));
+                }
+                executor = rangeQueryExecutor;
+            }
+        }
+        return new TimeRangeQueryExecutor(query -> executeRead(client -> queryWithPrecision(client, query)),
+                executor, split.getParallelism());
+    }
+
+    private <T> List<T> query(String database, PreparedInfluxQuery preparedQuery, BoundParameterQuery boundParameterQuery, InfluxDBXMapper<T> mapper) {
+        InfluxDBMetrics metrics = this.metrics;
+        if (metrics == InfluxDBMetrics.NOOP) {
+            return executeRead(client -> {
+                QueryResult queryResult = queryWithPrecision(client, boundParameterQuery);
+                return mapper.mapResult(queryResult);
+            });
+        }
+        return executeRead(client -> {
+            long start = System.nanoTime();
+            long bytesBefore = WireStats.currentThreadResponseBytes();
+            QueryResult queryResult;
+            try {
+                queryResult = queryWithPrecision(client, boundParameterQuery);
+            } catch (RuntimeException e) {
+                metrics.recordQuery(database, preparedQuery.getNormalizedTemplate(), System.nanoTime() - start, 0, 0, false);
+                throw e;
+            }
+            long received = System.nanoTime();
+            metrics.recordQueryBytes(database, preparedQuery.getNormalizedTemplate(), WireStats.currentThreadResponseBytes() - bytesBefore);
+            boolean success = false;
+            try {
+                List<T> result = mapper.mapResult(queryResult);
+                success = true;
+                return result;
+            } finally {
+                metrics.recordQuery(database, preparedQuery.getNormalizedTemplate(), received - start,
+                        System.nanoTime() - received, success ? InfluxDBUtil.countRows(queryResult) : 0, success);
+            }
         });
     }
 
+    /**
+     * 各查询的语句用 ; 连接为一个请求, 参数重命名为 q{序号}_{参数名}; 结果按语句顺序(statement_id)拆分给各个查询
+     */
+    void executeBatch(String database, List<QueryBatch.Entry<?>> entries) {
+        StringBuilder command = new StringBuilder();
+        Map<String, Object> params = new HashMap<>();
+        int[] statementCounts = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            QueryBatch.Entry<?> entry = entries.get(i);
+            String statements = entry.query.render(entry.measurement, entry.timezoneAdjust ? tzClause : null).trim();
+            while (statements.endsWith(";")) {
+                statements = statements.substring(0, statements.length() - 1).trim();
+            }
+            if (i > 0) {
+                command.append("; ");
+            }
+            renameParameters(statements, entry.argsMap, "q" + i + "_", command, params);
+            statementCounts[i] = entry.query.getStatementCount();
+        }
+        BoundParameterQuery.QueryBuilder queryBuilder = BoundParameterQuery.QueryBuilder.newQuery(command.toString()).forDatabase(database);
+        params.forEach(queryBuilder::bind);
+        BoundParameterQuery query = queryBuilder.create();
+
+        InfluxDBMetrics metrics = this.metrics;
+        long start = System.nanoTime();
+        QueryResult queryResult;
+        try {
+            queryResult = executeRead(client -> queryWithPrecision(client, query));
+            if (queryResult.hasError()) {
+                throw new InfluxDBXException("InfluxDB returned an error: " + queryResult.getError());
+            }
+        } catch (RuntimeException e) {
+            for (QueryBatch.Entry<?> entry : entries) {
+                entry.fail(e);
+                metrics.recordQuery(database, entry.query.getNormalizedTemplate(), System.nanoTime() - start, 0, 0, false);
+            }
+            throw e;
+        }
+        long networkNanos = System.nanoTime() - start;
+
+        List<QueryResult.Result> results = queryResult.getResults() == null ? Collections.emptyList() : queryResult.getResults();
+        int from = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            int to = from + statementCounts[i];
+            mapBatchEntry(database, entries.get(i), results, from, to, networkNanos, metrics);
+            from = to;
+        }
+    }
+
+    private <T> void mapBatchEntry(String database, QueryBatch.Entry<T> entry, List<QueryResult.Result> results, int from, int to,
+                                   long networkNanos, InfluxDBMetrics metrics) {
+        long start = System.nanoTime();
+        long rows = 0;
+        try {
+            QueryResult entryResult = new QueryResult();
+            entryResult.setResults(new ArrayList<>(results.subList(Math.min(from, results.size()), Math.min(to, results.size()))));
+            for (QueryResult.Result result : entryResult.getResults()) {
+                if (result.getError() != null) {
+                    throw new InfluxDBXException("InfluxDB returned an error: " + result.getError());
+                }
+            }
+            if (to > results.size()) {
+                //influxdb在出错的语句之后不再执行
+                throw new InfluxDBXException("Statement not executed, an earlier statement in the batch failed");
+            }
+            entry.complete(entry.mapper.mapResult(entryResult));
+            rows = InfluxDBUtil.countRows(entryResult);
+        } catch (RuntimeException e) {
+            entry.fail(e);
+        }
+        metrics.recordQuery(database, entry.query.getNormalizedTemplate(), networkNanos, System.nanoTime() - start, rows, entry.isSuccess());
+    }
+
+    /**
+     * 把语句中在argsMap中的参数($name, 不在字符串, 引号标识符和正则中)重命名为 $prefix+name, 追加到sb, 参数值放到params
+     */
+    static void renameParameters(String statements, Map<String, Object> argsMap, String prefix,
+                                 StringBuilder sb, Map<String, Object> params) {
+        if (Utils.isEmpty(argsMap)) {
+            sb.append(statements);
+            return;
+        }
+        int length = statements.length();
+        for (int i = 0; i < length; i++) {
+            char c = statements.charAt(i);
+            int literalEnd = PreparedInfluxQuery.literalEnd(statements, i);
+            if (literalEnd >= 0) {
+                sb.append(statements, i, literalEnd);
+                i = literalEnd - 1;
+            } else if (c == '$') {
+                int end = i + 1;
+                while (end < length && (Character.isLetterOrDigit(statements.charAt(end)) || statements.charAt(end) == '_')) {
+                    end++;
+                }
+                String name = statements.substring(i + 1, end);
+                if (argsMap.containsKey(name)) {
+                    sb.append('$').append(prefix).append(name);
+                    params.put(prefix + name, argsMap.get(name));
+                } else {
+                    sb.append('$').append(name);
+                }
+                i = end - 1;
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
     /**
      * 构建绑定参数的query
      * @param database  数据库
@@ -374,34 +1372,8 @@ public class InfluxDBTemplate {
      * @return -
      */
     BoundParameterQuery getBoundParameterQuery(String database, String measurement, String rawQuery, Map<String, Object> argsMap,boolean timezoneAdjust) {
-
-        String queryString = Utils.isNotEmpty(measurement) ?
-                rawQuery.replaceAll("#measurement#", measurement) : rawQuery;
-
-        //如果没有指定timezone的话 这里补充一个当前时区到查询中
-
-        //!isSchemaQueryString(queryString)
-        if (timezoneAdjust && !queryString.toLowerCase().contains("tz(")) {
-            String tz = " tz('" + zoneId.toString() + "') ";
-            //如果有多条语句 为各个语句都加上tz
-            if(queryString.contains(";")) {
-                queryString = Arrays.stream(queryString.split(";"))
-                        .filter(str -> !str.trim().isEmpty())
-                        .map(str -> str + tz)
-                        .collect(Collectors.joining(";"));
-            }else {
-                queryString = queryString + tz;
-            }
-        }
-
-        BoundParameterQuery.QueryBuilder queryBuilder =
-                BoundParameterQuery.QueryBuilder.newQuery(queryString).forDatabase(database);
-
-        if (Utils.isNotEmpty(argsMap)) {
-            argsMap.forEach(queryBuilder::bind);
-        }
-
-        return queryBuilder.create();
+        //如果没有指定timezone的话 这里补充一个当前时区到查询中, 有多条语句时为各个语句都加上tz
+        return prepare(rawQuery).bind(database, measurement, argsMap, timezoneAdjust ? tzClause : null);
     }
 
     private boolean isSchemaQueryString(String queryString) {
@@ -413,33 +1385,6 @@ public class InfluxDBTemplate {
     }
 
 
-    /**
-     * influxdb返回的时间 不会帮我们转换成date,locatedate等类型,返回的类型可能为 long,double这里是 官方InfluxClient中的部分转换代码 将时间转换为Instant.转为LocalDate,LocalDateTime需由开发自己编写
-     * @param value -
-     * @param precision - 现在写死为 millseconds
-     * @return - Instant
-     */
-    private Instant convertTimeValue(Object value, TimeUnit precision) {
-        Instant instant;
-        if (value instanceof String) {
-            instant = Instant.from(RFC3339_FORMATTER.parse(String.valueOf(value)));
-        } else if (value instanceof Long) {
-            instant = Instant.ofEpochMilli(toMillis((long) value, precision));
-        } else if (value instanceof Double) {
-            instant = Instant.ofEpochMilli(toMillis(((Double) value).longValue(), precision));
-        } else if (value instanceof Integer) {
-            instant = Instant.ofEpochMilli(toMillis(((Integer) value).longValue(), precision));
-        } else {
-            throw new InfluxDBXException("Unsupported type " + value.getClass() + " convert to Instant");
-        }
-        return instant;
-    }
-
-    private Long toMillis(final long value, final TimeUnit precision) {
-        return TimeUnit.MILLISECONDS.convert(value, precision);
-    }
-
-
     public @Nonnull Map<String, Object> queryForMapByQuery(String measurement, String queryString, Map<String, Object> paramMap) {
         return queryForMapByQuery(null, measurement, queryString, paramMap);
     }
@@ -471,6 +1416,6 @@ public class InfluxDBTemplate {
 
             });
             return resultMap;
-        });
+        }, true, Map.class, null);
     }
 }
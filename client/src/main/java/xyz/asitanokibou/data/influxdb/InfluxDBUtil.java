@@ -1,15 +1,204 @@
 package xyz.asitanokibou.data.influxdb;
 
 import org.influxdb.dto.QueryResult;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXException;
 
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
 import java.util.Collection;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author aimysaber@gmail.com
  */
 public final class InfluxDBUtil {
 
+    private static final int FRACTION_MIN_WIDTH = 0;
+    private static final int FRACTION_MAX_WIDTH = 9;
+    private static final boolean ADD_DECIMAL_POINT = true;
+    private static final DateTimeFormatter RFC3339_FORMATTER = new DateTimeFormatterBuilder()
+            .appendPattern("yyyy-MM-dd'T'HH:mm:ss")
+            .appendFraction(ChronoField.NANO_OF_SECOND, FRACTION_MIN_WIDTH, FRACTION_MAX_WIDTH, ADD_DECIMAL_POINT)
+            .appendZoneOrOffsetId()
+            .toFormatter();
+
+    //influxdb支持的时间范围是 1677-09-21 ~ 2262-04-11, 快速解析只处理其中的完整年份, 其他的交给DateTimeFormatter
+    private static final int FAST_PARSE_MIN_YEAR = 1678;
+    private static final int FAST_PARSE_MAX_YEAR = 2261;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /**
+     * 解析influxdb返回的RFC3339格式时间 如 2020-01-01T00:00:00.123Z , 2020-01-01T08:00:00+08:00
+     */
+    public static Instant parseRFC3339(String value) {
+        long nanos = parseRFC3339Epoch(value, TimeUnit.NANOSECONDS);
+        if (nanos == Long.MAX_VALUE || nanos == Long.MIN_VALUE) {
+            //超出纳秒epoch的范围
+            return Instant.from(RFC3339_FORMATTER.parse(value));
+        }
+        return Instant.ofEpochSecond(Math.floorDiv(nanos, NANOS_PER_SECOND), Math.floorMod(nanos, NANOS_PER_SECOND));
+    }
+
+    /**
+     * 解析RFC3339格式时间为precision精度的epoch(向下取整), 常见格式(influxdb的输出)不创建任何对象
+     */
+    public static long parseRFC3339Epoch(CharSequence value, TimeUnit precision) {
+        int len = value.length();
+        if (len < 20 || value.charAt(4) != '-' || value.charAt(7) != '-' || (value.charAt(10) != 'T' && value.charAt(10) != 't')
+                || value.charAt(13) != ':' || value.charAt(16) != ':') {
+            return parseRFC3339Slow(value, precision);
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 7);
+        int day = digits(value, 8, 10);
+        int hour = digits(value, 11, 13);
+        int minute = digits(value, 14, 16);
+        int second = digits(value, 17, 19);
+        //含有非数字字符时 digits 返回-1, 同样交给DateTimeFormatter(抛出异常)
+        if (year < FAST_PARSE_MIN_YEAR || year > FAST_PARSE_MAX_YEAR || month < 1 || month > 12
+                || day < 1 || day > lengthOfMonth(year, month) || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return parseRFC3339Slow(value, precision);
+        }
+
+        int pos = 19;
+        long nano = 0;
+        if (value.charAt(pos) == '.') {
+            int end = ++pos;
+            while (end < len && value.charAt(end) >= '0' && value.charAt(end) <= '9') {
+                end++;
+            }
+            int width = end - pos;
+            if (width == 0 || width > 9) {
+                return parseRFC3339Slow(value, precision);
+            }
+            nano = digits(value, pos, end);
+            for (int i = width; i < 9; i++) {
+                nano *= 10;
+            }
+            pos = end;
+        }
+
+        int offsetSeconds;
+        char zone = pos < len ? value.charAt(pos) : 0;
+        if ((zone == 'Z' || zone == 'z') && pos + 1 == len) {
+            offsetSeconds = 0;
+        } else if ((zone == '+' || zone == '-') && pos + 6 == len && value.charAt(pos + 3) == ':') {
+            int offsetHour = digits(value, pos + 1, pos + 3);
+            int offsetMinute = digits(value, pos + 4, pos + 6);
+            if (offsetHour < 0 || offsetHour > 18 || offsetMinute < 0 || offsetMinute > 59) {
+                return parseRFC3339Slow(value, precision);
+            }
+            offsetSeconds = (offsetHour * 3600 + offsetMinute * 60) * (zone == '-' ? -1 : 1);
+        } else {
+            return parseRFC3339Slow(value, precision);
+        }
+
+        long seconds = epochDay(year, month, day) * 86400 + hour * 3600 + minute * 60 + second - offsetSeconds;
+        return toEpoch(seconds, nano, precision);
+    }
+
+    private static long parseRFC3339Slow(CharSequence value, TimeUnit precision) {
+        Instant instant = Instant.from(RFC3339_FORMATTER.parse(value));
+        return toEpoch(instant.getEpochSecond(), instant.getNano(), precision);
+    }
+
+    /**
+     * @return value[from, to)的十进制数值, 含有非数字字符时返回-1
+     */
+    private static int digits(CharSequence value, int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * 公历日期距1970-01-01的天数, 同 LocalDate#toEpochDay
+     */
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static long toEpoch(long seconds, long nano, TimeUnit precision) {
+        if (precision.compareTo(TimeUnit.SECONDS) >= 0) {
+            return Math.floorDiv(seconds, precision.toSeconds(1));
+        }
+        return precision.convert(seconds, TimeUnit.SECONDS) + nano / precision.toNanos(1);
+    }
+
+    /**
+     * 把influxdb返回的时间列转换为precision精度的epoch
+     * @param value 时间列的值: 查询指定了epoch时为数值, 否则为RFC3339字符串
+     * @param valuePrecision 数值的精度(查询的epoch)
+     */
+    public static long toEpoch(Object value, TimeUnit valuePrecision, TimeUnit precision) {
+        if (value instanceof String) {
+            return parseRFC3339Epoch((String) value, precision);
+        } else if (value instanceof Number) {
+            return precision.convert(((Number) value).longValue(), valuePrecision);
+        }
+        throw new InfluxDBXException("Unsupported type " + (value == null ? null : value.getClass()) + " convert to epoch");
+    }
+
+    public static Instant toInstant(long epoch, TimeUnit precision) {
+        if (precision.compareTo(TimeUnit.SECONDS) >= 0) {
+            return Instant.ofEpochSecond(precision.toSeconds(epoch));
+        }
+        long unitsPerSecond = precision.convert(1, TimeUnit.SECONDS);
+        return Instant.ofEpochSecond(Math.floorDiv(epoch, unitsPerSecond), precision.toNanos(Math.floorMod(epoch, unitsPerSecond)));
+    }
+
+    public static long toEpoch(Instant instant, TimeUnit precision) {
+        return toEpoch(instant.getEpochSecond(), instant.getNano(), precision);
+    }
+
+    /**
+     * @return 所有series的行数之和
+     */
+    public static long countRows(QueryResult queryResult) {
+        long rows = 0;
+        if (queryResult.getResults() != null) {
+            for (QueryResult.Result result : queryResult.getResults()) {
+                if (result.getSeries() != null) {
+                    for (QueryResult.Series series : result.getSeries()) {
+                        if (series.getValues() != null) {
+                            rows += series.getValues().size();
+                        }
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
     public static void queryResultSeriesCallback(QueryResult queryResult, QueryResultSeriesCallback callback) {
 
         queryResult.getResults().stream()
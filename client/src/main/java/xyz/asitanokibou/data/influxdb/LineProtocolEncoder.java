@@ -0,0 +1,242 @@
+package xyz.asitanokibou.data.influxdb;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 直接生成line protocol, 不经过 {@link org.influxdb.dto.Point}: 不创建tags/fields的TreeMap和每个点的String,
+ * 所有的点追加到同一个可复用的缓冲区中, 写入时整批只生成一个String. 时间戳精度为纳秒
+ * <pre>
+ *     template.writeRaw("telegraf", "autogen", encoder -> {
+ *         for (Sample sample : samples) {
+ *             encoder.measurement("cpu").tag("host", sample.getHost())
+ *                     .field("usage", sample.getUsage()).time(sample.getTime(), TimeUnit.MILLISECONDS);
+ *         }
+ *     });
+ * </pre>
+ * 与 Point 不同, tag按调用顺序输出(不排序), 值为NaN/Infinity的float字段被忽略. 非线程安全
+ * @author aimysaber@gmail.com
+ */
+public final class LineProtocolEncoder {
+
+    //超过这个大小的缓冲区用完后不再保留在线程中
+    private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    private static final ThreadLocal<LineProtocolEncoder> CURRENT = ThreadLocal.withInitial(LineProtocolEncoder::new);
+
+    private static final int STATE_NONE = 0;
+    private static final int STATE_TAGS = 1;
+    private static final int STATE_FIELDS = 2;
+
+    private StringBuilder sb;
+    private int state = STATE_NONE;
+    private int fieldCount;
+    private int lineStart;
+    private int lineCount;
+    private boolean inUse;
+
+    public LineProtocolEncoder() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public LineProtocolEncoder(int initialCapacity) {
+        this.sb = new StringBuilder(initialCapacity);
+    }
+
+    /**
+     * @return 当前线程复用的encoder(已清空); 当前线程的encoder正在使用时(嵌套调用)返回新的实例. 用完后调用 {@link #release()}
+     */
+    public static LineProtocolEncoder forCurrentThread() {
+        LineProtocolEncoder encoder = CURRENT.get();
+        if (encoder.inUse) {
+            return new LineProtocolEncoder();
+        }
+        encoder.inUse = true;
+        encoder.reset();
+        return encoder;
+    }
+
+    /**
+     * 清空并归还给当前线程, 之后不能再使用
+     */
+    public void release() {
+        reset();
+        if (sb.capacity() > MAX_RETAINED_CAPACITY) {
+            sb = new StringBuilder(INITIAL_CAPACITY);
+        }
+        inUse = false;
+    }
+
+    public LineProtocolEncoder reset() {
+        sb.setLength(0);
+        state = STATE_NONE;
+        fieldCount = 0;
+        lineStart = 0;
+        lineCount = 0;
+        return this;
+    }
+
+    /**
+     * 开始新的一行(点), 上一行没有调用 {@link #time(long, TimeUnit)} 时不带时间戳结束(由服务端使用写入时间)
+     */
+    public LineProtocolEncoder measurement(@Nonnull String measurement) {
+        if (state != STATE_NONE) {
+            endLine();
+        }
+        if (measurement.isEmpty()) {
+            throw new IllegalArgumentException("measurement must not be empty");
+        }
+        lineStart = sb.length();
+        for (int i = 0, len = measurement.length(); i < len; i++) {
+            char c = measurement.charAt(i);
+            if (c == ',' || c == ' ') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        state = STATE_TAGS;
+        return this;
+    }
+
+    /**
+     * key/value为空时忽略(line protocol不允许空的tag值)
+     */
+    public LineProtocolEncoder tag(String key, String value) {
+        if (state != STATE_TAGS) {
+            throw new IllegalStateException("tags must follow measurement and precede fields");
+        }
+        if (Utils.isEmpty(key) || Utils.isEmpty(value)) {
+            return this;
+        }
+        sb.append(',');
+        appendKey(key);
+        sb.append('=');
+        appendKey(value);
+        return this;
+    }
+
+    public LineProtocolEncoder field(String key, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return this;
+        }
+        startField(key);
+        sb.append(value);
+        return this;
+    }
+
+    public LineProtocolEncoder field(String key, long value) {
+        startField(key);
+        sb.append(value).append('i');
+        return this;
+    }
+
+    public LineProtocolEncoder field(String key, boolean value) {
+        startField(key);
+        sb.append(value);
+        return this;
+    }
+
+    /**
+     * value为null时忽略
+     */
+    public LineProtocolEncoder field(String key, String value) {
+        if (value == null) {
+            return this;
+        }
+        startField(key);
+        sb.append('"');
+        for (int i = 0, len = value.length(); i < len; i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+        return this;
+    }
+
+    /**
+     * 以时间戳结束当前行
+     */
+    public LineProtocolEncoder time(long time, TimeUnit unit) {
+        checkFields();
+        sb.append(' ').append(unit.toNanos(time));
+        finishLine();
+        return this;
+    }
+
+    private void startField(String key) {
+        if (state == STATE_TAGS) {
+            sb.append(' ');
+            state = STATE_FIELDS;
+        } else if (state == STATE_FIELDS) {
+            sb.append(',');
+        } else {
+            throw new IllegalStateException("field must follow measurement");
+        }
+        appendKey(key);
+        sb.append('=');
+        fieldCount++;
+    }
+
+    private void appendKey(String key) {
+        for (int i = 0, len = key.length(); i < len; i++) {
+            char c = key.charAt(i);
+            if (c == ',' || c == '=' || c == ' ') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+    }
+
+    private void endLine() {
+        checkFields();
+        finishLine();
+    }
+
+    private void checkFields() {
+        if (state == STATE_NONE) {
+            throw new IllegalStateException("no measurement");
+        }
+        if (fieldCount == 0) {
+            //丢弃这一行, 以免写入不完整的数据
+            sb.setLength(lineStart);
+            state = STATE_NONE;
+            throw new IllegalStateException("point must have at least one field");
+        }
+    }
+
+    private void finishLine() {
+        sb.append('\n');
+        state = STATE_NONE;
+        fieldCount = 0;
+        lineCount++;
+    }
+
+    /**
+     * @return 已完成的行数(点数)
+     */
+    public int getLineCount() {
+        return state == STATE_NONE ? lineCount : lineCount + 1;
+    }
+
+    /**
+     * @return 没有任何点
+     */
+    public boolean isEmpty() {
+        return sb.length() == 0;
+    }
+
+    /**
+     * 结束当前行(如果有), 返回所有点的line protocol, 行之间以换行分隔
+     */
+    @Override
+    public String toString() {
+        if (state != STATE_NONE) {
+            endLine();
+        }
+        return sb.toString();
+    }
+}
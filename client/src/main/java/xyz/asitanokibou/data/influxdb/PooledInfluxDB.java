@@ -0,0 +1,560 @@
+package xyz.asitanokibou.data.influxdb;
+
+import lombok.extern.slf4j.Slf4j;
+import org.influxdb.BatchOptions;
+import org.influxdb.InfluxDB;
+import org.influxdb.InfluxDBIOException;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.BoundParameterQuery;
+import org.influxdb.dto.Point;
+import org.influxdb.dto.Pong;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXException;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * 连接池中的client - 直接委托给实际的InfluxDB client(替代原来的jdk动态代理, 调用时没有反射开销).
+ * <p>
+ * close时归还到连接池, 调用中出现 InfluxDBIOException 时标记为broken, 归还时由连接池销毁.
+ * 设置类方法(setDatabase/enableBatch 等)返回的是当前对象而不是实际的client.
+ * 查询的debug日志沿用原来代理中的logger名 influxdb.query, 已有的日志配置不需要修改
+ * @author aimysaber@gmail.com
+ */
+@Slf4j(topic = "influxdb.query")
+final class PooledInfluxDB implements InfluxDB, InfluxDBClientFactory.InfluxDBproxyHelper {
+
+    //BoundParameterQuery 没有提供获取参数的方法, 只在debug日志时使用
+    private static final Field PARAMS_FIELD = findParamsField();
+
+    private final InfluxDB target;
+    private final InfluxDBClientPool datasource;
+    private final boolean logQueryResult;
+
+    private volatile boolean broken;
+
+    PooledInfluxDB(InfluxDB target, InfluxDBClientPool datasource, boolean logQueryResult) {
+        this.target = Objects.requireNonNull(target);
+        this.datasource = Objects.requireNonNull(datasource);
+        this.logQueryResult = logQueryResult;
+    }
+
+    @Override
+    public InfluxDB getTarget() {
+        return target;
+    }
+
+    @Override
+    public InfluxDBClientPool getDataSource() {
+        return datasource;
+    }
+
+    boolean isBroken() {
+        return broken;
+    }
+
+    /**
+     * 归还到连接池(broken时由连接池销毁)
+     */
+    @Override
+    public void close() {
+        if (broken) {
+            try {
+                datasource.invalidateObject(this);
+            } catch (Exception e) {
+                throw new InfluxDBXException("Could not invalidate the broken resource", e);
+            }
+        } else {
+            datasource.returnObject(this);
+        }
+    }
+
+    @Override
+    public InfluxDB setLogLevel(LogLevel logLevel) {
+        target.setLogLevel(logLevel);
+        return this;
+    }
+
+    @Override
+    public InfluxDB enableGzip() {
+        target.enableGzip();
+        return this;
+    }
+
+    @Override
+    public InfluxDB disableGzip() {
+        target.disableGzip();
+        return this;
+    }
+
+    @Override
+    public boolean isGzipEnabled() {
+        return target.isGzipEnabled();
+    }
+
+    @Override
+    public InfluxDB enableBatch() {
+        target.enableBatch();
+        return this;
+    }
+
+    @Override
+    public InfluxDB enableBatch(BatchOptions batchOptions) {
+        target.enableBatch(batchOptions);
+        return this;
+    }
+
+    @Override
+    public InfluxDB enableBatch(int actions, int flushDuration, TimeUnit flushDurationTimeUnit) {
+        target.enableBatch(actions, flushDuration, flushDurationTimeUnit);
+        return this;
+    }
+
+    @Override
+    public InfluxDB enableBatch(int actions, int flushDuration, TimeUnit flushDurationTimeUnit, ThreadFactory threadFactory) {
+        target.enableBatch(actions, flushDuration, flushDurationTimeUnit, threadFactory);
+        return this;
+    }
+
+    @Override
+    public InfluxDB enableBatch(int actions, int flushDuration, TimeUnit flushDurationTimeUnit, ThreadFactory threadFactory, BiConsumer<Iterable<Point>, Throwable> exceptionHandler, ConsistencyLevel consistency) {
+        target.enableBatch(actions, flushDuration, flushDurationTimeUnit, threadFactory, exceptionHandler, consistency);
+        return this;
+    }
+
+    @Override
+    public InfluxDB enableBatch(int actions, int flushDuration, TimeUnit flushDurationTimeUnit, ThreadFactory threadFactory, BiConsumer<Iterable<Point>, Throwable> exceptionHandler) {
+        target.enableBatch(actions, flushDuration, flushDurationTimeUnit, threadFactory, exceptionHandler);
+        return this;
+    }
+
+    @Override
+    public void disableBatch() {
+        target.disableBatch();
+    }
+
+    @Override
+    public boolean isBatchEnabled() {
+        return target.isBatchEnabled();
+    }
+
+    @Override
+    public Pong ping() {
+        try {
+            return target.ping();
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public String version() {
+        try {
+            return target.version();
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(Point point) {
+        try {
+            target.write(point);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(String records) {
+        try {
+            target.write(records);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(List<String> records) {
+        try {
+            target.write(records);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(String database, String retentionPolicy, Point point) {
+        try {
+            target.write(database, retentionPolicy, point);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(int udpPort, Point point) {
+        try {
+            target.write(udpPort, point);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(BatchPoints batchPoints) {
+        try {
+            target.write(batchPoints);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void writeWithRetry(BatchPoints batchPoints) {
+        try {
+            target.writeWithRetry(batchPoints);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(String database, String retentionPolicy, ConsistencyLevel consistency, String records) {
+        try {
+            target.write(database, retentionPolicy, consistency, records);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(String database, String retentionPolicy, ConsistencyLevel consistency, TimeUnit precision, String records) {
+        try {
+            target.write(database, retentionPolicy, consistency, precision, records);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(String database, String retentionPolicy, ConsistencyLevel consistency, List<String> records) {
+        try {
+            target.write(database, retentionPolicy, consistency, records);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(String database, String retentionPolicy, ConsistencyLevel consistency, TimeUnit precision, List<String> records) {
+        try {
+            target.write(database, retentionPolicy, consistency, precision, records);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(int udpPort, String records) {
+        try {
+            target.write(udpPort, records);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(int udpPort, List<String> records) {
+        try {
+            target.write(udpPort, records);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public QueryResult query(Query query) {
+        logQuery(query);
+        try {
+            QueryResult result = target.query(query);
+            logQueryResult(result);
+            return result;
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void query(Query query, Consumer<QueryResult> onSuccess, Consumer<Throwable> onFailure) {
+        logQuery(query);
+        try {
+            target.query(query, onSuccess, onFailure);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void query(Query query, int chunkSize, Consumer<QueryResult> onNext) {
+        logQuery(query);
+        try {
+            target.query(query, chunkSize, onNext);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void query(Query query, int chunkSize, BiConsumer<Cancellable, QueryResult> onNext) {
+        logQuery(query);
+        try {
+            target.query(query, chunkSize, onNext);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void query(Query query, int chunkSize, Consumer<QueryResult> onNext, Runnable onComplete) {
+        logQuery(query);
+        try {
+            target.query(query, chunkSize, onNext, onComplete);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void query(Query query, int chunkSize, BiConsumer<Cancellable, QueryResult> onNext, Runnable onComplete) {
+        logQuery(query);
+        try {
+            target.query(query, chunkSize, onNext, onComplete);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void query(Query query, int chunkSize, BiConsumer<Cancellable, QueryResult> onNext, Runnable onComplete, Consumer<Throwable> onFailure) {
+        logQuery(query);
+        try {
+            target.query(query, chunkSize, onNext, onComplete, onFailure);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public QueryResult query(Query query, TimeUnit timeUnit) {
+        logQuery(query);
+        try {
+            QueryResult result = target.query(query, timeUnit);
+            logQueryResult(result);
+            return result;
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    @Deprecated
+    public void createDatabase(String name) {
+        try {
+            target.createDatabase(name);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    @Deprecated
+    public void deleteDatabase(String name) {
+        try {
+            target.deleteDatabase(name);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    @Deprecated
+    public List<String> describeDatabases() {
+        try {
+            return target.describeDatabases();
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    @Deprecated
+    public boolean databaseExists(String name) {
+        try {
+            return target.databaseExists(name);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            target.flush();
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public InfluxDB setConsistency(ConsistencyLevel consistencyLevel) {
+        target.setConsistency(consistencyLevel);
+        return this;
+    }
+
+    @Override
+    public InfluxDB setDatabase(String database) {
+        target.setDatabase(database);
+        return this;
+    }
+
+    @Override
+    public InfluxDB setRetentionPolicy(String retentionPolicy) {
+        target.setRetentionPolicy(retentionPolicy);
+        return this;
+    }
+
+    @Override
+    @Deprecated
+    public void createRetentionPolicy(String rpName, String database, String duration, String shardDuration, int replicationFactor, boolean isDefault) {
+        try {
+            target.createRetentionPolicy(rpName, database, duration, shardDuration, replicationFactor, isDefault);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    @Deprecated
+    public void createRetentionPolicy(String rpName, String database, String duration, int replicationFactor, boolean isDefault) {
+        try {
+            target.createRetentionPolicy(rpName, database, duration, replicationFactor, isDefault);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    @Deprecated
+    public void createRetentionPolicy(String rpName, String database, String duration, String shardDuration, int replicationFactor) {
+        try {
+            target.createRetentionPolicy(rpName, database, duration, shardDuration, replicationFactor);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    @Deprecated
+    public void dropRetentionPolicy(String rpName, String database) {
+        try {
+            target.dropRetentionPolicy(rpName, database);
+        } catch (InfluxDBIOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    private void logQuery(Query query) {
+        if (log.isDebugEnabled()) {
+            log.debug("Query Command : {}", query instanceof BoundParameterQuery ? inlineParams(query) : query.getCommand());
+        }
+    }
+
+    private void logQueryResult(QueryResult result) {
+        if (logQueryResult && log.isDebugEnabled()) {
+            log.debug("Query Result : {}", result);
+        }
+    }
+
+    /**
+     * 将语句中的 $param 替换为 'value' (只用于日志)
+     */
+    @SuppressWarnings("unchecked")
+    private static String inlineParams(Query query) {
+        String command = query.getCommand();
+        Map<String, Object> params = PARAMS_FIELD == null ? null : (Map<String, Object>) Utils.getField(PARAMS_FIELD, query);
+        if (Utils.isEmpty(params) || command.indexOf('$') < 0) {
+            return command;
+        }
+
+        StringBuilder sb = new StringBuilder(command.length() + 16 * params.size());
+        int length = command.length();
+        int i = 0;
+        while (i < length) {
+            char ch = command.charAt(i);
+            if (ch == '$') {
+                int end = i + 1;
+                while (end < length && (Character.isLetterOrDigit(command.charAt(end)) || command.charAt(end) == '_')) {
+                    end++;
+                }
+                String name = command.substring(i + 1, end);
+                if (params.containsKey(name)) {
+                    sb.append('\'').append(params.get(name)).append('\'');
+                    i = end;
+                    continue;
+                }
+            }
+            sb.append(ch);
+            i++;
+        }
+        return sb.toString();
+    }
+
+    private static Field findParamsField() {
+        Field field = Utils.findField(BoundParameterQuery.class, "params");
+        if (field != null) {
+            Utils.makeAccessible(field);
+        }
+        return field;
+    }
+}
@@ -0,0 +1,252 @@
+package xyz.asitanokibou.data.influxdb;
+
+import org.influxdb.dto.BoundParameterQuery;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 预先解析的查询模板: #measurement# 占位符的位置, 各条语句的边界以及语句中是否已经指定了tz 只在创建时解析一次,
+ * 之后每次查询只需要拼接 measurement 和绑定参数. 不可变, 线程安全, 可以作为常量复用
+ * <pre>
+ *     PreparedInfluxQuery query = PreparedInfluxQuery.prepare("SELECT * FROM #measurement# WHERE host = $host");
+ *     template.queryForListByQuery("telegraf", "cpu", query, Cpu.class, args);
+ * </pre>
+ * @author aimysaber@gmail.com
+ */
+public final class PreparedInfluxQuery {
+
+    static final String MEASUREMENT_PLACEHOLDER = "#measurement#";
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^'\\\\]|\\\\.)*'");
+    //不替换标识符/参数名中的数字以及duration(如 10s, 1h)
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.$#])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    //这些关键字后面的 / 是正则的开始(如 FROM /cpu.*/), 其他标识符后面的 / 是除号
+    private static final Set<String> REGEX_KEYWORDS = new HashSet<>(Arrays.asList("FROM", "SELECT"));
+
+    private final String template;
+    //整个模板按占位符切分后的片段, 片段之间是 measurement
+    private final String[] fragments;
+    //补充tz时使用: 按 ; (字面量之外)切分并去掉空语句后, 每条语句按占位符切分后的片段
+    private final String[][] statementFragments;
+    //语句中已经指定了tz 不需要再补充
+    private final boolean hasTimeZone;
+    private final int fragmentsLength;
+    private volatile String normalizedTemplate;
+
+    private PreparedInfluxQuery(String template) {
+        this.template = template;
+        this.fragments = split(template);
+        this.hasTimeZone = template.toLowerCase(Locale.ROOT).contains("tz(");
+        if (template.indexOf(';') >= 0) {
+            List<String[]> statements = new ArrayList<>();
+            for (String statement : splitStatements(template)) {
+                statements.add(split(statement));
+            }
+            this.statementFragments = statements.toArray(new String[0][]);
+        } else {
+            this.statementFragments = new String[][]{fragments};
+        }
+        int length = 0;
+        for (String fragment : fragments) {
+            length += fragment.length();
+        }
+        this.fragmentsLength = length;
+    }
+
+    public static PreparedInfluxQuery prepare(@Nonnull String template) {
+        return new PreparedInfluxQuery(Objects.requireNonNull(template, "template"));
+    }
+
+    /**
+     * 按字符串, 引号标识符和正则字面量之外的 ; 切分语句, 去掉空语句
+     */
+    static List<String> splitStatements(String statements) {
+        List<String> result = new ArrayList<>();
+        int length = statements.length();
+        int from = 0;
+        for (int i = 0; i < length; i++) {
+            int end = literalEnd(statements, i);
+            if (end >= 0) {
+                i = end - 1;
+            } else if (statements.charAt(i) == ';') {
+                addStatement(result, statements.substring(from, i));
+                from = i + 1;
+            }
+        }
+        addStatement(result, statements.substring(from));
+        return result;
+    }
+
+    private static void addStatement(List<String> statements, String statement) {
+        if (!statement.trim().isEmpty()) {
+            statements.add(statement);
+        }
+    }
+
+    /**
+     * @return i处开始的字符串('...'), 引号标识符("...")或正则(/.../)字面量的结束位置(不含), i处不是字面量时返回-1;
+     * 没有结束的字面量到语句末尾为止
+     */
+    static int literalEnd(String statements, int i) {
+        char quote = statements.charAt(i);
+        if (quote != '\'' && quote != '"' && (quote != '/' || !isRegexStart(statements, i))) {
+            return -1;
+        }
+        int length = statements.length();
+        for (int j = i + 1; j < length; j++) {
+            char c = statements.charAt(j);
+            if (c == '\\') {
+                j++;
+            } else if (c == quote) {
+                return j + 1;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 除号前面是操作数(标识符, 数字, 参数, 右括号, 字面量), 正则前面是操作符(=~, !~), 逗号, 左括号或 FROM/SELECT
+     */
+    private static boolean isRegexStart(String statements, int i) {
+        int j = i - 1;
+        while (j >= 0 && Character.isWhitespace(statements.charAt(j))) {
+            j--;
+        }
+        if (j < 0) {
+            return true;
+        }
+        char c = statements.charAt(j);
+        if (c == ')' || c == '\'' || c == '"' || c == '#') {
+            return false;
+        }
+        if (!isWordChar(c)) {
+            return true;
+        }
+        int start = j;
+        while (start > 0 && isWordChar(statements.charAt(start - 1))) {
+            start--;
+        }
+        if (start > 0 && statements.charAt(start - 1) == '$') {
+            return false;
+        }
+        return REGEX_KEYWORDS.contains(statements.substring(start, j + 1).toUpperCase(Locale.ROOT));
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static String[] split(String statement) {
+        List<String> parts = new ArrayList<>(2);
+        int from = 0;
+        int index;
+        while ((index = statement.indexOf(MEASUREMENT_PLACEHOLDER, from)) >= 0) {
+            parts.add(statement.substring(from, index));
+            from = index + MEASUREMENT_PLACEHOLDER.length();
+        }
+        parts.add(statement.substring(from));
+        return parts.toArray(new String[0]);
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return 去掉字符串和数字字面量(替换为 ?)并合并空白后的模板, 用于按查询统计指标; 只计算一次
+     */
+    public String getNormalizedTemplate() {
+        String normalized = normalizedTemplate;
+        if (normalized == null) {
+            normalized = STRING_LITERAL.matcher(template).replaceAll("?");
+            normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+            normalized = WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+            normalizedTemplate = normalized;
+        }
+        return normalized;
+    }
+
+    /**
+     * @return 语句中是否已经指定了tz
+     */
+    public boolean hasTimeZone() {
+        return hasTimeZone;
+    }
+
+    /**
+     * @return 补充tz时的语句数(不含空语句)
+     */
+    public int getStatementCount() {
+        return statementFragments.length;
+    }
+
+    /**
+     * 生成最终的查询语句
+     * @param measurement 替换 #measurement# 的表名, 为空时不替换
+     * @param tzClause 语句中没有指定tz时追加到每条语句后的tz子句(如 " tz('Asia/Shanghai') "), 为null时不追加
+     * @return -
+     */
+    public String render(@Nullable String measurement, @Nullable String tzClause) {
+        String table = Utils.isNotEmpty(measurement) ? measurement : MEASUREMENT_PLACEHOLDER;
+        if (tzClause == null || hasTimeZone) {
+            if (fragments.length == 1) {
+                return template;
+            }
+            StringBuilder sb = new StringBuilder(fragmentsLength + table.length() * (fragments.length - 1));
+            append(sb, fragments, table);
+            return sb.toString();
+        }
+        StringBuilder sb = new StringBuilder(template.length() + (table.length() + tzClause.length()) * statementFragments.length);
+        for (int i = 0; i < statementFragments.length; i++) {
+            if (i > 0) {
+                sb.append(';');
+            }
+            append(sb, statementFragments[i], table);
+            sb.append(tzClause);
+        }
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String[] parts, String table) {
+        sb.append(parts[0]);
+        for (int i = 1; i < parts.length; i++) {
+            sb.append(table).append(parts[i]);
+        }
+    }
+
+    /**
+     * 构建绑定参数的query
+     * @param database 数据库
+     * @param measurement 表
+     * @param argsMap 参数map
+     * @param tzClause 见 {@link #render(String, String)}
+     * @return -
+     */
+    public BoundParameterQuery bind(@Nullable String database, @Nullable String measurement,
+                                    @Nullable Map<String, Object> argsMap, @Nullable String tzClause) {
+        BoundParameterQuery.QueryBuilder queryBuilder =
+                BoundParameterQuery.QueryBuilder.newQuery(render(measurement, tzClause)).forDatabase(database);
+
+        if (Utils.isNotEmpty(argsMap)) {
+            argsMap.forEach(queryBuilder::bind);
+        }
+
+        return queryBuilder.create();
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+}
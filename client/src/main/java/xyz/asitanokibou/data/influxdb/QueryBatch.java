@@ -0,0 +1,158 @@
+package xyz.asitanokibou.data.influxdb;
+
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXException;
+import xyz.asitanokibou.data.influxdb.pojo.GroupByResult;
+import xyz.asitanokibou.data.influxdb.pojo.TimedResult;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 把多个互相独立的查询合并为一个多语句请求, 只借用一次client, 一次http往返:
+ * <pre>
+ *     QueryBatch batch = template.newQueryBatch("telegraf");
+ *     QueryBatch.Entry&lt;Cpu&gt; cpu = batch.addForList("cpu", "SELECT * FROM #measurement# WHERE host = $host", Cpu.class, args);
+ *     QueryBatch.Entry&lt;GroupByResult&gt; mem = batch.addForGroupByList("mem", "SELECT mean(used) FROM #measurement# WHERE time > now() - 1h GROUP BY time(1m)", null);
+ *     batch.execute();
+ *     List&lt;Cpu&gt; cpuList = cpu.get();
+ * </pre>
+ * 各查询的参数重命名后绑定, 不同查询中的同名参数不会冲突. 某条语句执行出错时只有对应的查询失败;
+ * influxdb 遇到出错的语句后不再执行后面的语句, 后面的查询同样失败. 有语法错误时整个请求被拒绝, 所有查询都失败.
+ * 默认为每条语句补充tz, schema语句(SHOW ...)不能带tz, 需要用 add(..., false) 添加. 不使用结果缓存. 非线程安全
+ * @author aimysaber@gmail.com
+ */
+public final class QueryBatch {
+
+    private final InfluxDBTemplate template;
+    private final String database;
+    private final List<Entry<?>> entries = new ArrayList<>();
+    private boolean executed;
+
+    QueryBatch(InfluxDBTemplate template, String database) {
+        this.template = template;
+        this.database = database;
+    }
+
+    /**
+     * @param query 查询语句, 可以包含多条语句(每条语句的结果都交给mapper)
+     * @param mapper 结果映射器, 收到的QueryResult只包含本查询的语句结果
+     */
+    public <T> Entry<T> add(@Nullable String measurement, @Nonnull String query, @Nullable Map<String, Object> argsMap,
+                            @Nonnull InfluxDBXMapper<T> mapper) {
+        return add(measurement, query, argsMap, mapper, true);
+    }
+
+    /**
+     * @param timezoneAdjust 是否为语句补充tz; schema语句(SHOW ...)不能添加tz, 同 InfluxDBTemplate#queryForListByQuery
+     */
+    public <T> Entry<T> add(@Nullable String measurement, @Nonnull String query, @Nullable Map<String, Object> argsMap,
+                            @Nonnull InfluxDBXMapper<T> mapper, boolean timezoneAdjust) {
+        if (executed) {
+            throw new IllegalStateException("query batch already executed");
+        }
+        Entry<T> entry = new Entry<>(measurement, template.prepare(query), argsMap, Objects.requireNonNull(mapper), timezoneAdjust);
+        entries.add(entry);
+        return entry;
+    }
+
+    /**
+     * 用clazz(为@Measurement注解)映射结果, 同 InfluxDBTemplate#queryForListByQuery
+     */
+    public <T> Entry<T> addForList(@Nullable String measurement, @Nonnull String query, @Nonnull Class<T> clazz,
+                                   @Nullable Map<String, Object> argsMap) {
+        return add(measurement, query, argsMap, queryResult -> template.mapToPOJO(queryResult, clazz, measurement));
+    }
+
+    public <T> Entry<TimedResult<T>> addForTimedScalarList(@Nullable String measurement, @Nonnull String query, Class<T> clazz,
+                                                           @Nullable Map<String, Object> argsMap) {
+        return add(measurement, query, argsMap, template.timedScalarMapper(clazz));
+    }
+
+    public Entry<GroupByResult> addForGroupByList(@Nullable String measurement, @Nonnull String query,
+                                                  @Nullable Map<String, Object> argsMap) {
+        return add(measurement, query, argsMap, template.groupByMapper());
+    }
+
+    /**
+     * 发送请求并把结果分配给各个查询; 请求失败(网络错误等)时抛出异常, 所有查询都失败
+     */
+    public void execute() {
+        if (executed) {
+            throw new IllegalStateException("query batch already executed");
+        }
+        executed = true;
+        if (!entries.isEmpty()) {
+            template.executeBatch(database, Collections.unmodifiableList(entries));
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    /**
+     * 一个查询及其结果
+     */
+    public static final class Entry<T> {
+
+        final String measurement;
+        final PreparedInfluxQuery query;
+        final Map<String, Object> argsMap;
+        final InfluxDBXMapper<T> mapper;
+        final boolean timezoneAdjust;
+
+        private boolean done;
+        private List<T> result;
+        private RuntimeException error;
+
+        private Entry(String measurement, PreparedInfluxQuery query, Map<String, Object> argsMap, InfluxDBXMapper<T> mapper,
+                      boolean timezoneAdjust) {
+            this.measurement = measurement;
+            this.query = query;
+            this.argsMap = argsMap;
+            this.mapper = mapper;
+            this.timezoneAdjust = timezoneAdjust;
+        }
+
+        void complete(List<T> result) {
+            this.result = result;
+            this.done = true;
+        }
+
+        void fail(RuntimeException error) {
+            this.error = error;
+            this.done = true;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public boolean isSuccess() {
+            return done && error == null;
+        }
+
+        /**
+         * @throws IllegalStateException 还没有执行
+         * @throws InfluxDBXException 语句出错或映射失败
+         */
+        public List<T> get() {
+            if (!done) {
+                throw new IllegalStateException("query batch not executed");
+            }
+            if (error != null) {
+                throw error instanceof InfluxDBXException ? error : new InfluxDBXException(error.getMessage(), error);
+            }
+            return result;
+        }
+    }
+}
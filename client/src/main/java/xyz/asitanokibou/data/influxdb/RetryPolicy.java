@@ -0,0 +1,62 @@
+package xyz.asitanokibou.data.influxdb;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.influxdb.InfluxDBException;
+import org.influxdb.InfluxDBIOException;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXConnectionException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * 失败重试策略: 指数退避加随机抖动, 总耗时不超过 deadlineMillis.
+ * 只重试查询和可以重复写入的批量写入(见 {@link InfluxDBTemplate#setRetryPolicy}), 单点写入不重试
+ * @author aimysaber@gmail.com
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RetryPolicy {
+
+    //最多尝试的次数(含第一次)
+    @Builder.Default
+    private int maxAttempts = 3;
+    @Builder.Default
+    private long initialBackoffMillis = 100;
+    @Builder.Default
+    private long maxBackoffMillis = 5_000;
+    @Builder.Default
+    private double multiplier = 2;
+    //退避时间随机减少的比例(0-1), 避免所有调用方同时重试
+    @Builder.Default
+    private double jitter = 0.5;
+    //一次调用(含所有重试和退避)的时间预算, 不足以再等待一次退避时不再重试; 0表示不限制
+    @Builder.Default
+    private long deadlineMillis = 0;
+    //哪些异常需要重试, 默认为 {@link #isTransientFailure}
+    @Builder.Default
+    private Predicate<RuntimeException> retryOn = RetryPolicy::isTransientFailure;
+
+    /**
+     * 网络异常, 无法建立连接以及服务端过载(cache已满, hinted handoff队列未清空), 其他异常(如语句错误)重试也不会成功
+     */
+    public static boolean isTransientFailure(RuntimeException e) {
+        return e instanceof InfluxDBIOException
+                || e instanceof InfluxDBXConnectionException
+                || e instanceof InfluxDBException.CacheMaxMemorySizeExceededException
+                || e instanceof InfluxDBException.HintedHandOffQueueNotEmptyException;
+    }
+
+    /**
+     * @param attempt 已经失败的次数, 从1开始
+     * @return 下次重试前等待的时间
+     */
+    long backoffMillis(int attempt) {
+        double backoff = Math.min(maxBackoffMillis, initialBackoffMillis * Math.pow(multiplier, attempt - 1));
+        return (long) (backoff * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+}
@@ -0,0 +1,33 @@
+package xyz.asitanokibou.data.influxdb;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 批量获取schema({@link SchemaOperation#discover})的配置
+ * @author aimysaber@gmail.com
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class SchemaDiscoveryConfig {
+
+    //要获取的measurement, 为null时为数据库中的所有measurement
+    private List<String> measurements;
+    //同时执行的请求数
+    @Builder.Default
+    private int parallelism = 4;
+    //一个请求(FROM子句)中包含的measurement数
+    @Builder.Default
+    private int measurementsPerRequest = 20;
+    @Builder.Default
+    private boolean includeFieldKeys = true;
+    //tag values可能很多(高基数), 只需要tag keys时关闭
+    @Builder.Default
+    private boolean includeTagValues = true;
+}
@@ -1,11 +1,26 @@
 package xyz.asitanokibou.data.influxdb;
 
 import lombok.extern.slf4j.Slf4j;
+import org.influxdb.InfluxDB;
 import org.influxdb.dto.Query;
 import org.influxdb.dto.QueryResult;
+import xyz.asitanokibou.data.influxdb.cache.SchemaCache;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXException;
+import xyz.asitanokibou.data.influxdb.pojo.MeasurementSchema;
+import xyz.asitanokibou.data.influxdb.pojo.SchemaSnapshot;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 /**
  * @author aimysaber@gmail.com
  */
@@ -16,17 +31,41 @@ public class SchemaOperation {
     private static final String SHOW_TAG_KEY = "SHOW TAG KEYS";
     private static final String SHOW_TAG_VALUES = "SHOW TAG VALUES";
     private static final String SHOW_MEASUREMENTS = "SHOW MEASUREMENTS";
+    private static final String SHOW_FIELD_KEYS = "SHOW FIELD KEYS";
 
     private final InfluxDBTemplate influxDBTemplate;
 
+    private volatile SchemaCache schemaCache;
+
     public SchemaOperation(InfluxDBTemplate influxDBTemplate) {
         this.influxDBTemplate = influxDBTemplate;
     }
 
+    public SchemaCache getSchemaCache() {
+        return schemaCache;
+    }
+
+    /**
+     * 设置后measurements, tag keys, tag values从缓存中获取, 通过本对象dropMeasurement时删除相关的缓存.
+     * 缓存的key中没有指定的数据库为默认数据库, 空的measurement为null(整个数据库)
+     */
+    public void setSchemaCache(SchemaCache schemaCache) {
+        this.schemaCache = schemaCache;
+    }
+
     public Map<String, List<String>> getTagKeys(String database, String measurement) {
 
         Objects.requireNonNull(database, "database must be specified");
 
+        SchemaCache cache = this.schemaCache;
+        if (cache != null) {
+            return cache.get(SchemaCache.Kind.TAG_KEYS, influxDBTemplate.effectiveDatabase(database), measurement, null,
+                    () -> loadTagKeys(database, measurement));
+        }
+        return loadTagKeys(database, measurement);
+    }
+
+    private Map<String, List<String>> loadTagKeys(String database, String measurement) {
         return influxDBTemplate.queryForObject(() -> {
             StringBuilder sb = new StringBuilder(SHOW_TAG_KEY);
             sb.append(" ON ").append(database);
@@ -56,6 +95,15 @@ public class SchemaOperation {
    public Map<String, List<String>> getTagValues(String database, String measurement, String tagKey) {
         Objects.requireNonNull(database, "database must be specified");
 
+        SchemaCache cache = this.schemaCache;
+        if (cache != null) {
+            return cache.get(SchemaCache.Kind.TAG_VALUES, influxDBTemplate.effectiveDatabase(database), measurement, tagKey,
+                    () -> loadTagValues(database, measurement, tagKey));
+        }
+        return loadTagValues(database, measurement, tagKey);
+    }
+
+    private Map<String, List<String>> loadTagValues(String database, String measurement, String tagKey) {
         return influxDBTemplate.queryForObject(() -> {
             StringBuilder sb = new StringBuilder(SHOW_TAG_VALUES);
             sb.append(" ON ").append(database);
@@ -84,19 +132,161 @@ public class SchemaOperation {
     }
 
 
+    public SchemaSnapshot discover(@Nonnull String database) {
+        return discover(database, SchemaDiscoveryConfig.builder().build(), null);
+    }
+
+    /**
+     * 批量获取数据库中measurement的tag keys, field keys 和 tag values.
+     * 每 measurementsPerRequest 个measurement合并为一个请求(三个语句共用一个FROM子句), 请求并行执行, 最多 parallelism 个.
+     * 一个请求失败时其中的measurement记录在 {@link SchemaSnapshot#getFailedMeasurements()} 中, 不影响其他请求
+     * @param listener 每个measurement获取完成时回调(在执行请求的线程上, 不会并发调用), 可以为null
+     */
+    public SchemaSnapshot discover(@Nonnull String database, @Nonnull SchemaDiscoveryConfig config,
+                                   @Nullable Consumer<MeasurementSchema> listener) {
+        Objects.requireNonNull(database, "database must be specified");
+        long start = System.nanoTime();
+
+        List<String> measurements = config.getMeasurements() != null ? config.getMeasurements() : getMeasurements(database);
+        int perRequest = Math.max(1, config.getMeasurementsPerRequest());
+        List<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < measurements.size(); i += perRequest) {
+            batches.add(measurements.subList(i, Math.min(measurements.size(), i + perRequest)));
+        }
+
+        Map<String, MeasurementSchema> schemas = new ConcurrentHashMap<>();
+        List<String> failed = Collections.synchronizedList(new ArrayList<>());
+        Object listenerLock = new Object();
+        if (!batches.isEmpty()) {
+            int threads = Math.min(Math.max(1, config.getParallelism()), batches.size());
+            ExecutorService executor = Executors.newFixedThreadPool(threads, Utils.namedDaemonThreadFactory("influxdb-schema-discovery"));
+            try {
+                List<Future<?>> futures = new ArrayList<>(batches.size());
+                for (List<String> batch : batches) {
+                    futures.add(executor.submit(() -> {
+                        List<MeasurementSchema> batchSchemas;
+                        try {
+                            batchSchemas = discoverBatch(database, batch, config);
+                        } catch (RuntimeException e) {
+                            log.warn("Failed to discover schema of {} measurements in {}", batch.size(), database, e);
+                            failed.addAll(batch);
+                            return;
+                        }
+                        for (MeasurementSchema schema : batchSchemas) {
+                            schemas.put(schema.getName(), schema);
+                            if (listener != null) {
+                                synchronized (listenerLock) {
+                                    listener.accept(schema);
+                                }
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InfluxDBXException("Interrupted while discovering schema of " + database, e);
+            } catch (ExecutionException e) {
+                throw new InfluxDBXException("Failed to discover schema of " + database, e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        List<String> failedMeasurements = new ArrayList<>(failed);
+        Collections.sort(failedMeasurements);
+        return new SchemaSnapshot(database, new TreeMap<>(schemas), failedMeasurements,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private List<MeasurementSchema> discoverBatch(String database, List<String> measurements, SchemaDiscoveryConfig config) {
+        String on = " ON " + quoteIdentifier(database);
+        String from = measurements.stream().map(SchemaOperation::quoteIdentifier).collect(Collectors.joining(", ", " FROM ", ""));
+        StringBuilder sb = new StringBuilder(SHOW_TAG_KEY).append(on).append(from);
+        if (config.isIncludeFieldKeys()) {
+            sb.append("; ").append(SHOW_FIELD_KEYS).append(on).append(from);
+        }
+        if (config.isIncludeTagValues()) {
+            sb.append("; ").append(SHOW_TAG_VALUES).append(on).append(from).append(" WITH KEY =~ /.*/");
+        }
+        String command = sb.toString();
+
+        return influxDBTemplate.queryForObject(() -> new Query(command, database), (QueryResult queryResult) -> {
+            Map<String, MeasurementSchema> schemas = new LinkedHashMap<>();
+            for (String measurement : measurements) {
+                schemas.put(measurement, new MeasurementSchema(measurement, new ArrayList<>(), new LinkedHashMap<>(), new LinkedHashMap<>()));
+            }
+            //结果按语句顺序: tag keys, field keys, tag values
+            List<QueryResult.Result> results = queryResult.getResults();
+            int statement = 0;
+            forEachSeries(results.get(statement++), (schema, row) -> schema.getTagKeys().add(String.valueOf(row.get(0))), schemas);
+            if (config.isIncludeFieldKeys()) {
+                forEachSeries(results.get(statement++),
+                        (schema, row) -> schema.getFieldTypes().put(String.valueOf(row.get(0)), String.valueOf(row.get(1))), schemas);
+            }
+            if (config.isIncludeTagValues()) {
+                forEachSeries(results.get(statement), (schema, row) -> schema.getTagValues()
+                        .computeIfAbsent(String.valueOf(row.get(0)), k -> new ArrayList<>()).add(String.valueOf(row.get(1))), schemas);
+            }
+            return new ArrayList<>(schemas.values());
+        }).orElseThrow(() -> new InfluxDBXException("Empty schema query result: " + command));
+    }
+
+    private static void forEachSeries(QueryResult.Result result, BiConsumer<MeasurementSchema, List<Object>> rowConsumer,
+                                      Map<String, MeasurementSchema> schemas) {
+        if (result.getError() != null) {
+            throw new InfluxDBXException("InfluxDB returned an error: " + result.getError());
+        }
+        if (result.getSeries() == null) {
+            return;
+        }
+        for (QueryResult.Series series : result.getSeries()) {
+            MeasurementSchema schema = schemas.get(series.getName());
+            if (schema != null && series.getValues() != null) {
+                for (List<Object> row : series.getValues()) {
+                    rowConsumer.accept(schema, row);
+                }
+            }
+        }
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return Utils.quote(identifier.replace("\\", "\\\\").replace("\"", "\\\""));
+    }
+
     public void dropMeasurement(@Nonnull String databse, String measurement){
         //为了谨慎起见 必须给定database 防止删除了不同数据库(database)的measurement
         Objects.requireNonNull(databse, "database must be specified");
-        influxDBTemplate.execute(client -> client.query(new Query("DROP MEASUREMENT " + measurement, databse)));
+        influxDBTemplate.executeWrite(new InfluxDBClientCallbackWithNoResult() {
+            @Override
+            public void executeWithNoResult(InfluxDB client) {
+                client.query(new Query("DROP MEASUREMENT " + measurement, databse));
+            }
+        });
+        SchemaCache cache = this.schemaCache;
+        if (cache != null) {
+            cache.invalidate(influxDBTemplate.effectiveDatabase(databse), measurement);
+        }
     }
 
     public List<String> getMeasurements() {
         return getMeasurements(null);
     }
 
-    @SuppressWarnings("unchecked")
     //暂不支持where
     public List<String> getMeasurements(String database) {
+        SchemaCache cache = this.schemaCache;
+        if (cache != null) {
+            return cache.get(SchemaCache.Kind.MEASUREMENTS, influxDBTemplate.effectiveDatabase(database), null, null,
+                    () -> loadMeasurements(database));
+        }
+        return loadMeasurements(database);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> loadMeasurements(String database) {
         List<List<String>> resultList =
                 influxDBTemplate.queryForList(() -> new Query(SHOW_MEASUREMENTS, database), series -> Utils.collcect((List) series.getValues()));
 
@@ -0,0 +1,40 @@
+package xyz.asitanokibou.data.influxdb;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 本地写入日志({@link SpoolingPointWriter})的配置
+ * @author aimysaber@gmail.com
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class SpoolConfig {
+
+    //段文件所在的目录, 必须设置; 同一时间只能被一个writer使用(由目录中的锁文件保证, 其他writer打开时失败)
+    private String directory;
+    //每个段文件的大小, 一次写入的数据不能超过这个大小
+    @Builder.Default
+    private int segmentBytes = 64 * 1024 * 1024;
+    //所有段文件的总大小上限, 超过后写入失败
+    @Builder.Default
+    private long maxSpoolBytes = 1024L * 1024 * 1024;
+    //每次追加后都刷盘(msync); 关闭时只在切换段时刷盘, 进程崩溃不会丢数据, 但机器掉电可能丢失最近的写入
+    @Builder.Default
+    private boolean forceOnAppend = false;
+    //重放时一个写请求最多包含的点数
+    @Builder.Default
+    private int maxBatchPoints = 5000;
+    //没有待重放的数据时重放线程的等待时间
+    @Builder.Default
+    private long pollTimeoutMillis = 100;
+    //重放失败后的重试间隔, 连续失败时翻倍直到 maxRetryBackoffMillis
+    @Builder.Default
+    private long retryBackoffMillis = 500;
+    @Builder.Default
+    private long maxRetryBackoffMillis = 30_000;
+}
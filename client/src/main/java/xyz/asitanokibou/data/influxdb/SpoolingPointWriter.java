@@ -0,0 +1,249 @@
+package xyz.asitanokibou.data.influxdb;
+
+import lombok.extern.slf4j.Slf4j;
+import org.influxdb.InfluxDB;
+import org.influxdb.InfluxDBException;
+import org.influxdb.dto.Point;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXException;
+import xyz.asitanokibou.data.influxdb.metrics.RateMeter;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 先写本地日志再写influxdb: 写入只追加到本地的内存映射日志({@link WriteSpool})中就返回, 由重放线程批量写入influxdb,
+ * 失败时按退避间隔一直重试, 所以influxdb重启/不可用时写入不会失败, 也不会阻塞调用线程.
+ * 未重放的数据在关闭/进程重启后保留, 下次创建writer时继续重放
+ * <p>
+ * 重放时由服务端补充没有时间戳的点的时间, 所以写入的点应该带时间戳. 服务端明确拒绝的数据(解析失败, 字段类型冲突等)
+ * 重试也不会成功, 记录日志后丢弃
+ * @author aimysaber@gmail.com
+ */
+@Slf4j
+public class SpoolingPointWriter implements AutoCloseable {
+
+    private final InfluxDBTemplate template;
+    private final SpoolConfig config;
+    private final WriteSpool spool;
+    private final Thread replayThread;
+    private final Object signal = new Object();
+
+    //写入日志的点数
+    private final RateMeter spooledPoints = new RateMeter();
+    //重放成功的点数
+    private final RateMeter replayedPoints = new RateMeter();
+    private final LongAdder replayFailures = new LongAdder();
+    private final LongAdder droppedPoints = new LongAdder();
+
+    private volatile boolean running = true;
+
+    public SpoolingPointWriter(InfluxDBTemplate template, SpoolConfig config) {
+        if (Utils.isEmpty(config.getDirectory())) {
+            throw new IllegalArgumentException("spool directory is required");
+        }
+        this.template = template;
+        this.config = config;
+        try {
+            this.spool = new WriteSpool(Paths.get(config.getDirectory()), config.getSegmentBytes(),
+                    config.getMaxSpoolBytes(), config.isForceOnAppend());
+        } catch (IOException e) {
+            throw new InfluxDBXException("Failed to open write spool in " + config.getDirectory(), e);
+        }
+        this.replayThread = new Thread(this::replayLoop, "influxdb-spool-replay");
+        replayThread.setDaemon(true);
+        replayThread.start();
+    }
+
+    public void write(String database, String retentionPolicy, Point point) {
+        append(database, retentionPolicy, point.lineProtocol(TimeUnit.NANOSECONDS), 1);
+    }
+
+    public void write(String database, String retentionPolicy, List<Point> points) {
+        if (Utils.isEmpty(points)) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder(points.size() * 64);
+        for (Point point : points) {
+            lines.append(point.lineProtocol(TimeUnit.NANOSECONDS)).append('\n');
+        }
+        append(database, retentionPolicy, lines, points.size());
+    }
+
+    /**
+     * 写入encoder中的所有点, 见 {@link LineProtocolEncoder}
+     */
+    public void writeRaw(String database, String retentionPolicy, LineProtocolEncoder encoder) {
+        int points = encoder.getLineCount();
+        if (points > 0) {
+            append(database, retentionPolicy, encoder.toString(), points);
+        }
+    }
+
+    /**
+     * 使用当前线程复用的encoder生成点并写入
+     */
+    public void writeRaw(String database, String retentionPolicy, Consumer<LineProtocolEncoder> lines) {
+        LineProtocolEncoder encoder = LineProtocolEncoder.forCurrentThread();
+        try {
+            lines.accept(encoder);
+            writeRaw(database, retentionPolicy, encoder);
+        } finally {
+            encoder.release();
+        }
+    }
+
+    /**
+     * @throws InfluxDBXException 日志已满(超过 maxSpoolBytes)或者写入文件失败
+     */
+    private void append(String database, String retentionPolicy, CharSequence lines, int points) {
+        boolean appended;
+        try {
+            appended = spool.append(database, retentionPolicy, lines, points);
+        } catch (IOException e) {
+            throw new InfluxDBXException("Failed to append to write spool", e);
+        }
+        if (!appended) {
+            throw new InfluxDBXException("Write spool is full (" + config.getMaxSpoolBytes() + " bytes)");
+        }
+        spooledPoints.mark(points);
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    private void replayLoop() {
+        long backoff = config.getRetryBackoffMillis();
+        while (running) {
+            WriteSpool.Batch batch;
+            try {
+                batch = spool.peek(config.getMaxBatchPoints());
+            } catch (IOException | RuntimeException e) {
+                //重放线程不能退出, 否则写入会一直追加到日志满为止
+                replayFailures.increment();
+                log.error("Failed to read write spool, retry in {} ms", backoff, e);
+                await(backoff);
+                backoff = Math.min(backoff * 2, config.getMaxRetryBackoffMillis());
+                continue;
+            }
+            if (batch == null) {
+                await(config.getPollTimeoutMillis());
+                continue;
+            }
+
+            try {
+                replay(batch);
+                spool.commit(batch);
+                replayedPoints.mark(batch.getLineCount());
+                backoff = config.getRetryBackoffMillis();
+            } catch (InfluxDBException e) {
+                if (e.isRetryWorth()) {
+                    backoff = retryLater(batch, e, backoff);
+                } else {
+                    log.error("InfluxDB rejected {} spooled points for {}.{}, dropped", batch.getLineCount(),
+                            batch.getDatabase(), batch.getRetentionPolicy(), e);
+                    spool.commit(batch);
+                    droppedPoints.add(batch.getLineCount());
+                }
+            } catch (RuntimeException e) {
+                backoff = retryLater(batch, e, backoff);
+            }
+        }
+    }
+
+    private void replay(WriteSpool.Batch batch) {
+        String lines = batch.getLines();
+        template.executeWrite(new InfluxDBClientCallbackWithNoResult() {
+            @Override
+            public void executeWithNoResult(InfluxDB client) {
+                long start = System.nanoTime();
+                boolean success = false;
+                try {
+                    client.write(batch.getDatabase(), batch.getRetentionPolicy(), InfluxDB.ConsistencyLevel.ONE,
+                            TimeUnit.NANOSECONDS, lines);
+                    success = true;
+                } finally {
+                    template.getMetrics().recordWrite(batch.getDatabase(), batch.getLineCount(), System.nanoTime() - start, success);
+                }
+            }
+        });
+    }
+
+    private long retryLater(WriteSpool.Batch batch, RuntimeException e, long backoff) {
+        replayFailures.increment();
+        log.warn("Replay of {} spooled points to {}.{} failed, retry in {} ms", batch.getLineCount(),
+                batch.getDatabase(), batch.getRetentionPolicy(), backoff, e);
+        //加上随机抖动, 避免多个实例同时重试
+        await(backoff + ThreadLocalRandom.current().nextLong(backoff / 4 + 1));
+        return Math.min(backoff * 2, config.getMaxRetryBackoffMillis());
+    }
+
+    private void await(long millis) {
+        synchronized (signal) {
+            if (!running) {
+                return;
+            }
+            try {
+                signal.wait(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * @return 等待重放的字节数
+     */
+    public long getPendingBytes() {
+        return spool.pendingBytes();
+    }
+
+    public int getSegmentCount() {
+        return spool.segmentCount();
+    }
+
+    public RateMeter getSpooledPoints() {
+        return spooledPoints;
+    }
+
+    public RateMeter getReplayedPoints() {
+        return replayedPoints;
+    }
+
+    public long getReplayFailures() {
+        return replayFailures.sum();
+    }
+
+    /**
+     * @return 被服务端拒绝而丢弃的点数
+     */
+    public long getDroppedPoints() {
+        return droppedPoints.sum();
+    }
+
+    /**
+     * 停止重放并关闭日志文件, 未重放的数据保留到下次打开
+     */
+    @Override
+    public void close() {
+        running = false;
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        try {
+            replayThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            spool.close();
+        } catch (IOException e) {
+            log.warn("Failed to close write spool", e);
+        }
+    }
+}
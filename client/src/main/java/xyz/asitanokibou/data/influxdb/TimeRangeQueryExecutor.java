@@ -0,0 +1,233 @@
+package xyz.asitanokibou.data.influxdb;
+
+import lombok.Value;
+import org.influxdb.dto.BoundParameterQuery;
+import org.influxdb.dto.QueryResult;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * 按时间范围拆分后的子查询: 最多 parallelism 个子查询同时执行, 结果按子范围的顺序返回.
+ * 子查询各自从连接池借用client, 所以 parallelism 不应超过连接池的大小
+ * @author aimysaber@gmail.com
+ */
+class TimeRangeQueryExecutor {
+
+    private final Function<BoundParameterQuery, QueryResult> query;
+    private final Executor executor;
+    private final int parallelism;
+
+    TimeRangeQueryExecutor(Function<BoundParameterQuery, QueryResult> query, Executor executor, int parallelism) {
+        this.query = query;
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @return 按顺序返回每个子查询的结果, 前面的结果被取走后才会提交新的子查询
+     */
+    Iterator<QueryResult> iterator(List<BoundParameterQuery> queries) {
+        return new OrderedIterator(queries);
+    }
+
+    /**
+     * 执行所有子查询, 把同一条语句中 measurement 和 tags 相同的series按时间顺序合并;
+     * 各子范围的列不同时(如 SELECT * 跨越字段不同的shard group)按列名合并, 没有的列为null
+     */
+    QueryResult executeAndMerge(List<BoundParameterQuery> queries) {
+        List<Map<SeriesKey, QueryResult.Series>> statements = new ArrayList<>();
+        Iterator<QueryResult> iterator = iterator(queries);
+        while (iterator.hasNext()) {
+            List<QueryResult.Result> results = iterator.next().getResults();
+            if (results == null) {
+                continue;
+            }
+            for (int i = 0; i < results.size(); i++) {
+                if (statements.size() <= i) {
+                    statements.add(new LinkedHashMap<>());
+                }
+                List<QueryResult.Series> seriesList = results.get(i).getSeries();
+                if (seriesList == null) {
+                    continue;
+                }
+                Map<SeriesKey, QueryResult.Series> merged = statements.get(i);
+                for (QueryResult.Series series : seriesList) {
+                    SeriesKey key = new SeriesKey(series.getName(), series.getTags() == null ? Collections.emptyMap() : series.getTags());
+                    QueryResult.Series target = merged.get(key);
+                    if (target == null) {
+                        target = copyOf(series);
+                        merged.put(key, target);
+                    } else if (series.getValues() != null) {
+                        appendValues(target, series);
+                    }
+                }
+            }
+        }
+
+        List<QueryResult.Result> results = new ArrayList<>(statements.size());
+        for (Map<SeriesKey, QueryResult.Series> merged : statements) {
+            QueryResult.Result result = new QueryResult.Result();
+            result.setSeries(new ArrayList<>(merged.values()));
+            results.add(result);
+        }
+        QueryResult queryResult = new QueryResult();
+        queryResult.setResults(results);
+        return queryResult;
+    }
+
+    private static void appendValues(QueryResult.Series target, QueryResult.Series series) {
+        List<String> columns = series.getColumns();
+        List<String> targetColumns = target.getColumns();
+        if (columns == null || columns.equals(targetColumns)) {
+            target.getValues().addAll(series.getValues());
+            return;
+        }
+        int[] positions = new int[columns.size()];
+        int previousSize = targetColumns.size();
+        for (int i = 0; i < columns.size(); i++) {
+            int position = targetColumns.indexOf(columns.get(i));
+            if (position < 0) {
+                position = targetColumns.size();
+                targetColumns.add(columns.get(i));
+            }
+            positions[i] = position;
+        }
+        if (targetColumns.size() > previousSize) {
+            //新增的列在之前的行中为null
+            List<List<Object>> padded = new ArrayList<>(target.getValues().size() + series.getValues().size());
+            for (List<Object> row : target.getValues()) {
+                List<Object> copy = new ArrayList<>(targetColumns.size());
+                copy.addAll(row);
+                copy.addAll(Collections.nCopies(targetColumns.size() - row.size(), null));
+                padded.add(copy);
+            }
+            target.setValues(padded);
+        }
+        for (List<Object> row : series.getValues()) {
+            Object[] values = new Object[targetColumns.size()];
+            for (int i = 0; i < positions.length && i < row.size(); i++) {
+                values[positions[i]] = row.get(i);
+            }
+            target.getValues().add(Arrays.asList(values));
+        }
+    }
+
+    private static QueryResult.Series copyOf(QueryResult.Series series) {
+        QueryResult.Series copy = new QueryResult.Series();
+        copy.setName(series.getName());
+        copy.setTags(series.getTags());
+        copy.setColumns(series.getColumns() == null ? new ArrayList<>() : new ArrayList<>(series.getColumns()));
+        copy.setValues(series.getValues() == null ? new ArrayList<>() : new ArrayList<>(series.getValues()));
+        return copy;
+    }
+
+    private static void checkError(QueryResult queryResult) {
+        if (queryResult.hasError()) {
+            throw new InfluxDBXException(queryResult.getError());
+        }
+        if (queryResult.getResults() != null) {
+            for (QueryResult.Result result : queryResult.getResults()) {
+                if (result.hasError()) {
+                    throw new InfluxDBXException(result.getError());
+                }
+            }
+        }
+    }
+
+    private final class OrderedIterator implements Iterator<QueryResult> {
+
+        private final List<BoundParameterQuery> queries;
+        private final Deque<CompletableFuture<QueryResult>> running = new ArrayDeque<>();
+        //任一子查询失败时完成, 不必等待前面的子查询结束
+        private final CompletableFuture<QueryResult> failure = new CompletableFuture<>();
+        private int submitted;
+        private volatile boolean failed;
+
+        private OrderedIterator(List<BoundParameterQuery> queries) {
+            this.queries = queries;
+            fill();
+        }
+
+        private void fill() {
+            while (!failed && running.size() < parallelism && submitted < queries.size()) {
+                BoundParameterQuery subQuery = queries.get(submitted++);
+                CompletableFuture<QueryResult> future;
+                try {
+                    future = CompletableFuture.supplyAsync(() -> run(subQuery), executor);
+                } catch (RejectedExecutionException e) {
+                    //线程池满了由当前线程执行
+                    future = new CompletableFuture<>();
+                    try {
+                        future.complete(run(subQuery));
+                    } catch (RuntimeException ex) {
+                        future.completeExceptionally(ex);
+                    }
+                }
+                future.whenComplete((result, e) -> {
+                    if (e != null) {
+                        failed = true;
+                        failure.completeExceptionally(e);
+                    }
+                });
+                running.add(future);
+            }
+        }
+
+        private QueryResult run(BoundParameterQuery subQuery) {
+            if (failed) {
+                //前面的子查询已经失败, 结果不会再被使用
+                return new QueryResult();
+            }
+            QueryResult queryResult = query.apply(subQuery);
+            checkError(queryResult);
+            return queryResult;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !running.isEmpty();
+        }
+
+        @Override
+        public QueryResult next() {
+            CompletableFuture<QueryResult> future = running.poll();
+            if (future == null) {
+                throw new NoSuchElementException();
+            }
+            QueryResult queryResult;
+            try {
+                CompletableFuture.anyOf(future, failure).join();
+                queryResult = future.join();
+            } catch (CompletionException e) {
+                failed = true;
+                //还没开始的子查询不再执行
+                running.forEach(f -> f.cancel(false));
+                running.clear();
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+            fill();
+            return queryResult;
+        }
+    }
+
+    @Value
+    private static class SeriesKey {
+        String name;
+        Map<String, String> tags;
+    }
+}
@@ -0,0 +1,107 @@
+package xyz.asitanokibou.data.influxdb;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 按时间范围拆分查询: 把 [start, end) 拆分为多个子范围, 每个子范围一个查询, 并行执行后按时间顺序合并.
+ * 查询语句中需要用绑定参数表示时间范围, 且为左闭右开(避免边界上的点重复), 如:
+ * <pre>
+ *     SELECT mean(usage) FROM cpu WHERE time >= $start AND time &lt; $end GROUP BY time(10s), host
+ * </pre>
+ * 有 GROUP BY time() 时应把 alignment 设置为分组的间隔, 使分组不会被拆分到两个子查询中.
+ * 查询带有 tz() 时分组按该时区的本地时间对齐, 边界同样按查询的时区(InfluxDBTemplate#getZoneId)对齐;
+ * 夏令时切换当天的分组长度不是间隔的整数倍, 有夏令时的时区按天及以上分组时切换附近的分组仍可能被拆分.
+ * <p>
+ * 子查询的结果按子范围的时间顺序直接拼接, 只有每个点/分组只依赖自身子范围内数据的查询才与不拆分时结果相同
+ * (原始数据查询, 按对齐的 GROUP BY time() 分组的聚合). 以下查询不应拆分:
+ * <ul>
+ *     <li>没有 GROUP BY time() 的聚合(如 count(), mean()): 每个子范围各返回一个值</li>
+ *     <li>LIMIT/SLIMIT/OFFSET: 对每个子查询分别生效</li>
+ *     <li>ORDER BY time DESC: 子范围之间仍按升序拼接</li>
+ * </ul>
+ * @author aimysaber@gmail.com
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TimeRangeSplit {
+
+    private Instant start;
+    private Instant end;
+    //子范围数, 不大于0时按 maxRangePerQuery 计算, 都没有设置时为 parallelism
+    private int partitions;
+    //每个子查询的最大时间范围
+    private Duration maxRangePerQuery;
+    //子范围的边界对齐到该间隔的整数倍(按时区的本地时间), 为null时不对齐
+    private Duration alignment;
+    //同时执行的子查询数(每个占用一个client)
+    @Builder.Default
+    private int parallelism = 4;
+    //查询语句中表示开始/结束时间的绑定参数名
+    @Builder.Default
+    private String startParam = "start";
+    @Builder.Default
+    private String endParam = "end";
+
+    public static TimeRangeSplit of(Instant start, Instant end) {
+        return TimeRangeSplit.builder().start(start).end(end).build();
+    }
+
+    /**
+     * @return 按UTC对齐的子范围边界, 见 {@link #boundaries(ZoneId)}
+     */
+    public List<Instant> boundaries() {
+        return boundaries(ZoneOffset.UTC);
+    }
+
+    /**
+     * @param zoneId 查询使用的时区, alignment 按该时区的本地时间对齐
+     * @return 子范围的边界 [start, b1, b2, ..., end], 相邻的两个为一个子范围
+     */
+    public List<Instant> boundaries(ZoneId zoneId) {
+        Objects.requireNonNull(start, "start");
+        Objects.requireNonNull(end, "end");
+        if (!end.isAfter(start)) {
+            throw new IllegalArgumentException("end must be after start");
+        }
+        long totalMillis = Duration.between(start, end).toMillis();
+        int n = partitions;
+        if (n <= 0 && maxRangePerQuery != null && !maxRangePerQuery.isZero()) {
+            long maxMillis = Math.max(1, maxRangePerQuery.toMillis());
+            n = (int) Math.min(Integer.MAX_VALUE, (totalMillis + maxMillis - 1) / maxMillis);
+        }
+        if (n <= 0) {
+            n = Math.max(1, parallelism);
+        }
+        long alignMillis = alignment == null ? 0 : alignment.toMillis();
+
+        List<Instant> boundaries = new ArrayList<>(n + 1);
+        boundaries.add(start);
+        long startMillis = start.toEpochMilli();
+        for (int i = 1; i < n; i++) {
+            long boundary = startMillis + totalMillis * i / n;
+            if (alignMillis > 0) {
+                long offsetMillis = zoneId.getRules().getOffset(Instant.ofEpochMilli(boundary)).getTotalSeconds() * 1000L;
+                boundary -= Math.floorMod(boundary + offsetMillis, alignMillis);
+            }
+            Instant instant = Instant.ofEpochMilli(boundary);
+            if (instant.isAfter(boundaries.get(boundaries.size() - 1)) && instant.isBefore(end)) {
+                boundaries.add(instant);
+            }
+        }
+        boundaries.add(end);
+        return boundaries;
+    }
+}
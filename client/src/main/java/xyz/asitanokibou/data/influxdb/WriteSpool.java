@@ -0,0 +1,484 @@
+package xyz.asitanokibou.data.influxdb;
+
+import lombok.extern.slf4j.Slf4j;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * 只追加的写入日志: 由固定大小的内存映射(mmap)文件段组成, 写满后切换到新的段; 段中所有记录都已重放后删除.
+ * <p>
+ * 每条记录是一次写入的一批line protocol:
+ * <pre>
+ *     [int 长度][int crc32][byte 状态][short database][short retentionPolicy(-1为null)][int 行数][line protocol(UTF-8)]
+ * </pre>
+ * 长度为0表示段中后面没有记录(新文件全是0). 重放成功后把记录的状态改为已完成, 重启后跳过已完成的记录.
+ * 追加由调用线程执行(互斥), 读取/提交只由一个重放线程执行.
+ * 打开时锁定目录中的锁文件, 同一个目录同时只能被一个spool(包括其他进程)使用
+ * @author aimysaber@gmail.com
+ */
+@Slf4j
+class WriteSpool implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String LOCK_FILE = "spool.lock";
+    private static final int HEADER_BYTES = 9;
+    private static final byte STATE_PENDING = 0;
+    private static final byte STATE_DONE = 1;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long maxSpoolBytes;
+    private final boolean forceOnAppend;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    //按顺序排列的段, 最后一个是当前写入的段
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final CRC32 crc = new CRC32();
+    private long nextSegmentId;
+    //当前写入的段, 为null时下次追加创建新段
+    private Segment writeSegment;
+    private volatile boolean closed;
+
+    WriteSpool(Path directory, int segmentBytes, long maxSpoolBytes, boolean forceOnAppend) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSpoolBytes = maxSpoolBytes;
+        this.forceOnAppend = forceOnAppend;
+        Files.createDirectories(directory);
+        this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            //同一个进程中已经锁定
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new InfluxDBXException("Write spool directory " + directory + " is used by another writer");
+        }
+        this.lock = lock;
+        try {
+            recover();
+        } catch (IOException | RuntimeException e) {
+            closeSegments();
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 恢复已有的段: 全部作为只读段, 新的追加写入新段
+     */
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        Collections.sort(files);
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            nextSegmentId = Math.max(nextSegmentId, id + 1);
+
+            Segment segment = Segment.open(file, (int) Files.size(file));
+            segment.recover();
+            segment.sealed = true;
+            if (segment.readPos >= segment.writePos) {
+                segment.delete();
+            } else {
+                log.info("Recovered spool segment {} with {} pending bytes", file, segment.writePos - segment.readPos);
+                segments.add(segment);
+            }
+        }
+    }
+
+    /**
+     * 追加一批line protocol(多行以换行分隔)
+     * @return spool已满(超过 maxSpoolBytes)时返回false
+     */
+    synchronized boolean append(String database, String retentionPolicy, CharSequence lines, int lineCount) throws IOException {
+        if (closed) {
+            throw new InfluxDBXException("Write spool is closed");
+        }
+        byte[] db = database == null ? new byte[0] : database.getBytes(StandardCharsets.UTF_8);
+        byte[] rp = retentionPolicy == null ? null : retentionPolicy.getBytes(StandardCharsets.UTF_8);
+        int prefixBytes = 2 + db.length + 2 + (rp == null ? 0 : rp.length) + 4;
+
+        for (boolean rotated = false; ; rotated = true) {
+            if (writeSegment == null || rotated) {
+                if (!rotate()) {
+                    return false;
+                }
+            }
+            int recordStart = writeSegment.writePos;
+            //末尾至少保留4个字节的0作为结束标记
+            int limit = segmentBytes - 4;
+            if (recordStart + HEADER_BYTES + prefixBytes > limit) {
+                if (recordStart == 0) {
+                    throw new InfluxDBXException("Spool segment is too small for a record");
+                }
+                continue;
+            }
+
+            ByteBuffer buffer = writeSegment.buffer.duplicate();
+            buffer.limit(limit).position(recordStart + HEADER_BYTES);
+            buffer.putShort((short) db.length).put(db);
+            if (rp == null) {
+                buffer.putShort((short) -1);
+            } else {
+                buffer.putShort((short) rp.length).put(rp);
+            }
+            buffer.putInt(lineCount);
+
+            encoder.reset();
+            CoderResult result = encoder.encode(CharBuffer.wrap(lines), buffer, true);
+            if (!result.isOverflow()) {
+                result = encoder.flush(buffer);
+            }
+            if (result.isOverflow()) {
+                //当前段放不下, 切换到新段(长度还没有写入, 写了一半的数据不会被读取)
+                if (recordStart == 0) {
+                    throw new InfluxDBXException("Batch of " + lines.length() + " chars is larger than a spool segment");
+                }
+                continue;
+            }
+
+            int end = buffer.position();
+            int length = end - recordStart - HEADER_BYTES;
+            ByteBuffer payload = writeSegment.buffer.duplicate();
+            payload.limit(end).position(recordStart + HEADER_BYTES);
+            crc.reset();
+            crc.update(payload);
+            //长度最后写入: 长度非0之前读取方认为记录不存在
+            writeSegment.buffer.put(recordStart + 8, STATE_PENDING);
+            writeSegment.buffer.putInt(recordStart + 4, (int) crc.getValue());
+            writeSegment.buffer.putInt(recordStart, length);
+            if (forceOnAppend) {
+                writeSegment.buffer.force();
+            }
+            writeSegment.writePos = end;
+            return true;
+        }
+    }
+
+    private boolean rotate() throws IOException {
+        synchronized (segments) {
+            if (!segments.isEmpty() && (long) (segments.size() + 1) * segmentBytes > maxSpoolBytes) {
+                return false;
+            }
+        }
+        if (writeSegment != null) {
+            writeSegment.buffer.force();
+            writeSegment.sealed = true;
+        }
+        long id = nextSegmentId++;
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        Segment segment = Segment.open(file, segmentBytes);
+        synchronized (segments) {
+            segments.add(segment);
+        }
+        writeSegment = segment;
+        return true;
+    }
+
+    /**
+     * 从最早的未完成记录开始, 读取 database/retentionPolicy 相同的连续记录(可以跨越已封存的段), 不标记为完成
+     * @param maxLines 一批最多的行数(至少包含一条记录)
+     * @return 没有待重放的记录时返回null
+     */
+    Batch peek(int maxLines) throws IOException {
+        Batch batch = null;
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        Segment segment = firstSegment();
+        while (segment != null) {
+            int pos = batch == null ? segment.readPos : batch.endPosition(segment);
+            //sealed要在writePos之前读取: 段被封存后writePos不再变化
+            boolean sealed = segment.sealed;
+            if (pos >= segment.writePos) {
+                if (!sealed) {
+                    return batch;
+                }
+                if (batch == null) {
+                    //段中的记录都已完成
+                    removeSegment(segment);
+                    segment = firstSegment();
+                } else {
+                    segment = nextSegment(segment);
+                }
+                continue;
+            }
+
+            ByteBuffer buffer = segment.buffer.duplicate();
+            int length = buffer.getInt(pos);
+            buffer.limit(pos + HEADER_BYTES + length).position(pos + HEADER_BYTES);
+            String database = readString(buffer);
+            short rpLength = buffer.getShort();
+            String retentionPolicy = rpLength < 0 ? null : readString(buffer, rpLength);
+            int lineCount = buffer.getInt();
+
+            if (batch != null && (!batch.sameTarget(database, retentionPolicy) || batch.lineCount + lineCount > maxLines)) {
+                return batch;
+            }
+            if (batch == null) {
+                batch = new Batch(database, retentionPolicy);
+            }
+            batch.add(segment, pos, pos + HEADER_BYTES + length, lineCount, decoder.decode(buffer));
+        }
+        return batch;
+    }
+
+    /**
+     * 标记批次中的记录为已完成
+     */
+    void commit(Batch batch) {
+        for (Batch.Range range : batch.ranges) {
+            Segment segment = range.segment;
+            for (int pos = range.from; pos < range.to; pos += HEADER_BYTES + segment.buffer.getInt(pos)) {
+                segment.buffer.put(pos + 8, STATE_DONE);
+            }
+            segment.readPos = range.to;
+            if (forceOnAppend) {
+                segment.buffer.force();
+            }
+        }
+    }
+
+    private Segment firstSegment() {
+        synchronized (segments) {
+            return segments.peekFirst();
+        }
+    }
+
+    private Segment nextSegment(Segment segment) {
+        synchronized (segments) {
+            Iterator<Segment> iterator = segments.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next() == segment) {
+                    return iterator.hasNext() ? iterator.next() : null;
+                }
+            }
+            return null;
+        }
+    }
+
+    private void removeSegment(Segment segment) throws IOException {
+        synchronized (segments) {
+            segments.remove(segment);
+        }
+        segment.delete();
+    }
+
+    /**
+     * @return 待重放的字节数
+     */
+    long pendingBytes() {
+        long pending = 0;
+        synchronized (segments) {
+            for (Segment segment : segments) {
+                pending += segment.writePos - segment.readPos;
+            }
+        }
+        return pending;
+    }
+
+    int segmentCount() {
+        synchronized (segments) {
+            return segments.size();
+        }
+    }
+
+    /**
+     * 刷盘并关闭文件, 释放目录的锁, 未重放的记录保留在磁盘上, 下次打开时继续重放
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            closeSegments();
+        } finally {
+            lock.release();
+            lockChannel.close();
+        }
+    }
+
+    private void closeSegments() throws IOException {
+        synchronized (segments) {
+            for (Segment segment : segments) {
+                segment.buffer.force();
+                segment.channel.close();
+            }
+            segments.clear();
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        return readString(buffer, buffer.getShort());
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Segment {
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private volatile int writePos;
+        private volatile int readPos;
+        private volatile boolean sealed;
+
+        private Segment(Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment open(Path file, int size) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+
+        /**
+         * 扫描记录, 遇到长度为0或者校验失败(写入时崩溃)的记录时结束
+         */
+        void recover() {
+            CRC32 crc = new CRC32();
+            int capacity = buffer.capacity();
+            int pos = 0;
+            int firstPending = -1;
+            while (pos + HEADER_BYTES <= capacity) {
+                int length = buffer.getInt(pos);
+                if (length <= 0 || pos + HEADER_BYTES + length > capacity) {
+                    break;
+                }
+                ByteBuffer payload = buffer.duplicate();
+                payload.limit(pos + HEADER_BYTES + length).position(pos + HEADER_BYTES);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != buffer.getInt(pos + 4)) {
+                    log.warn("Spool segment {} is truncated at {} (checksum mismatch)", file, pos);
+                    break;
+                }
+                if (firstPending < 0 && buffer.get(pos + 8) != STATE_DONE) {
+                    firstPending = pos;
+                }
+                pos += HEADER_BYTES + length;
+            }
+            writePos = pos;
+            readPos = firstPending < 0 ? pos : firstPending;
+        }
+
+        void delete() throws IOException {
+            channel.close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * 一批待重放的记录, 可能跨多个段
+     */
+    static final class Batch {
+        private final String database;
+        private final String retentionPolicy;
+        private final StringBuilder lines = new StringBuilder();
+        private final List<Range> ranges = new ArrayList<>(2);
+        private int lineCount;
+
+        private Batch(String database, String retentionPolicy) {
+            this.database = database;
+            this.retentionPolicy = retentionPolicy;
+        }
+
+        private boolean sameTarget(String database, String retentionPolicy) {
+            return this.database.equals(database) && Objects.equals(this.retentionPolicy, retentionPolicy);
+        }
+
+        private int endPosition(Segment segment) {
+            Range last = ranges.get(ranges.size() - 1);
+            return last.segment == segment ? last.to : segment.readPos;
+        }
+
+        private void add(Segment segment, int from, int to, int count, CharSequence recordLines) {
+            Range last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last.segment == segment) {
+                last.to = to;
+            } else {
+                ranges.add(new Range(segment, from, to));
+            }
+            if (lines.length() > 0 && lines.charAt(lines.length() - 1) != '\n') {
+                lines.append('\n');
+            }
+            lines.append(recordLines);
+            lineCount += count;
+        }
+
+        String getDatabase() {
+            return database;
+        }
+
+        String getRetentionPolicy() {
+            return retentionPolicy;
+        }
+
+        String getLines() {
+            return lines.toString();
+        }
+
+        int getLineCount() {
+            return lineCount;
+        }
+
+        int getBytes() {
+            int bytes = 0;
+            for (Range range : ranges) {
+                bytes += range.to - range.from;
+            }
+            return bytes;
+        }
+
+        private static final class Range {
+            private final Segment segment;
+            private final int from;
+            private int to;
+
+            private Range(Segment segment, int from, int to) {
+                this.segment = segment;
+                this.from = from;
+                this.to = to;
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package xyz.asitanokibou.data.influxdb.cache;
+
+import lombok.Value;
+import xyz.asitanokibou.data.influxdb.pojo.GroupByResult;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+/**
+ * GROUP BY time() 查询的增量缓存: 按series缓存已经结束的分组(bucket), 滚动窗口的查询只需要查询缓存之后的部分(未结束的分组),
+ * 再与缓存的分组拼接返回. 窗口向前移动时淘汰窗口之前的分组.
+ * <p>
+ * 条目数超过maxEntries时按LRU淘汰; 同一个key的查询串行执行(每个条目一个ReentrantLock, 等待查询时不固定虚拟线程的载体线程).
+ * 返回的 GroupByResult 是共享的, 调用方不应修改
+ * @author aimysaber@gmail.com
+ */
+public class GroupByBucketCache {
+
+    private final int maxEntries;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<QueryCacheKey, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    //从缓存返回的分组数
+    private final LongAdder cachedBucketCount = new LongAdder();
+    //从influxdb查询的分组数
+    private final LongAdder fetchedBucketCount = new LongAdder();
+    private final LongAdder fullLoadCount = new LongAdder();
+    private final LongAdder incrementalLoadCount = new LongAdder();
+
+    public GroupByBucketCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param key 查询的key(时间范围参数除外)
+     * @param start 窗口开始(已对齐到分组间隔)
+     * @param end 窗口结束
+     * @param completeEnd 在此之前开始的分组都已经结束, 可以缓存(已对齐到分组间隔)
+     * @param loader 查询 [from, to) 的分组, 结果中每个series内按时间排序
+     * @return 窗口内的分组, 按series分组, series内按时间排序
+     */
+    public List<GroupByResult> get(QueryCacheKey key, long start, long end, long completeEnd,
+                                   BiFunction<Instant, Instant, List<GroupByResult>> loader) {
+        Entry entry = entry(key);
+        entry.lock.lock();
+        try {
+            long fetchFrom;
+            if (entry.from <= start && entry.until > start) {
+                fetchFrom = Math.min(entry.until, end);
+                incrementalLoadCount.increment();
+            } else {
+                entry.series.clear();
+                fetchFrom = start;
+                fullLoadCount.increment();
+            }
+
+            List<GroupByResult> fresh = fetchFrom < end
+                    ? loader.apply(Instant.ofEpochMilli(fetchFrom), Instant.ofEpochMilli(end))
+                    : Collections.emptyList();
+            fetchedBucketCount.add(fresh.size());
+
+            //窗口之前的分组不再需要
+            for (Iterator<TreeMap<Long, GroupByResult>> iterator = entry.series.values().iterator(); iterator.hasNext(); ) {
+                TreeMap<Long, GroupByResult> buckets = iterator.next();
+                buckets.headMap(start).clear();
+                if (buckets.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+
+            Map<SeriesKey, List<GroupByResult>> stitched = new LinkedHashMap<>();
+            for (Map.Entry<SeriesKey, TreeMap<Long, GroupByResult>> series : entry.series.entrySet()) {
+                List<GroupByResult> cached = new ArrayList<>(series.getValue().subMap(start, fetchFrom).values());
+                cachedBucketCount.add(cached.size());
+                stitched.put(series.getKey(), cached);
+            }
+            for (GroupByResult bucket : fresh) {
+                SeriesKey seriesKey = new SeriesKey(bucket.getName(), bucket.getTags());
+                stitched.computeIfAbsent(seriesKey, k -> new ArrayList<>()).add(bucket);
+                long time = bucket.getTime().toEpochMilli();
+                if (time < completeEnd) {
+                    entry.series.computeIfAbsent(seriesKey, k -> new TreeMap<>()).put(time, bucket);
+                }
+            }
+            entry.from = start;
+            entry.until = Math.max(fetchFrom, Math.min(completeEnd, end));
+
+            List<GroupByResult> results = new ArrayList<>();
+            stitched.values().forEach(results::addAll);
+            return results;
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    private Entry entry(QueryCacheKey key) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(key, entry);
+                if (entries.size() > maxEntries) {
+                    Iterator<QueryCacheKey> iterator = entries.keySet().iterator();
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCachedBucketCount() {
+        return cachedBucketCount.sum();
+    }
+
+    public long getFetchedBucketCount() {
+        return fetchedBucketCount.sum();
+    }
+
+    public long getFullLoadCount() {
+        return fullLoadCount.sum();
+    }
+
+    public long getIncrementalLoadCount() {
+        return incrementalLoadCount.sum();
+    }
+
+    private static final class Entry {
+        private final ReentrantLock lock = new ReentrantLock();
+        //缓存覆盖的范围 [from, until), 其中的分组都已结束
+        private long from = Long.MAX_VALUE;
+        private long until = Long.MIN_VALUE;
+        private final Map<SeriesKey, TreeMap<Long, GroupByResult>> series = new LinkedHashMap<>();
+    }
+
+    @Value
+    private static class SeriesKey {
+        String name;
+        Map<String, String> tags;
+    }
+}
@@ -0,0 +1,32 @@
+package xyz.asitanokibou.data.influxdb.cache;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 查询缓存/合并的key - 由数据库, 最终的查询语句(已替换measurement和补充tz), 绑定参数 以及结果类型组成
+ * @author aimysaber@gmail.com
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public final class QueryCacheKey {
+
+    private final String database;
+    private final String command;
+    private final Map<String, Object> params;
+    //同一个查询可以映射成不同的结果类型(如 pojo/map/GroupByResult), 需要区分
+    private final Object resultType;
+
+    public QueryCacheKey(String database, String command, Map<String, Object> params, Object resultType) {
+        this.database = database;
+        this.command = command;
+        this.params = params == null || params.isEmpty() ? Collections.emptyMap() : new HashMap<>(params);
+        this.resultType = resultType;
+    }
+}
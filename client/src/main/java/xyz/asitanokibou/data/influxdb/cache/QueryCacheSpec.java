@@ -0,0 +1,32 @@
+package xyz.asitanokibou.data.influxdb.cache;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * 单次查询的缓存设置
+ * @author aimysaber@gmail.com
+ */
+public final class QueryCacheSpec {
+
+    /** 不使用缓存(即使有匹配的缓存规则) */
+    public static final QueryCacheSpec NONE = new QueryCacheSpec(Duration.ZERO);
+
+    private final Duration ttl;
+
+    private QueryCacheSpec(Duration ttl) {
+        this.ttl = Objects.requireNonNull(ttl);
+    }
+
+    public static QueryCacheSpec ttl(Duration ttl) {
+        return new QueryCacheSpec(ttl);
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public boolean isEnabled() {
+        return !ttl.isZero() && !ttl.isNegative();
+    }
+}
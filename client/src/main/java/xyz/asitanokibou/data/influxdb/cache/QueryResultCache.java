@@ -0,0 +1,227 @@
+package xyz.asitanokibou.data.influxdb.cache;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * 查询结果缓存 - 以 {@link QueryCacheKey} 为key缓存映射后的结果列表.
+ * <ul>
+ *     <li>每个条目有各自的TTL, 由调用时的 {@link QueryCacheSpec} 或匹配原始查询语句的规则({@link #addRule(String, Duration)})决定, 都没有时不缓存</li>
+ *     <li>按结果行数计算权重, 总权重超过maxWeight时按LRU淘汰</li>
+ *     <li>相同key的并发未命中只查询一次({@link SingleFlight})</li>
+ * </ul>
+ * 命中时返回缓存列表的拷贝, 但列表中的元素是共享的, 调用方不应修改
+ * @author aimysaber@gmail.com
+ */
+public class QueryResultCache {
+
+    private static final int MAX_RESOLVED_QUERIES = 1024;
+
+    private final long maxWeight;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<QueryCacheKey, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalWeight;
+
+    private final List<Rule> rules = new CopyOnWriteArrayList<>();
+    //原始查询语句 -> 匹配规则的ttl, 避免每次查询都做正则匹配
+    private final ConcurrentMap<String, Duration> resolvedRules = new ConcurrentHashMap<>();
+
+    private final SingleFlight<QueryCacheKey, List<?>> singleFlight = new SingleFlight<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+
+    /**
+     * @param maxWeight 缓存的最大总行数
+     */
+    public QueryResultCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * 原始查询语句(替换#measurement#前)匹配queryPattern(正则, find)时缓存ttl时间
+     */
+    public void addRule(String queryPattern, Duration ttl) {
+        rules.add(new Rule(Pattern.compile(queryPattern), ttl));
+        resolvedRules.clear();
+    }
+
+    /**
+     * @return 本次查询的缓存时间: 调用时指定的优先, 其次是匹配的规则; 不缓存时返回 {@link Duration#ZERO}
+     */
+    public Duration resolveTtl(String rawQuery, QueryCacheSpec spec) {
+        if (spec != null) {
+            return spec.isEnabled() ? spec.getTtl() : Duration.ZERO;
+        }
+        if (rules.isEmpty()) {
+            return Duration.ZERO;
+        }
+        Duration ttl = resolvedRules.get(rawQuery);
+        if (ttl == null) {
+            ttl = Duration.ZERO;
+            for (Rule rule : rules) {
+                if (rule.pattern.matcher(rawQuery).find()) {
+                    ttl = rule.ttl;
+                    break;
+                }
+            }
+            if (resolvedRules.size() >= MAX_RESOLVED_QUERIES) {
+                resolvedRules.clear();
+            }
+            resolvedRules.put(rawQuery, ttl);
+        }
+        return ttl;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> List<T> get(QueryCacheKey key, Duration ttl, Supplier<List<T>> loader) {
+        List<T> cached = (List<T>) getIfPresent(key);
+        if (cached != null) {
+            hitCount.increment();
+            return new ArrayList<>(cached);
+        }
+
+        missCount.increment();
+        List<T> loaded = (List<T>) singleFlight.execute(key, () -> {
+            List<T> value = loader.get();
+            put(key, value, ttl);
+            return value;
+        });
+        return new ArrayList<>(loaded);
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            entries.clear();
+            totalWeight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public long getExpirationCount() {
+        return expirationCount.sum();
+    }
+
+    /**
+     * @return 未命中时与其他调用合并(没有发出查询)的次数
+     */
+    public long getCoalescedCount() {
+        return singleFlight.getSharedCount();
+    }
+
+    public long getWeight() {
+        lock.lock();
+        try {
+            return totalWeight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<?> getIfPresent(QueryCacheKey key) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expireAtNanos - System.nanoTime() <= 0) {
+                entries.remove(key);
+                totalWeight -= entry.weight;
+                expirationCount.increment();
+                return null;
+            }
+            return entry.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void put(QueryCacheKey key, List<?> value, Duration ttl) {
+        long weight = Math.max(1, value.size());
+        if (weight > maxWeight || ttl.isZero() || ttl.isNegative()) {
+            return;
+        }
+        Entry entry = new Entry(value, weight, System.nanoTime() + ttl.toNanos());
+
+        lock.lock();
+        try {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                totalWeight -= previous.weight;
+            }
+            totalWeight += weight;
+
+            Iterator<Map.Entry<QueryCacheKey, Entry>> iterator = entries.entrySet().iterator();
+            while (totalWeight > maxWeight && iterator.hasNext()) {
+                Entry eldest = iterator.next().getValue();
+                iterator.remove();
+                totalWeight -= eldest.weight;
+                evictionCount.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Entry {
+        private final List<?> value;
+        private final long weight;
+        private final long expireAtNanos;
+
+        private Entry(List<?> value, long weight, long expireAtNanos) {
+            this.value = value;
+            this.weight = weight;
+            this.expireAtNanos = expireAtNanos;
+        }
+    }
+
+    private static final class Rule {
+        private final Pattern pattern;
+        private final Duration ttl;
+
+        private Rule(Pattern pattern, Duration ttl) {
+            this.pattern = pattern;
+            this.ttl = ttl;
+        }
+    }
+}
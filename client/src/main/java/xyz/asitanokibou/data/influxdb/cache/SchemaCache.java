@@ -0,0 +1,291 @@
+package xyz.asitanokibou.data.influxdb.cache;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import xyz.asitanokibou.data.influxdb.Utils;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * schema元数据(measurements, tag keys, tag values)缓存, 见 SchemaOperation#setSchemaCache.
+ * <ul>
+ *     <li>每个条目按类型有各自的TTL(默认为ttl, 可用 {@link #setTtl(Kind, Duration)} 单独设置, 如tag values)</li>
+ *     <li>过期后maxStale时间内仍返回旧值, 同时在后台刷新(stale-while-revalidate); 超过maxStale或没有缓存时同步查询,
+ *     相同key的并发查询只执行一次</li>
+ *     <li>条目数超过maxEntries时按LRU淘汰</li>
+ * </ul>
+ * 返回的结果是共享的, 调用方不应修改
+ * @author aimysaber@gmail.com
+ */
+@Slf4j
+public class SchemaCache implements AutoCloseable {
+
+    public enum Kind {
+        MEASUREMENTS, TAG_KEYS, TAG_VALUES
+    }
+
+    private final int maxEntries;
+    private final Duration maxStale;
+    private final Map<Kind, Duration> ttls = new EnumMap<>(Kind.class);
+    private volatile Executor refreshExecutor;
+    //内部创建的刷新线程池, close时关闭; 通过setRefreshExecutor设置的线程池由调用方关闭
+    private ThreadPoolExecutor defaultRefreshExecutor;
+    private boolean closed;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final SingleFlight<Key, Object> singleFlight = new SingleFlight<>();
+    //每次invalidate加1, 查询期间发生过invalidate时不缓存查询结果(可能是删除前的)
+    private long generation;
+
+    private final LongAdder hitCount = new LongAdder();
+    //返回旧值并在后台刷新的次数
+    private final LongAdder staleHitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder refreshFailureCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param maxEntries 最大条目数
+     * @param ttl 条目的有效时间
+     * @param maxStale 过期后仍可返回旧值(同时后台刷新)的时间
+     */
+    public SchemaCache(int maxEntries, Duration ttl, Duration maxStale) {
+        this.maxEntries = maxEntries;
+        this.maxStale = maxStale;
+        for (Kind kind : Kind.values()) {
+            ttls.put(kind, ttl);
+        }
+    }
+
+    public synchronized void setTtl(Kind kind, Duration ttl) {
+        ttls.put(kind, ttl);
+    }
+
+    /**
+     * @param refreshExecutor 后台刷新的线程池, 不设置时使用内部的daemon线程池
+     */
+    public void setRefreshExecutor(Executor refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * @param database 数据库, 调用方应先把null转换为实际的默认数据库, 否则与 {@link #invalidate} 的key不一致
+     * @param measurement 为null或空时为整个数据库
+     * @param tagKey 只有 {@link Kind#TAG_VALUES} 使用
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Kind kind, String database, String measurement, String tagKey, Supplier<T> loader) {
+        Key key = new Key(kind, database, normalize(measurement), kind == Kind.TAG_VALUES ? tagKey : null);
+        long now = System.nanoTime();
+        Entry entry = getIfPresent(key, now);
+        if (entry != null) {
+            if (now - entry.expireAtNanos < 0) {
+                hitCount.increment();
+            } else {
+                staleHitCount.increment();
+                refresh(key, entry, loader);
+            }
+            return (T) entry.value;
+        }
+
+        missCount.increment();
+        return (T) singleFlight.execute(key, () -> load(key, loader));
+    }
+
+    private Object load(Key key, Supplier<?> loader) {
+        long loadGeneration = generation();
+        Object value = Objects.requireNonNull(loader.get());
+        put(key, new Entry(value, System.nanoTime() + ttl(key.kind).toNanos()), loadGeneration);
+        return value;
+    }
+
+    private void refresh(Key key, Entry entry, Supplier<?> loader) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            getRefreshExecutor().execute(() -> {
+                try {
+                    singleFlight.execute(key, () -> load(key, loader));
+                } catch (RuntimeException e) {
+                    refreshFailureCount.increment();
+                    log.warn("Failed to refresh schema cache entry {}", key, e);
+                } finally {
+                    entry.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    private Executor getRefreshExecutor() {
+        Executor executor = refreshExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                if (closed) {
+                    throw new RejectedExecutionException("Schema cache is closed");
+                }
+                if (refreshExecutor == null) {
+                    //刷新只是为了提前更新, 线程池满时放弃本次刷新(下次访问时再触发)
+                    defaultRefreshExecutor = new ThreadPoolExecutor(0, 4, 60, TimeUnit.SECONDS,
+                            new SynchronousQueue<>(), Utils.namedDaemonThreadFactory("influxdb-schema-refresh"));
+                    refreshExecutor = defaultRefreshExecutor;
+                }
+                executor = refreshExecutor;
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 关闭内部的刷新线程池, 之后不再后台刷新, 过期的条目在超过maxStale后同步查询
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (defaultRefreshExecutor != null) {
+            defaultRefreshExecutor.shutdown();
+        }
+    }
+
+    private synchronized Duration ttl(Kind kind) {
+        return ttls.get(kind);
+    }
+
+    /**
+     * 删除数据库的measurement列表, 以及measurement(和整个数据库)的tag keys/tag values
+     */
+    public void invalidate(String database, String measurement) {
+        String normalized = normalize(measurement);
+        lock.lock();
+        try {
+            generation++;
+            entries.keySet().removeIf(key -> Objects.equals(key.database, database)
+                    && (key.kind == Kind.MEASUREMENTS || key.measurement == null || key.measurement.equals(normalized)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            generation++;
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getStaleHitCount() {
+        return staleHitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getRefreshFailureCount() {
+        return refreshFailureCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String normalize(String measurement) {
+        return measurement == null || measurement.isEmpty() ? null : measurement;
+    }
+
+    private Entry getIfPresent(Key key, long now) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (now - entry.expireAtNanos - maxStale.toNanos() >= 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long generation() {
+        lock.lock();
+        try {
+            return generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void put(Key key, Entry entry, long loadGeneration) {
+        lock.lock();
+        try {
+            if (loadGeneration != generation) {
+                return;
+            }
+            entries.put(key, entry);
+            Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                evictionCount.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Value
+    private static class Key {
+        Kind kind;
+        String database;
+        String measurement;
+        String tagKey;
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long expireAtNanos;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(Object value, long expireAtNanos) {
+            this.value = value;
+            this.expireAtNanos = expireAtNanos;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package xyz.asitanokibou.data.influxdb.columnar;
+
+import java.util.Arrays;
+
+/**
+ * 列存结果中的一列(不含time列), 值存在基本类型数组中, null 用位图记录(没有null时不分配位图).
+ * 数组在结果构建完成后截断为实际行数, 可以直接遍历 {@link DoubleColumn#getValues()} 等数组
+ * @author aimysaber@gmail.com
+ */
+public abstract class Column {
+
+    private final String name;
+    int size;
+    //第n位为1表示第n行为null
+    private long[] nulls;
+
+    Column(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isNull(int row) {
+        return nulls != null && (row >>> 6) < nulls.length && (nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+    public boolean hasNulls() {
+        return nulls != null;
+    }
+
+    /**
+     * @return 该列值的类型: double.class, long.class 或者 Object.class
+     */
+    public abstract Class<?> getType();
+
+    /**
+     * @return 装箱后的值, null行返回null
+     */
+    public abstract Object get(int row);
+
+    /**
+     * @return 数值, null行返回 NaN
+     */
+    public double getDouble(int row) {
+        Object value = get(row);
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
+    /**
+     * @return 数值, null行返回0, 需要配合 {@link #isNull(int)} 判断
+     */
+    public long getLong(int row) {
+        Object value = get(row);
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    abstract boolean accepts(Object value);
+
+    /**
+     * 追加一个非null值, 调用前需要保证 {@link #accepts(Object)}
+     */
+    abstract void addValue(Object value);
+
+    abstract void ensureCapacity(int capacity);
+
+    abstract void trim();
+
+    final void add(Object value) {
+        if (value == null) {
+            addNull();
+        } else {
+            addValue(value);
+        }
+    }
+
+    final void addNull() {
+        ensureCapacity(size + 1);
+        int row = size++;
+        if (nulls == null) {
+            nulls = new long[(row >>> 6) + 1];
+        } else if ((row >>> 6) >= nulls.length) {
+            nulls = Arrays.copyOf(nulls, Math.max(nulls.length * 2, (row >>> 6) + 1));
+        }
+        nulls[row >>> 6] |= 1L << row;
+    }
+
+    final void trimNulls() {
+        if (nulls != null) {
+            nulls = Arrays.copyOf(nulls, ((size - 1) >>> 6) + 1);
+        }
+    }
+
+    static int grow(int length, int capacity) {
+        return Math.max(capacity, Math.max(16, length + (length >> 1)));
+    }
+
+    /**
+     * 根据第一个非null值选择列的类型
+     */
+    static Column create(String name, Object value, int capacity) {
+        Column column;
+        if (LongColumn.isIntegral(value)) {
+            column = new LongColumn(name);
+        } else if (value instanceof Number) {
+            column = new DoubleColumn(name);
+        } else {
+            column = new ObjectColumn(name);
+        }
+        column.ensureCapacity(capacity);
+        return column;
+    }
+
+    /**
+     * 当前列无法保存value时, 把已有的值复制到能保存value的列中: long -> double -> Object
+     */
+    static Column widen(Column column, Object value) {
+        Column widened;
+        if (column instanceof LongColumn && value instanceof Number) {
+            widened = new DoubleColumn(column.name);
+        } else {
+            widened = new ObjectColumn(column.name);
+        }
+        widened.ensureCapacity(column.size + 1);
+        for (int row = 0; row < column.size; row++) {
+            widened.add(column.get(row));
+        }
+        return widened;
+    }
+}
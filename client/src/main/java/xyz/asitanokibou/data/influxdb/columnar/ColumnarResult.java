@@ -0,0 +1,51 @@
+package xyz.asitanokibou.data.influxdb.columnar;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 列存的查询结果, 由 {@link ColumnarResultCollector} 构建, 构建完成后不再修改.
+ * 相比 TimedResult/GroupByResult 每行一个对象, 大结果集(如图表查询)几乎没有逐行的对象分配
+ * @author aimysaber@gmail.com
+ */
+public final class ColumnarResult {
+
+    private final List<ColumnarSeries> series;
+
+    ColumnarResult(List<ColumnarSeries> series) {
+        this.series = Collections.unmodifiableList(series);
+    }
+
+    public List<ColumnarSeries> getSeries() {
+        return series;
+    }
+
+    public boolean isEmpty() {
+        return series.isEmpty();
+    }
+
+    /**
+     * @return 所有series的总行数
+     */
+    public long getRowCount() {
+        long rows = 0;
+        for (ColumnarSeries s : series) {
+            rows += s.size();
+        }
+        return rows;
+    }
+
+    /**
+     * @return 第一个 measurement 和 tags 都相同的series, 不存在时返回null
+     */
+    public ColumnarSeries getSeries(String name, Map<String, String> tags) {
+        for (ColumnarSeries s : series) {
+            if (Objects.equals(s.getName(), name) && s.getTags().equals(tags == null ? Collections.emptyMap() : tags)) {
+                return s;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,103 @@
+package xyz.asitanokibou.data.influxdb.columnar;
+
+import org.influxdb.dto.QueryResult;
+import xyz.asitanokibou.data.influxdb.InfluxDBUtil;
+import xyz.asitanokibou.data.influxdb.QueryResultSeriesCallback;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把查询结果中的series逐个追加到列存结果中. chunked 查询时同一个series会被拆分到连续的多个chunk中, 这里会合并为一个.
+ * 非线程安全, 每次查询使用一个新的实例
+ * @author aimysaber@gmail.com
+ */
+public class ColumnarResultCollector implements QueryResultSeriesCallback {
+
+    private static final String TIME_COLUMN = "time";
+
+    //查询返回的数值时间的精度, 统一转为毫秒保存
+    private final TimeUnit precision;
+
+    private final List<ColumnarSeries> series = new ArrayList<>();
+    private ColumnarSeries current;
+    private List<String> currentColumns;
+    private int timeIndex;
+
+    private boolean finished;
+
+    public ColumnarResultCollector() {
+        this(TimeUnit.MILLISECONDS);
+    }
+
+    public ColumnarResultCollector(TimeUnit precision) {
+        this.precision = precision;
+    }
+
+    @Override
+    public void call(QueryResult.Series s) {
+        if (finished) {
+            throw new IllegalStateException("collector already finished");
+        }
+        List<List<Object>> values = s.getValues();
+        int rows = values == null ? 0 : values.size();
+
+        if (current == null || !isContinuation(s)) {
+            currentColumns = s.getColumns();
+            timeIndex = currentColumns.indexOf(TIME_COLUMN);
+            List<String> fieldColumns = new ArrayList<>(currentColumns);
+            if (timeIndex >= 0) {
+                fieldColumns.remove(timeIndex);
+            }
+            current = new ColumnarSeries(s.getName(), s.getTags(), fieldColumns, timeIndex >= 0, rows);
+            series.add(current);
+        } else {
+            current.ensureCapacity(current.size() + rows);
+        }
+        if (rows == 0) {
+            return;
+        }
+
+        int columnCount = currentColumns.size();
+        for (List<Object> row : values) {
+            int field = 0;
+            for (int i = 0; i < columnCount; i++) {
+                Object value = row.get(i);
+                if (i == timeIndex) {
+                    current.addTime(InfluxDBUtil.toEpoch(value, precision, TimeUnit.MILLISECONDS));
+                } else {
+                    current.addValue(field++, value);
+                }
+            }
+            current.endRow();
+        }
+    }
+
+    private boolean isContinuation(QueryResult.Series s) {
+        Map<String, String> tags = s.getTags() == null ? Collections.emptyMap() : s.getTags();
+        return Objects.equals(current.getName(), s.getName())
+                && current.getTags().equals(tags)
+                && currentColumns.equals(s.getColumns());
+    }
+
+    public void collect(QueryResult queryResult) {
+        InfluxDBUtil.queryResultSeriesCallback(queryResult, this);
+    }
+
+    /**
+     * 结束收集, 把各列数组截断为实际行数
+     */
+    public ColumnarResult finish() {
+        if (!finished) {
+            finished = true;
+            for (ColumnarSeries s : series) {
+                s.finish();
+            }
+        }
+        return new ColumnarResult(series);
+    }
+}
@@ -0,0 +1,144 @@
+package xyz.asitanokibou.data.influxdb.columnar;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个series(measurement + tags)的列存数据: time 列为毫秒时间戳 long[], 其余每个字段一列.
+ * tags 每个series只保存一份
+ * @author aimysaber@gmail.com
+ */
+public final class ColumnarSeries {
+
+    private final String name;
+    private final Map<String, String> tags;
+    private final List<String> columnNames;
+    private final Column[] columns;
+    //第一个非null值出现之前的null数, 此时还不知道列的类型
+    private final int[] pendingNulls;
+    private final boolean hasTime;
+
+    private long[] times = new long[0];
+    private int size;
+
+    ColumnarSeries(String name, Map<String, String> tags, List<String> columnNames, boolean hasTime, int capacity) {
+        this.name = name;
+        this.tags = tags == null ? Collections.emptyMap() : Collections.unmodifiableMap(tags);
+        this.columnNames = Collections.unmodifiableList(columnNames);
+        this.columns = new Column[columnNames.size()];
+        this.pendingNulls = new int[columnNames.size()];
+        this.hasTime = hasTime;
+        if (hasTime) {
+            this.times = new long[capacity];
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, String> getTags() {
+        return tags;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 是否有time列(SHOW 之类的语句没有)
+     */
+    public boolean hasTime() {
+        return hasTime;
+    }
+
+    /**
+     * @return 毫秒时间戳数组, 长度为 {@link #size()}; 没有time列时为空数组
+     */
+    public long[] getTimes() {
+        return times;
+    }
+
+    public long getTime(int row) {
+        return times[row];
+    }
+
+    /**
+     * @return 字段列名(不含time)
+     */
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    public Column getColumn(int index) {
+        return columns[index];
+    }
+
+    /**
+     * @return 列, 不存在时返回null
+     */
+    public Column getColumn(String columnName) {
+        int index = columnNames.indexOf(columnName);
+        return index < 0 ? null : columns[index];
+    }
+
+    void addTime(long time) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, Column.grow(times.length, size + 1));
+        }
+        times[size] = time;
+    }
+
+    void addValue(int columnIndex, Object value) {
+        Column column = columns[columnIndex];
+        if (column == null) {
+            if (value == null) {
+                pendingNulls[columnIndex]++;
+                return;
+            }
+            column = Column.create(columnNames.get(columnIndex), value, times.length);
+            for (int i = 0; i < pendingNulls[columnIndex]; i++) {
+                column.addNull();
+            }
+            columns[columnIndex] = column;
+        } else if (value != null && !column.accepts(value)) {
+            column = Column.widen(column, value);
+            columns[columnIndex] = column;
+        }
+        column.add(value);
+    }
+
+    void endRow() {
+        size++;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (hasTime && capacity > times.length) {
+            times = Arrays.copyOf(times, capacity);
+        }
+        for (Column column : columns) {
+            if (column != null) {
+                column.ensureCapacity(capacity);
+            }
+        }
+    }
+
+    void finish() {
+        if (hasTime && times.length != size) {
+            times = Arrays.copyOf(times, size);
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] == null) {
+                //整列都是null
+                DoubleColumn column = new DoubleColumn(columnNames.get(i));
+                for (int row = 0; row < size; row++) {
+                    column.addNull();
+                }
+                columns[i] = column;
+            }
+            columns[i].trim();
+        }
+    }
+}
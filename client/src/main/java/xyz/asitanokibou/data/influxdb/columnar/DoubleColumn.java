@@ -0,0 +1,71 @@
+package xyz.asitanokibou.data.influxdb.columnar;
+
+import java.util.Arrays;
+
+/**
+ * double 值列, influxdb 的 json 响应中所有数值都是这个类型
+ * @author aimysaber@gmail.com
+ */
+public final class DoubleColumn extends Column {
+
+    private double[] values = new double[0];
+
+    DoubleColumn(String name) {
+        super(name);
+    }
+
+    /**
+     * @return 值数组, 长度为 {@link #size()}; null行的值为 NaN
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    @Override
+    public Class<?> getType() {
+        return double.class;
+    }
+
+    @Override
+    public Object get(int row) {
+        return isNull(row) ? null : values[row];
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return values[row];
+    }
+
+    @Override
+    public long getLong(int row) {
+        return (long) values[row];
+    }
+
+    @Override
+    boolean accepts(Object value) {
+        return value instanceof Number;
+    }
+
+    @Override
+    void addValue(Object value) {
+        ensureCapacity(size + 1);
+        values[size++] = ((Number) value).doubleValue();
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            int length = values.length;
+            values = Arrays.copyOf(values, grow(length, capacity));
+            Arrays.fill(values, length, values.length, Double.NaN);
+        }
+    }
+
+    @Override
+    void trim() {
+        if (values.length != size) {
+            values = Arrays.copyOf(values, size);
+        }
+        trimNulls();
+    }
+}
@@ -0,0 +1,73 @@
+package xyz.asitanokibou.data.influxdb.columnar;
+
+import java.util.Arrays;
+
+/**
+ * long 值列, 响应中的整数值(如msgpack格式)保存为这个类型
+ * @author aimysaber@gmail.com
+ */
+public final class LongColumn extends Column {
+
+    private long[] values = new long[0];
+
+    LongColumn(String name) {
+        super(name);
+    }
+
+    static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * @return 值数组, 长度为 {@link #size()}; null行的值为0, 需要配合 {@link #isNull(int)} 判断
+     */
+    public long[] getValues() {
+        return values;
+    }
+
+    @Override
+    public Class<?> getType() {
+        return long.class;
+    }
+
+    @Override
+    public Object get(int row) {
+        return isNull(row) ? null : values[row];
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return isNull(row) ? Double.NaN : values[row];
+    }
+
+    @Override
+    public long getLong(int row) {
+        return values[row];
+    }
+
+    @Override
+    boolean accepts(Object value) {
+        return isIntegral(value);
+    }
+
+    @Override
+    void addValue(Object value) {
+        ensureCapacity(size + 1);
+        values[size++] = ((Number) value).longValue();
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, grow(values.length, capacity));
+        }
+    }
+
+    @Override
+    void trim() {
+        if (values.length != size) {
+            values = Arrays.copyOf(values, size);
+        }
+        trimNulls();
+    }
+}
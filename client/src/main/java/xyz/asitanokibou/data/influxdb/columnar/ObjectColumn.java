@@ -0,0 +1,59 @@
+package xyz.asitanokibou.data.influxdb.columnar;
+
+import java.util.Arrays;
+
+/**
+ * 非数值列(string, boolean), 或者同时含有数值和非数值的列
+ * @author aimysaber@gmail.com
+ */
+public final class ObjectColumn extends Column {
+
+    private Object[] values = new Object[0];
+
+    ObjectColumn(String name) {
+        super(name);
+    }
+
+    /**
+     * @return 值数组, 长度为 {@link #size()}
+     */
+    public Object[] getValues() {
+        return values;
+    }
+
+    @Override
+    public Class<?> getType() {
+        return Object.class;
+    }
+
+    @Override
+    public Object get(int row) {
+        return values[row];
+    }
+
+    @Override
+    boolean accepts(Object value) {
+        return true;
+    }
+
+    @Override
+    void addValue(Object value) {
+        ensureCapacity(size + 1);
+        values[size++] = value;
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, grow(values.length, capacity));
+        }
+    }
+
+    @Override
+    void trim() {
+        if (values.length != size) {
+            values = Arrays.copyOf(values, size);
+        }
+        trimNulls();
+    }
+}
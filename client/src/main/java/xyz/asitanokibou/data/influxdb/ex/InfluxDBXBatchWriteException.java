@@ -0,0 +1,23 @@
+package xyz.asitanokibou.data.influxdb.ex;
+
+import xyz.asitanokibou.data.influxdb.pojo.BatchWriteResult;
+
+/**
+ * writeBatch 中有分片写入失败时抛出, 可通过 {@link #getResult()} 查看每个分片的结果(哪些已写入成功)
+ * @author aimysaber@gmail.com
+ */
+public class InfluxDBXBatchWriteException extends InfluxDBXException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final BatchWriteResult result;
+
+    public InfluxDBXBatchWriteException(String message, Throwable cause, BatchWriteResult result) {
+        super(message, cause);
+        this.result = result;
+    }
+
+    public BatchWriteResult getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,14 @@
+package xyz.asitanokibou.data.influxdb.ex;
+
+/**
+ * 熔断器打开期间直接拒绝的调用
+ * @author aimysaber@gmail.com
+ */
+public class InfluxDBXCircuitOpenException extends InfluxDBXException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InfluxDBXCircuitOpenException(String message) {
+        super(message);
+    }
+}
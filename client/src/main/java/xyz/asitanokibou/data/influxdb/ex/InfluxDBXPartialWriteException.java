@@ -0,0 +1,31 @@
+package xyz.asitanokibou.data.influxdb.ex;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 多节点写入时部分节点失败(见 InfluxDBRoutingDataSource.WriteSuccessPolicy#ALL): 数据已经写入了 {@link #getSucceededNodes()},
+ * 没有写入 {@link #getFailedNodes()}. cause 为第一个失败节点的异常, 其他节点的异常为suppressed
+ * @author aimysaber@gmail.com
+ */
+public class InfluxDBXPartialWriteException extends InfluxDBXException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> failedNodes;
+    private final List<String> succeededNodes;
+
+    public InfluxDBXPartialWriteException(String message, Throwable cause, List<String> failedNodes, List<String> succeededNodes) {
+        super(message, cause);
+        this.failedNodes = Collections.unmodifiableList(failedNodes);
+        this.succeededNodes = Collections.unmodifiableList(succeededNodes);
+    }
+
+    public List<String> getFailedNodes() {
+        return failedNodes;
+    }
+
+    public List<String> getSucceededNodes() {
+        return succeededNodes;
+    }
+}
@@ -0,0 +1,208 @@
+package xyz.asitanokibou.data.influxdb.mapper;
+
+import org.influxdb.InfluxDBMapperException;
+import xyz.asitanokibou.data.influxdb.InfluxDBUtil;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 字段赋值器 - 根据字段类型在分析映射类时确定一次, 赋值时通过MethodHandle直接写字段.
+ * 基本类型字段使用 (Object, primitive) 签名的MethodHandle, 不经过包装类型
+ * @author aimysaber@gmail.com
+ */
+abstract class FieldSetter {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    final Field field;
+    final MethodHandle setter;
+
+    private FieldSetter(Field field, Class<?> setterType) {
+        this.field = field;
+        try {
+            field.setAccessible(true);
+            this.setter = LOOKUP.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, setterType));
+        } catch (IllegalAccessException e) {
+            throw new InfluxDBMapperException("Could not access field '" + field.getName() + "' of " + field.getDeclaringClass(), e);
+        }
+    }
+
+    /**
+     * @param value 非null
+     */
+    abstract void set(Object target, Object value, TimeUnit precision, ZoneId zoneId) throws Throwable;
+
+    static FieldSetter of(Field field) {
+        Class<?> type = field.getType();
+        if (type == String.class) {
+            return new StringSetter(field);
+        } else if (type == Instant.class) {
+            return new InstantSetter(field);
+        } else if (type == LocalDateTime.class) {
+            return new LocalDateTimeSetter(field);
+        } else if (type == double.class) {
+            return new DoubleSetter(field);
+        } else if (type == long.class) {
+            return new LongSetter(field);
+        } else if (type == int.class) {
+            return new IntSetter(field);
+        } else if (type == boolean.class) {
+            return new BooleanSetter(field);
+        } else if (type == Double.class || type == Long.class || type == Integer.class || type == Boolean.class) {
+            return new WrapperSetter(field);
+        }
+        return new UnsupportedSetter(field);
+    }
+
+    /**
+     * 与InfluxDBResultMapper不同, 数值时间在 MICROSECONDS/NANOSECONDS 精度下保留到对应精度, 不截断到毫秒
+     */
+    static Instant toInstant(Field field, Object value, TimeUnit precision) {
+        if (value instanceof String) {
+            return InfluxDBUtil.parseRFC3339((String) value);
+        } else if (value instanceof Number) {
+            long time = ((Number) value).longValue();
+            if (precision == TimeUnit.NANOSECONDS || precision == TimeUnit.MICROSECONDS) {
+                long nanos = TimeUnit.NANOSECONDS.convert(time, precision);
+                return Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L));
+            }
+            return Instant.ofEpochMilli(TimeUnit.MILLISECONDS.convert(time, precision));
+        }
+        throw new InfluxDBMapperException("Unsupported type " + value.getClass() + " for field " + field.getName());
+    }
+
+    private static final class StringSetter extends FieldSetter {
+        StringSetter(Field field) {
+            super(field, String.class);
+        }
+
+        @Override
+        void set(Object target, Object value, TimeUnit precision, ZoneId zoneId) throws Throwable {
+            String string = value instanceof String ? (String) value : String.valueOf(value);
+            setter.invokeExact(target, string);
+        }
+    }
+
+    private static final class InstantSetter extends FieldSetter {
+        InstantSetter(Field field) {
+            super(field, Instant.class);
+        }
+
+        @Override
+        void set(Object target, Object value, TimeUnit precision, ZoneId zoneId) throws Throwable {
+            Instant instant = toInstant(field, value, precision);
+            setter.invokeExact(target, instant);
+        }
+    }
+
+    private static final class LocalDateTimeSetter extends FieldSetter {
+        LocalDateTimeSetter(Field field) {
+            super(field, LocalDateTime.class);
+        }
+
+        @Override
+        void set(Object target, Object value, TimeUnit precision, ZoneId zoneId) throws Throwable {
+            LocalDateTime localDateTime = LocalDateTime.ofInstant(toInstant(field, value, precision), zoneId);
+            setter.invokeExact(target, localDateTime);
+        }
+    }
+
+    private static final class DoubleSetter extends FieldSetter {
+        DoubleSetter(Field field) {
+            super(field, double.class);
+        }
+
+        @Override
+        void set(Object target, Object value, TimeUnit precision, ZoneId zoneId) throws Throwable {
+            double doubleValue = ((Number) value).doubleValue();
+            setter.invokeExact(target, doubleValue);
+        }
+    }
+
+    private static final class LongSetter extends FieldSetter {
+        LongSetter(Field field) {
+            super(field, long.class);
+        }
+
+        @Override
+        void set(Object target, Object value, TimeUnit precision, ZoneId zoneId) throws Throwable {
+            long longValue = ((Number) value).longValue();
+            setter.invokeExact(target, longValue);
+        }
+    }
+
+    private static final class IntSetter extends FieldSetter {
+        IntSetter(Field field) {
+            super(field, int.class);
+        }
+
+        @Override
+        void set(Object target, Object value, TimeUnit precision, ZoneId zoneId) throws Throwable {
+            int intValue = ((Number) value).intValue();
+            setter.invokeExact(target, intValue);
+        }
+    }
+
+    private static final class BooleanSetter extends FieldSetter {
+        BooleanSetter(Field field) {
+            super(field, boolean.class);
+        }
+
+        @Override
+        void set(Object target, Object value, TimeUnit precision, ZoneId zoneId) throws Throwable {
+            boolean booleanValue = value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(String.valueOf(value));
+            setter.invokeExact(target, booleanValue);
+        }
+    }
+
+    /**
+     * Double/Long/Integer/Boolean 字段
+     */
+    private static final class WrapperSetter extends FieldSetter {
+        private final Class<?> type;
+
+        WrapperSetter(Field field) {
+            super(field, Object.class);
+            this.type = field.getType();
+        }
+
+        @Override
+        void set(Object target, Object value, TimeUnit precision, ZoneId zoneId) throws Throwable {
+            Object converted;
+            if (type.isInstance(value)) {
+                converted = value;
+            } else if (type == Double.class) {
+                converted = ((Number) value).doubleValue();
+            } else if (type == Long.class) {
+                converted = ((Number) value).longValue();
+            } else if (type == Integer.class) {
+                converted = ((Number) value).intValue();
+            } else {
+                converted = Boolean.valueOf(String.valueOf(value));
+            }
+            setter.invokeExact(target, converted);
+        }
+    }
+
+    /**
+     * 不支持的字段类型, 与InfluxDBResultMapper一致, 分析时不报错, 到该列有值需要赋值时才抛出异常
+     */
+    private static final class UnsupportedSetter extends FieldSetter {
+        UnsupportedSetter(Field field) {
+            super(field, field.getType());
+        }
+
+        @Override
+        void set(Object target, Object value, TimeUnit precision, ZoneId zoneId) {
+            throw new InfluxDBMapperException(String.format("Class '%s' field '%s' is from an unsupported type '%s'.",
+                    target.getClass().getName(), field.getName(), field.getType()));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package xyz.asitanokibou.data.influxdb.mapper;
+
+import org.influxdb.InfluxDBMapperException;
+import org.influxdb.annotation.Column;
+import org.influxdb.annotation.Measurement;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个@Measurement映射类的分析结果(构造器 + 列名到字段赋值器), 每个类只分析一次
+ * @author aimysaber@gmail.com
+ */
+final class MeasurementMetadata {
+
+    private final Class<?> clazz;
+    private final String measurementName;
+    private final MethodHandle constructor;
+    private final ReflectiveOperationException constructorError;
+    private final Map<String, FieldSetter> columnSetters;
+
+    private MeasurementMetadata(Class<?> clazz, String measurementName,
+                                MethodHandle constructor, ReflectiveOperationException constructorError,
+                                Map<String, FieldSetter> columnSetters) {
+        this.clazz = clazz;
+        this.measurementName = measurementName;
+        this.constructor = constructor;
+        this.constructorError = constructorError;
+        this.columnSetters = columnSetters;
+    }
+
+    static MeasurementMetadata analyze(Class<?> clazz) {
+        Measurement measurement = clazz.getAnnotation(Measurement.class);
+        if (measurement == null) {
+            throw new IllegalArgumentException("Class " + clazz.getName() + " is not annotated with @" + Measurement.class.getSimpleName());
+        }
+
+        Map<String, FieldSetter> columnSetters = new HashMap<>();
+        Class<?> c = clazz;
+        while (c != null) {
+            for (Field field : c.getDeclaredFields()) {
+                Column column = field.getAnnotation(Column.class);
+                if (column != null) {
+                    //与InfluxDBResultMapper一致, 同名列父类的字段覆盖子类的字段
+                    columnSetters.put(column.name(), FieldSetter.of(field));
+                }
+            }
+            c = c.getSuperclass();
+        }
+
+        //没有无参构造器时与InfluxDBResultMapper一致, 到需要创建实例时才抛出异常
+        MethodHandle constructor = null;
+        ReflectiveOperationException constructorError = null;
+        try {
+            Constructor<?> declaredConstructor = clazz.getDeclaredConstructor();
+            declaredConstructor.setAccessible(true);
+            constructor = MethodHandles.lookup().unreflectConstructor(declaredConstructor)
+                    .asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            constructorError = e;
+        }
+
+        return new MeasurementMetadata(clazz, measurement.name(), constructor, constructorError, columnSetters);
+    }
+
+    String getMeasurementName() {
+        return measurementName;
+    }
+
+    Object newInstance() {
+        if (constructor == null) {
+            throw new InfluxDBMapperException(constructorError);
+        }
+        try {
+            return constructor.invokeExact();
+        } catch (Throwable e) {
+            throw new InfluxDBMapperException("Could not create instance of " + clazz.getName(), e);
+        }
+    }
+
+    /**
+     * @return 与columns一一对应的赋值器, 没有映射的列为null
+     */
+    FieldSetter[] settersFor(List<String> columns) {
+        FieldSetter[] setters = new FieldSetter[columns.size()];
+        for (int i = 0; i < setters.length; i++) {
+            setters[i] = columnSetters.get(columns.get(i));
+        }
+        return setters;
+    }
+
+    FieldSetter setterFor(String column) {
+        return columnSetters.get(column);
+    }
+}
@@ -0,0 +1,168 @@
+package xyz.asitanokibou.data.influxdb.mapper;
+
+import org.influxdb.InfluxDBMapperException;
+import org.influxdb.dto.QueryResult;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 替代 {@link org.influxdb.impl.InfluxDBResultMapper} 的结果映射器(thread-safe), 映射规则与其一致, 以下几点除外:
+ * <ul>
+ *     <li>数值字段接受任意Number类型的值, 不要求是Double</li>
+ *     <li>数值时间在 MICROSECONDS/NANOSECONDS 精度下映射到Instant时保留对应精度, 不截断到毫秒</li>
+ *     <li>无参构造器不要求是public</li>
+ *     <li>时间列还可以映射到 LocalDateTime 字段</li>
+ *     <li>不能映射final字段, 分析映射类时即抛出异常</li>
+ * </ul>
+ * <p>
+ * 每个@Measurement类只分析一次并缓存构造器和字段的MethodHandle; 每个series只按列名解析一次列下标到赋值器的对应关系,
+ * 行映射时不再有反射查找和按字段类型的分支判断. LocalDateTime 类型的时间字段按zoneId转换
+ * @author aimysaber@gmail.com
+ */
+public class MeasurementResultMapper {
+
+    private final ConcurrentMap<Class<?>, MeasurementMetadata> metadataCache = new ConcurrentHashMap<>();
+
+    private volatile ZoneId zoneId = ZoneId.systemDefault();
+
+    public void setZoneId(ZoneId zoneId) {
+        this.zoneId = zoneId;
+    }
+
+    public <T> List<T> toPOJO(QueryResult queryResult, Class<T> clazz) throws InfluxDBMapperException {
+        return toPOJO(queryResult, clazz, TimeUnit.MILLISECONDS);
+    }
+
+    public <T> List<T> toPOJO(QueryResult queryResult, Class<T> clazz, TimeUnit precision) throws InfluxDBMapperException {
+        return toPOJO(queryResult, clazz, getMetadata(clazz).getMeasurementName(), precision);
+    }
+
+    public <T> List<T> toPOJO(QueryResult queryResult, Class<T> clazz, String measurementName) throws InfluxDBMapperException {
+        return toPOJO(queryResult, clazz, measurementName, TimeUnit.MILLISECONDS);
+    }
+
+    public <T> List<T> toPOJO(QueryResult queryResult, Class<T> clazz, String measurementName, TimeUnit precision)
+            throws InfluxDBMapperException {
+
+        MeasurementMetadata metadata = getMetadata(clazz);
+        throwExceptionIfResultWithError(queryResult);
+
+        List<T> result = new ArrayList<>();
+        for (QueryResult.Result internalResult : queryResult.getResults()) {
+            if (internalResult == null || internalResult.getSeries() == null) {
+                continue;
+            }
+            for (QueryResult.Series series : internalResult.getSeries()) {
+                if (measurementName.equals(series.getName())) {
+                    parseSeriesAs(series, clazz, metadata, result, precision);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 预先分析映射类, 避免第一次查询时的分析开销
+     */
+    public void cacheMeasurementClass(Class<?>... classes) {
+        for (Class<?> clazz : classes) {
+            getMetadata(clazz);
+        }
+    }
+
+    private MeasurementMetadata getMetadata(Class<?> clazz) {
+        MeasurementMetadata metadata = metadataCache.get(clazz);
+        if (metadata == null) {
+            metadata = metadataCache.computeIfAbsent(clazz, MeasurementMetadata::analyze);
+        }
+        return metadata;
+    }
+
+    private void throwExceptionIfResultWithError(QueryResult queryResult) {
+        if (queryResult.getError() != null) {
+            throw new InfluxDBMapperException("InfluxDB returned an error: " + queryResult.getError());
+        }
+        queryResult.getResults().forEach(seriesResult -> {
+            if (seriesResult.getError() != null) {
+                throw new InfluxDBMapperException("InfluxDB returned an error with Series: " + seriesResult.getError());
+            }
+        });
+    }
+
+    private static boolean hasAnySetter(FieldSetter[] setters) {
+        for (FieldSetter setter : setters) {
+            if (setter != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void parseSeriesAs(QueryResult.Series series, Class<T> clazz, MeasurementMetadata metadata,
+                                   List<T> result, TimeUnit precision) {
+        List<List<Object>> values = series.getValues();
+        if (values == null) {
+            return;
+        }
+        FieldSetter[] setters = metadata.settersFor(series.getColumns());
+        //与InfluxDBResultMapper一致, 没有任何列映射到字段的series不产生对象
+        if (!hasAnySetter(setters)) {
+            return;
+        }
+
+        //series的tag对该series的每一行都相同, 先找出对应的赋值器
+        Map<String, String> tags = series.getTags();
+        List<FieldSetter> tagSetters = new ArrayList<>();
+        List<String> tagValues = new ArrayList<>();
+        if (tags != null) {
+            tags.forEach((tagKey, tagValue) -> {
+                FieldSetter setter = metadata.setterFor(tagKey);
+                if (setter != null && tagValue != null) {
+                    tagSetters.add(setter);
+                    tagValues.add(tagValue);
+                }
+            });
+        }
+
+        ZoneId zone = this.zoneId;
+        if (result instanceof ArrayList) {
+            ((ArrayList<T>) result).ensureCapacity(result.size() + values.size());
+        }
+
+        FieldSetter current = null;
+        Object currentValue = null;
+        try {
+            for (List<Object> row : values) {
+                Object object = metadata.newInstance();
+                for (int i = 0; i < setters.length; i++) {
+                    current = setters[i];
+                    currentValue = row.get(i);
+                    if (current != null && currentValue != null) {
+                        current.set(object, currentValue, precision, zone);
+                    }
+                }
+                for (int i = 0; i < tagSetters.size(); i++) {
+                    current = tagSetters.get(i);
+                    currentValue = tagValues.get(i);
+                    current.set(object, currentValue, precision, zone);
+                }
+                result.add((T) object);
+            }
+        } catch (ClassCastException e) {
+            throw new InfluxDBMapperException(String.format("Class '%s' field '%s' was defined with a different field type and caused a ClassCastException. "
+                            + "The correct type is '%s' (current field value: '%s').",
+                    clazz.getName(), current.field.getName(), currentValue.getClass().getName(), currentValue), e);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InfluxDBMapperException(e);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package xyz.asitanokibou.data.influxdb.metrics;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Value;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在内存中保存直方图的指标实现, 可以定时读取后输出到日志或者监控系统.
+ * 查询按 数据库 + 归一化的查询模板 分别统计, 写入按数据库统计; 时间单位均为纳秒
+ * @author aimysaber@gmail.com
+ */
+public class InMemoryInfluxDBMetrics implements InfluxDBMetrics {
+
+    //连接池
+    @Getter
+    private final Histogram borrowWait = new Histogram();
+    private final LongAdder borrowFailures = new LongAdder();
+    @Getter
+    private volatile int active;
+    @Getter
+    private volatile int idle;
+
+    private final ConcurrentMap<QueryKey, QueryStats> queries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, WriteStats> writes = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordBorrow(long waitNanos, boolean success) {
+        borrowWait.record(waitNanos);
+        if (!success) {
+            borrowFailures.increment();
+        }
+    }
+
+    @Override
+    public void recordPoolState(int active, int idle) {
+        this.active = active;
+        this.idle = idle;
+    }
+
+    @Override
+    public void recordQuery(String database, String queryTemplate, long networkNanos, long mappingNanos, long rows, boolean success) {
+        QueryKey key = new QueryKey(database, queryTemplate);
+        QueryStats stats = queries.get(key);
+        if (stats == null) {
+            stats = queries.computeIfAbsent(key, k -> new QueryStats());
+        }
+        stats.latency.record(networkNanos + mappingNanos);
+        stats.network.record(networkNanos);
+        if (success) {
+            stats.mapping.record(mappingNanos);
+            stats.rows.record(rows);
+        } else {
+            stats.errors.increment();
+        }
+    }
+
+    @Override
+    public void recordQueryBytes(String database, String queryTemplate, long responseBytes) {
+        QueryKey key = new QueryKey(database, queryTemplate);
+        QueryStats stats = queries.get(key);
+        if (stats == null) {
+            stats = queries.computeIfAbsent(key, k -> new QueryStats());
+        }
+        stats.responseBytes.record(responseBytes);
+    }
+
+    @Override
+    public void recordWrite(String database, int points, long nanos, boolean success) {
+        String key = database == null ? "" : database;
+        WriteStats stats = writes.get(key);
+        if (stats == null) {
+            stats = writes.computeIfAbsent(key, k -> new WriteStats());
+        }
+        stats.latency.record(nanos);
+        stats.batchSize.record(points);
+        if (success) {
+            stats.points.mark(points);
+        } else {
+            stats.errors.increment();
+        }
+    }
+
+    public long getBorrowFailures() {
+        return borrowFailures.sum();
+    }
+
+    public Map<QueryKey, QueryStats> getQueryStats() {
+        return Collections.unmodifiableMap(queries);
+    }
+
+    /**
+     * @return 数据库 -> 写入统计
+     */
+    public Map<String, WriteStats> getWriteStats() {
+        return Collections.unmodifiableMap(writes);
+    }
+
+    public void reset() {
+        queries.clear();
+        writes.clear();
+    }
+
+    @Value
+    public static class QueryKey {
+        String database;
+        String queryTemplate;
+    }
+
+    @Getter
+    public static class QueryStats {
+        //network + mapping
+        private final Histogram latency = new Histogram();
+        private final Histogram network = new Histogram();
+        private final Histogram mapping = new Histogram();
+        private final Histogram rows = new Histogram();
+        //响应实际接收的字节数
+        private final Histogram responseBytes = new Histogram();
+        @Getter(AccessLevel.NONE)
+        private final LongAdder errors = new LongAdder();
+
+        public long getErrorCount() {
+            return errors.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "latency[" + latency + "], network[" + network + "], mapping[" + mapping + "], rows[" + rows
+                    + "], responseBytes[" + responseBytes + "], errors=" + getErrorCount();
+        }
+    }
+
+    @Getter
+    public static class WriteStats {
+        private final Histogram latency = new Histogram();
+        //每个请求的点数
+        private final Histogram batchSize = new Histogram();
+        //成功写入的点数
+        private final RateMeter points = new RateMeter();
+        @Getter(AccessLevel.NONE)
+        private final LongAdder errors = new LongAdder();
+
+        public long getErrorCount() {
+            return errors.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "latency[" + latency + "], batchSize[" + batchSize + "], points=" + points.getTotal()
+                    + ", points/s=" + points.getRatePerSecond() + ", errors=" + getErrorCount();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package xyz.asitanokibou.data.influxdb.metrics;
+
+/**
+ * 指标收集SPI, 默认为 {@link #NOOP}. 所有方法都在查询/写入线程上同步调用, 实现需要线程安全且足够轻量
+ * @author aimysaber@gmail.com
+ * @see InMemoryInfluxDBMetrics
+ */
+public interface InfluxDBMetrics {
+
+    InfluxDBMetrics NOOP = new InfluxDBMetrics() {
+    };
+
+    /**
+     * 从连接池获取client
+     * @param waitNanos 等待时间
+     * @param success 是否成功获取(超时/创建连接失败时为false)
+     */
+    default void recordBorrow(long waitNanos, boolean success) {
+    }
+
+    /**
+     * 连接池状态, 在获取/归还/销毁client后调用
+     */
+    default void recordPoolState(int active, int idle) {
+    }
+
+    /**
+     * 一次查询
+     * @param database 数据库, 可能为null
+     * @param queryTemplate 归一化后的查询模板(去掉了字面量), 见 PreparedInfluxQuery#getNormalizedTemplate
+     * @param networkNanos 发送请求到得到QueryResult的时间(含json解析)
+     * @param mappingNanos 把QueryResult映射为结果对象的时间
+     * @param rows 返回的行数
+     * @param success 是否成功
+     */
+    default void recordQuery(String database, String queryTemplate, long networkNanos, long mappingNanos, long rows, boolean success) {
+    }
+
+    /**
+     * 一次成功查询的响应大小, 在 {@link #recordQuery} 之前调用
+     * @param responseBytes 实际接收的字节数(压缩时为压缩后的大小); 分块查询不统计
+     */
+    default void recordQueryBytes(String database, String queryTemplate, long responseBytes) {
+    }
+
+    /**
+     * 一次写入请求
+     * @param database 数据库
+     * @param points 本次请求的点数
+     * @param nanos 请求耗时(不含等待client)
+     * @param success 是否成功
+     */
+    default void recordWrite(String database, int points, long nanos, boolean success) {
+    }
+}
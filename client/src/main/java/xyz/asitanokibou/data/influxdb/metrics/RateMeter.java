@@ -0,0 +1,53 @@
+package xyz.asitanokibou.data.influxdb.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 最近一分钟的每秒速率, 按秒分为60个槽
+ * @author aimysaber@gmail.com
+ */
+public class RateMeter {
+
+    private static final int WINDOW_SECONDS = 60;
+
+    private final AtomicLongArray counts = new AtomicLongArray(WINDOW_SECONDS);
+    private final AtomicLongArray seconds = new AtomicLongArray(WINDOW_SECONDS);
+    private final LongAdder total = new LongAdder();
+    private final long startSecond = currentSecond();
+
+    private static long currentSecond() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+
+    public void mark(long n) {
+        long second = currentSecond();
+        int slot = (int) (second % WINDOW_SECONDS);
+        long slotSecond = seconds.get(slot);
+        if (slotSecond != second && seconds.compareAndSet(slot, slotSecond, second)) {
+            counts.set(slot, 0);
+        }
+        counts.addAndGet(slot, n);
+        total.add(n);
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * @return 最近一分钟(启动不足一分钟时为启动以来)的平均每秒数量
+     */
+    public double getRatePerSecond() {
+        long now = currentSecond();
+        long sum = 0;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            if (now - seconds.get(i) < WINDOW_SECONDS) {
+                sum += counts.get(i);
+            }
+        }
+        long elapsed = Math.min(WINDOW_SECONDS, now - startSecond + 1);
+        return (double) sum / elapsed;
+    }
+}
@@ -0,0 +1,93 @@
+package xyz.asitanokibou.data.influxdb.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 网络传输的字节数: 请求体压缩前/实际发送的字节数, 响应实际接收/解压后的字节数. 由连接池的http client统计,
+ * 用于评估压缩节省的带宽
+ * @author aimysaber@gmail.com
+ */
+public class WireStats {
+
+    //当前线程接收的响应字节数, 用于统计单次(同步)查询的响应大小
+    private static final ThreadLocal<long[]> THREAD_RESPONSE_BYTES = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final LongAdder requestBodyBytes = new LongAdder();
+    private final LongAdder requestWireBytes = new LongAdder();
+    private final LongAdder compressedRequests = new LongAdder();
+    private final LongAdder responseWireBytes = new LongAdder();
+    private final LongAdder responseBodyBytes = new LongAdder();
+
+    /**
+     * @param bodyBytes 压缩前的请求体大小
+     * @param compressed 是否压缩
+     */
+    public void recordRequestBody(long bodyBytes, boolean compressed) {
+        requestBodyBytes.add(bodyBytes);
+        if (compressed) {
+            compressedRequests.increment();
+        }
+    }
+
+    public void recordRequestWire(long bytes) {
+        requestWireBytes.add(bytes);
+    }
+
+    public void recordResponseWire(long bytes) {
+        responseWireBytes.add(bytes);
+        THREAD_RESPONSE_BYTES.get()[0] += bytes;
+    }
+
+    public void recordResponseBody(long bytes) {
+        responseBodyBytes.add(bytes);
+    }
+
+    /**
+     * @return 当前线程累计接收的响应字节数(所有连接池), 前后两次调用的差值即为期间同步请求的响应大小
+     */
+    public static long currentThreadResponseBytes() {
+        return THREAD_RESPONSE_BYTES.get()[0];
+    }
+
+    public long getRequestBodyBytes() {
+        return requestBodyBytes.sum();
+    }
+
+    public long getRequestWireBytes() {
+        return requestWireBytes.sum();
+    }
+
+    public long getCompressedRequests() {
+        return compressedRequests.sum();
+    }
+
+    public long getResponseWireBytes() {
+        return responseWireBytes.sum();
+    }
+
+    public long getResponseBodyBytes() {
+        return responseBodyBytes.sum();
+    }
+
+    /**
+     * @return 请求实际发送的字节数/压缩前的字节数
+     */
+    public double getRequestCompressionRatio() {
+        long body = getRequestBodyBytes();
+        return body == 0 ? 1 : (double) getRequestWireBytes() / body;
+    }
+
+    /**
+     * @return 响应实际接收的字节数/解压后的字节数
+     */
+    public double getResponseCompressionRatio() {
+        long body = getResponseBodyBytes();
+        return body == 0 ? 1 : (double) getResponseWireBytes() / body;
+    }
+
+    @Override
+    public String toString() {
+        return "request[body=" + getRequestBodyBytes() + ", wire=" + getRequestWireBytes() + ", compressed=" + getCompressedRequests()
+                + "], response[wire=" + getResponseWireBytes() + ", body=" + getResponseBodyBytes() + "]";
+    }
+}
@@ -0,0 +1,27 @@
+package xyz.asitanokibou.data.influxdb.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * writeBatch 拆分后单个分片(一次http请求)的写入结果
+ * @author aimysaber@gmail.com
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchChunkResult {
+
+    private int index; //分片序号 从0开始
+    private int points;
+    private long bytes; //line protocol body 字节数
+    private long elapsedMillis;
+    private Throwable error;
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
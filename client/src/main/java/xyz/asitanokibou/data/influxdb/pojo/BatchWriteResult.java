@@ -0,0 +1,45 @@
+package xyz.asitanokibou.data.influxdb.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * writeBatch 的汇总结果, chunks按分片序号排列
+ * @author aimysaber@gmail.com
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchWriteResult {
+
+    private List<BatchChunkResult> chunks;
+    private long elapsedMillis;
+
+    /**
+     * 没有数据点时的结果, 每次返回新的实例
+     */
+    public static BatchWriteResult empty() {
+        return new BatchWriteResult(new ArrayList<>(), 0);
+    }
+
+    public int getTotalPoints() {
+        return chunks.stream().mapToInt(BatchChunkResult::getPoints).sum();
+    }
+
+    public long getTotalBytes() {
+        return chunks.stream().mapToLong(BatchChunkResult::getBytes).sum();
+    }
+
+    public List<BatchChunkResult> getFailedChunks() {
+        return chunks.stream().filter(chunk -> !chunk.isSuccess()).collect(Collectors.toList());
+    }
+
+    public boolean isSuccess() {
+        return chunks.stream().allMatch(BatchChunkResult::isSuccess);
+    }
+}
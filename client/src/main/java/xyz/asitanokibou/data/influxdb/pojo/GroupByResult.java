@@ -1,18 +1,18 @@
 package xyz.asitanokibou.data.influxdb.pojo;
 
-import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import xyz.asitanokibou.data.influxdb.InfluxDBUtil;
 
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Data
-@Builder
-@AllArgsConstructor
 @NoArgsConstructor
 public class GroupByResult {
 
@@ -20,8 +20,69 @@ public class GroupByResult {
     private Map<String, String> tags;
     private Instant time;
     private Map<String, Object> groupFieldData;
+    //分组开始时间的epoch值, 精度为precision, 不需要Instant时直接使用
+    //epoch/precision 与 time 始终一致, 相等性只比较 time
+    @EqualsAndHashCode.Exclude
+    private long epoch;
+    @EqualsAndHashCode.Exclude
+    private TimeUnit precision;
+
+    /**
+     * 只设置了 time 时(如builder)由 time 计算纳秒精度的 epoch
+     */
+    @Builder
+    public GroupByResult(String name, Map<String, String> tags, Instant time, Map<String, Object> groupFieldData, long epoch, TimeUnit precision) {
+        this.name = name;
+        this.tags = tags;
+        this.time = time;
+        this.groupFieldData = groupFieldData;
+        if (time != null && precision == null) {
+            this.epoch = InfluxDBUtil.toEpoch(time, TimeUnit.NANOSECONDS);
+            this.precision = TimeUnit.NANOSECONDS;
+        } else {
+            this.epoch = epoch;
+            this.precision = precision;
+        }
+    }
+
+    public GroupByResult(String name, Map<String, String> tags, Instant time, Map<String, Object> groupFieldData) {
+        this(name, tags, time, groupFieldData, 0, null);
+    }
+
+    /**
+     * 由epoch创建, 第一次调用 {@link #getTime()} 时才创建Instant
+     */
+    public GroupByResult(String name, Map<String, String> tags, long epoch, TimeUnit precision, Map<String, Object> groupFieldData) {
+        this(name, tags, null, groupFieldData, epoch, precision);
+    }
+
+    public void setTime(Instant time) {
+        this.time = time;
+        this.epoch = time == null ? 0 : InfluxDBUtil.toEpoch(time, TimeUnit.NANOSECONDS);
+        this.precision = time == null ? null : TimeUnit.NANOSECONDS;
+    }
+
+    /**
+     * 与 {@link #setPrecision(TimeUnit)} 一起使用, time 由 epoch 重新计算
+     */
+    public void setEpoch(long epoch) {
+        this.epoch = epoch;
+        this.time = null;
+    }
+
+    public void setPrecision(TimeUnit precision) {
+        this.precision = precision;
+        this.time = null;
+    }
+
+    public Instant getTime() {
+        if (time == null && precision != null) {
+            time = InfluxDBUtil.toInstant(epoch, precision);
+        }
+        return time;
+    }
 
     public LocalDateTime getLocalTime() {
-        return LocalDateTime.ofInstant(time, ZoneId.systemDefault());
+        return LocalDateTime.ofInstant(getTime(), ZoneId.systemDefault());
     }
 }
@@ -0,0 +1,25 @@
+package xyz.asitanokibou.data.influxdb.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个measurement的schema
+ * @author aimysaber@gmail.com
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MeasurementSchema {
+
+    private String name;
+    private List<String> tagKeys;
+    //tag key -> tag values, 没有获取tag values时为空
+    private Map<String, List<String>> tagValues;
+    //field key -> field type(float, integer, string, boolean), 没有获取field keys时为空
+    private Map<String, String> fieldTypes;
+}
@@ -0,0 +1,29 @@
+package xyz.asitanokibou.data.influxdb.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个数据库的schema, 见 SchemaOperation#discover
+ * @author aimysaber@gmail.com
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SchemaSnapshot {
+
+    private String database;
+    //measurement name -> schema, 按名称排序
+    private Map<String, MeasurementSchema> measurements;
+    //请求失败的measurement
+    private List<String> failedMeasurements;
+    private long elapsedMillis;
+
+    public boolean isComplete() {
+        return failedMeasurements.isEmpty();
+    }
+}
@@ -1,22 +1,22 @@
 package xyz.asitanokibou.data.influxdb.pojo;
 
-import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import xyz.asitanokibou.data.influxdb.InfluxDBUtil;
 
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author aimysaber@gmail.com
  */
 
 @Data
-@Builder
-@AllArgsConstructor
 @NoArgsConstructor
 public class TimedResult<T> {
 
@@ -26,8 +26,70 @@ public class TimedResult<T> {
     private Map<String, String> tags;
     private Instant time;
     private T value;
+    //时间列的epoch值, 精度为precision(见 InfluxDBTemplate#setQueryPrecision), 不需要Instant时直接使用
+    //epoch/precision 与 time 始终一致, 相等性只比较 time
+    @EqualsAndHashCode.Exclude
+    private long epoch;
+    @EqualsAndHashCode.Exclude
+    private TimeUnit precision;
+
+    /**
+     * 只设置了 time 时(如builder)由 time 计算纳秒精度的 epoch
+     */
+    @Builder
+    public TimedResult(String seriesName, String name, Map<String, String> tags, Instant time, T value, long epoch, TimeUnit precision) {
+        this.seriesName = seriesName;
+        this.name = name;
+        this.tags = tags;
+        this.time = time;
+        this.value = value;
+        if (time != null && precision == null) {
+            this.epoch = InfluxDBUtil.toEpoch(time, TimeUnit.NANOSECONDS);
+            this.precision = TimeUnit.NANOSECONDS;
+        } else {
+            this.epoch = epoch;
+            this.precision = precision;
+        }
+    }
+
+    public TimedResult(String seriesName, String name, Map<String, String> tags, Instant time, T value) {
+        this(seriesName, name, tags, time, value, 0, null);
+    }
+
+    /**
+     * 由epoch创建, 第一次调用 {@link #getTime()} 时才创建Instant
+     */
+    public TimedResult(String seriesName, String name, Map<String, String> tags, long epoch, TimeUnit precision, T value) {
+        this(seriesName, name, tags, null, value, epoch, precision);
+    }
+
+    public void setTime(Instant time) {
+        this.time = time;
+        this.epoch = time == null ? 0 : InfluxDBUtil.toEpoch(time, TimeUnit.NANOSECONDS);
+        this.precision = time == null ? null : TimeUnit.NANOSECONDS;
+    }
+
+    /**
+     * 与 {@link #setPrecision(TimeUnit)} 一起使用, time 由 epoch 重新计算
+     */
+    public void setEpoch(long epoch) {
+        this.epoch = epoch;
+        this.time = null;
+    }
+
+    public void setPrecision(TimeUnit precision) {
+        this.precision = precision;
+        this.time = null;
+    }
+
+    public Instant getTime() {
+        if (time == null && precision != null) {
+            time = InfluxDBUtil.toInstant(epoch, precision);
+        }
+        return time;
+    }
 
     public LocalDateTime getLocalTime() {
-        return LocalDateTime.ofInstant(time, ZoneId.systemDefault());
+        return LocalDateTime.ofInstant(getTime(), ZoneId.systemDefault());
     }
 }
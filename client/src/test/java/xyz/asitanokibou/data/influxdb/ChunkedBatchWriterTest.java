@@ -0,0 +1,92 @@
+package xyz.asitanokibou.data.influxdb;
+
+import org.influxdb.dto.Point;
+import org.junit.Test;
+
+import xyz.asitanokibou.data.influxdb.pojo.BatchWriteResult;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author aimysaber@gmail.com
+ */
+public class ChunkedBatchWriterTest {
+
+    private static Point point(String host, Long time) {
+        Point.Builder builder = Point.measurement("cpu").tag("host", host).addField("v", 1.0).addField("s", "a b \"c\"");
+        if (time != null) {
+            builder.time(time, TimeUnit.MILLISECONDS);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void detectsTimestamp() {
+        assertTrue(ChunkedBatchWriter.hasTimestamp(point("a b", 1L).lineProtocol(TimeUnit.NANOSECONDS)));
+        assertFalse(ChunkedBatchWriter.hasTimestamp(point("a b", null).lineProtocol(TimeUnit.NANOSECONDS)));
+        assertFalse(ChunkedBatchWriter.hasTimestamp("cpu\\ x,host=a\\ b v=1,s=\"x \\\" y\""));
+        assertTrue(ChunkedBatchWriter.hasTimestamp("cpu\\ x,host=a\\ b v=1,s=\"x \\\" y\" 1000"));
+    }
+
+    @Test
+    public void onlyTimestampedChunksAreRetryable() {
+        ChunkedBatchWriter writer = new ChunkedBatchWriter(null, 2, Long.MAX_VALUE, 1, Runnable::run);
+        List<ChunkedBatchWriter.Chunk> chunks = writer.split(Arrays.asList(
+                point("a", 1L), point("b", 2L), point("c", 3L), point("d", null), point("e", 5L)));
+        assertEquals(3, chunks.size());
+        assertTrue(chunks.get(0).timestamped);
+        assertFalse(chunks.get(1).timestamped);
+        assertTrue(chunks.get(2).timestamped);
+    }
+
+    @Test
+    public void splitsByPointCount() {
+        ChunkedBatchWriter writer = new ChunkedBatchWriter(null, 2, Long.MAX_VALUE, 1, Runnable::run);
+        List<Point> points = Arrays.asList(point("a", 1L), point("b", 2L), point("c", 3L), point("d", 4L), point("e", 5L));
+        List<ChunkedBatchWriter.Chunk> chunks = writer.split(points);
+        assertEquals(3, chunks.size());
+        assertEquals(Arrays.asList(points.get(0).lineProtocol(TimeUnit.NANOSECONDS), points.get(1).lineProtocol(TimeUnit.NANOSECONDS)),
+                chunks.get(0).lines);
+        assertEquals(2, chunks.get(1).lines.size());
+        assertEquals(1, chunks.get(2).lines.size());
+        long lineBytes = Utils.utf8Length(points.get(4).lineProtocol(TimeUnit.NANOSECONDS)) + 1;
+        assertEquals(lineBytes, chunks.get(2).bytes);
+    }
+
+    @Test
+    public void splitsByBytes() {
+        Point small = point("a", 1L);
+        Point large = point("一二三四五六七八九十", 2L);
+        long smallBytes = Utils.utf8Length(small.lineProtocol(TimeUnit.NANOSECONDS)) + 1;
+        long largeBytes = Utils.utf8Length(large.lineProtocol(TimeUnit.NANOSECONDS)) + 1;
+
+        ChunkedBatchWriter writer = new ChunkedBatchWriter(null, 100, smallBytes * 2, 1, Runnable::run);
+        List<ChunkedBatchWriter.Chunk> chunks = writer.split(Arrays.asList(small, small, small, large, small));
+        assertEquals(4, chunks.size());
+        assertEquals(smallBytes * 2, chunks.get(0).bytes);
+        assertEquals(smallBytes, chunks.get(1).bytes);
+        //超过最大字节数的单个点单独作为一个分片
+        assertEquals(1, chunks.get(2).lines.size());
+        assertEquals(largeBytes, chunks.get(2).bytes);
+        assertEquals(smallBytes, chunks.get(3).bytes);
+    }
+
+    @Test
+    public void writesOnCallerThreadWhenExecutorRejects() {
+        ChunkedBatchWriter writer = new ChunkedBatchWriter(null, 1, Long.MAX_VALUE, 4, command -> {
+            throw new RejectedExecutionException();
+        });
+        BatchWriteResult result = writer.write("db", "rp", Arrays.asList(point("a", 1L), point("b", 2L), point("c", 3L)));
+        assertEquals(3, result.getChunks().size());
+        for (int i = 0; i < 3; i++) {
+            //template为null, 每个分片都写入失败, 但都由调用线程处理过
+            assertEquals(i, result.getChunks().get(i).getIndex());
+            assertNotNull(result.getChunks().get(i).getError());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package xyz.asitanokibou.data.influxdb;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author aimysaber@gmail.com
+ */
+public class GroupByWindowTest {
+
+    private static GroupByWindow window(String start, String end, Duration interval) {
+        return GroupByWindow.builder().start(Instant.parse(start)).end(Instant.parse(end)).interval(interval).build();
+    }
+
+    private static long millis(String instant) {
+        return Instant.parse(instant).toEpochMilli();
+    }
+
+    @Test
+    public void alignsDaysToLocalMidnight() {
+        ZoneId shanghai = ZoneId.of("Asia/Shanghai");
+        GroupByWindow window = window("2020-01-05T10:00:00Z", "2020-01-10T10:00:00Z", Duration.ofDays(1));
+        //本地时间 2020-01-05 18:00 所在分组从本地 00:00 (UTC 前一天 16:00) 开始
+        assertEquals(millis("2020-01-04T16:00:00Z"), window.alignedStartMillis(shanghai));
+        assertEquals(millis("2020-01-09T16:00:00Z"), window.completeEndMillis(millis("2020-01-10T12:00:00Z"), shanghai));
+        //本地时间已经是 2020-01-10, 当天的分组还没有结束
+        assertEquals(millis("2020-01-09T16:00:00Z"), window.completeEndMillis(millis("2020-01-09T17:00:00Z"), shanghai));
+        assertEquals(millis("2020-01-05T00:00:00Z"), window.alignedStartMillis(ZoneOffset.UTC));
+    }
+
+    @Test
+    public void alignsHoursToHalfHourOffset() {
+        ZoneId kolkata = ZoneId.of("Asia/Kolkata");
+        GroupByWindow window = window("2020-01-05T10:10:00Z", "2020-01-05T20:00:00Z", Duration.ofHours(1));
+        assertEquals(millis("2020-01-05T09:30:00Z"), window.alignedStartMillis(kolkata));
+        assertEquals(millis("2020-01-05T11:30:00Z"), window.completeEndMillis(millis("2020-01-05T12:00:00Z"), kolkata));
+    }
+
+    @Test
+    public void alignsAcrossDaylightSavingSwitch() {
+        ZoneId newYork = ZoneId.of("America/New_York");
+        //2020-03-08 02:00 EST 切换到 EDT, 当天的分组只有23小时, 仍从本地 00:00 开始
+        GroupByWindow window = window("2020-03-08T12:00:00Z", "2020-03-10T00:00:00Z", Duration.ofDays(1));
+        assertEquals(millis("2020-03-08T05:00:00Z"), window.alignedStartMillis(newYork));
+        assertEquals(millis("2020-03-09T04:00:00Z"), window.completeEndMillis(millis("2020-03-09T12:00:00Z"), newYork));
+    }
+
+    @Test
+    public void settleDelayHoldsBackLastBucket() {
+        GroupByWindow window = GroupByWindow.builder()
+                .start(Instant.parse("2020-01-01T00:00:00Z"))
+                .end(Instant.parse("2020-01-01T01:00:00Z"))
+                .interval(Duration.ofMinutes(1))
+                .settleDelay(Duration.ofSeconds(30))
+                .build();
+        assertEquals(millis("2020-01-01T00:09:00Z"), window.completeEndMillis(millis("2020-01-01T00:10:20Z"), ZoneOffset.UTC));
+        assertEquals(millis("2020-01-01T00:10:00Z"), window.completeEndMillis(millis("2020-01-01T00:10:30Z"), ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,25 @@
+package xyz.asitanokibou.data.influxdb;
+
+import okhttp3.OkHttpClient;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author aimysaber@gmail.com
+ */
+public class InfluxDBClientFactoryTest {
+
+    @Test
+    public void shutdownLeavesCallerHttpClientOpen() {
+        OkHttpClient okHttpClient = new OkHttpClient();
+        ExecutorService executor = okHttpClient.dispatcher().executorService();
+        InfluxDBClientFactory factory = new InfluxDBClientFactory("http://127.0.0.1:8086");
+        factory.setOkHttpClient(okHttpClient);
+        factory.makeObject();
+        factory.shutdown();
+        assertFalse(executor.isShutdown());
+    }
+}
@@ -0,0 +1,187 @@
+package xyz.asitanokibou.data.influxdb;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.influxdb.InfluxDB;
+import org.junit.After;
+import org.junit.Test;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXException;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXPartialWriteException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author aimysaber@gmail.com
+ */
+public class InfluxDBRoutingDataSourceTest {
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private InfluxDBRoutingDataSource dataSource;
+
+    @After
+    public void tearDown() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+        servers.forEach(server -> server.stop(0));
+    }
+
+    /**
+     * @return 模拟的influxdb节点的url, ping 总是成功, write 返回 writeStatus
+     */
+    private String node(int writeStatus, AtomicInteger writes) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ping", exchange -> {
+            exchange.getResponseHeaders().add("X-Influxdb-Version", "1.8.10");
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.createContext("/write", exchange -> {
+            writes.incrementAndGet();
+            if (writeStatus == 204) {
+                exchange.sendResponseHeaders(204, -1);
+            } else {
+                byte[] body = "{\"error\":\"boom\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(writeStatus, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        servers.add(server);
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static String unreachableNode() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return "http://127.0.0.1:" + socket.getLocalPort();
+        }
+    }
+
+    private static InfluxDBClientPool pool(String url, int maxTotal) {
+        InfluxDBClientFactory factory = new InfluxDBClientFactory(url);
+        factory.setValidationIntervalMillis(0);
+        GenericObjectPoolConfig<InfluxDB> config = new GenericObjectPoolConfig<>();
+        config.setTestOnBorrow(true);
+        config.setMaxTotal(maxTotal);
+        config.setMaxWaitMillis(50);
+        config.setJmxEnabled(false);
+        return new InfluxDBClientPool(factory, config);
+    }
+
+    private InfluxDBTemplate template(String... urls) {
+        List<InfluxDBClientPool> pools = new ArrayList<>();
+        for (String url : urls) {
+            pools.add(pool(url, 8));
+        }
+        dataSource = new InfluxDBRoutingDataSource(pools, 60_000);
+        return new InfluxDBTemplate(dataSource);
+    }
+
+    private static void write(InfluxDBTemplate template) {
+        template.executeWrite(new InfluxDBClientCallbackWithNoResult() {
+            @Override
+            public void executeWithNoResult(InfluxDB client) {
+                client.write("db", "autogen", InfluxDB.ConsistencyLevel.ONE, "cpu v=1 1");
+            }
+        });
+    }
+
+    @Test
+    public void writesToAllNodes() throws IOException {
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+        InfluxDBTemplate template = template(node(204, first), node(204, second));
+        write(template);
+        assertEquals(1, first.get());
+        assertEquals(1, second.get());
+    }
+
+    @Test
+    public void reportsPartialWriteFailure() throws IOException {
+        AtomicInteger writes = new AtomicInteger();
+        String good = node(204, writes);
+        String bad = node(500, writes);
+        InfluxDBTemplate template = template(good, bad);
+        try {
+            write(template);
+            fail("partial failure should be reported");
+        } catch (InfluxDBXPartialWriteException e) {
+            assertEquals(Collections.singletonList(bad), e.getFailedNodes());
+            assertEquals(Collections.singletonList(good), e.getSucceededNodes());
+        }
+
+        dataSource.setWriteSuccessPolicy(InfluxDBRoutingDataSource.WriteSuccessPolicy.ANY);
+        write(template);
+        assertEquals(4, writes.get());
+    }
+
+    @Test
+    public void allNodesFailed() throws IOException {
+        AtomicInteger writes = new AtomicInteger();
+        InfluxDBTemplate template = template(node(500, writes), node(500, writes));
+        try {
+            write(template);
+            fail("write should fail");
+        } catch (InfluxDBXPartialWriteException e) {
+            fail("no node accepted the write");
+        } catch (RuntimeException expected) {
+            assertEquals(1, expected.getSuppressed().length);
+        }
+    }
+
+    @Test
+    public void validationFailureMarksNodeDown() throws IOException {
+        InfluxDBTemplate template = template(unreachableNode(), node(204, new AtomicInteger()));
+        InfluxDBRoutingDataSource.Node down = dataSource.getNodes().get(0);
+        for (int i = 0; i < 2; i++) {
+            //轮询到第一个节点时校验失败, 换到第二个节点
+            template.execute(client -> client.ping());
+        }
+        assertFalse(down.isHealthy());
+        assertTrue(dataSource.getNodes().get(1).isHealthy());
+    }
+
+    @Test
+    public void exhaustedPoolDoesNotMarkNodeDown() throws IOException {
+        dataSource = new InfluxDBRoutingDataSource(Collections.singletonList(pool(node(204, new AtomicInteger()), 1)), 60_000);
+        try (InfluxDB borrowed = dataSource.getReadResource()) {
+            try {
+                dataSource.getReadResource();
+                fail("pool should be exhausted");
+            } catch (InfluxDBXException expected) {
+                //ok
+            }
+            assertTrue(dataSource.getNodes().get(0).isHealthy());
+            assertNotNull(borrowed);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void routingTemplateHasNoSingleDataSource() throws IOException {
+        template(node(204, new AtomicInteger())).getDataSource();
+    }
+
+    @Test
+    public void nodesKeepConfiguredOrder() throws IOException {
+        String first = node(204, new AtomicInteger());
+        String second = node(204, new AtomicInteger());
+        template(first, second);
+        assertEquals(Arrays.asList(first, second), Arrays.asList(
+                dataSource.getNodes().get(0).getName(), dataSource.getNodes().get(1).getName()));
+    }
+}
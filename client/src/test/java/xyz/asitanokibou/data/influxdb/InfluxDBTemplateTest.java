@@ -0,0 +1,90 @@
+package xyz.asitanokibou.data.influxdb;
+
+import org.influxdb.dto.Point;
+import org.junit.Test;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author aimysaber@gmail.com
+ */
+public class InfluxDBTemplateTest {
+
+    private static String rename(String statements, Map<String, Object> argsMap, Map<String, Object> params) {
+        StringBuilder sb = new StringBuilder();
+        InfluxDBTemplate.renameParameters(statements, argsMap, "q0_", sb, params);
+        return sb.toString();
+    }
+
+    private static Map<String, Object> args(Object... keyValues) {
+        Map<String, Object> args = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            args.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return args;
+    }
+
+    @Test
+    public void renamesParameters() {
+        Map<String, Object> params = new HashMap<>();
+        assertEquals("SELECT a FROM x WHERE host = $q0_host AND v > $q0_v_1 OR v < $q0_v_1",
+                rename("SELECT a FROM x WHERE host = $host AND v > $v_1 OR v < $v_1", args("host", "h1", "v_1", 2), params));
+        assertEquals(args("q0_host", "h1", "q0_v_1", 2), params);
+    }
+
+    @Test
+    public void keepsUnknownParameters() {
+        Map<String, Object> params = new HashMap<>();
+        assertEquals("SELECT a FROM x WHERE host = $q0_host AND v > $other AND w = $",
+                rename("SELECT a FROM x WHERE host = $host AND v > $other AND w = $", args("host", "h1"), params));
+        assertEquals(args("q0_host", "h1"), params);
+        assertEquals("SELECT $host", rename("SELECT $host", null, params));
+    }
+
+    @Test
+    public void skipsLiterals() {
+        Map<String, Object> params = new HashMap<>();
+        String statements = "SELECT \"$host\" FROM x WHERE s = '$host' AND t = 'it\\'s $host' AND host =~ /\\/$host/ AND v = $host";
+        assertEquals("SELECT \"$host\" FROM x WHERE s = '$host' AND t = 'it\\'s $host' AND host =~ /\\/$host/ AND v = $q0_host",
+                rename(statements, args("host", "h1"), params));
+        assertEquals(args("q0_host", "h1"), params);
+    }
+
+    @Test
+    public void divisionIsNotRegex() {
+        Map<String, Object> params = new HashMap<>();
+        assertEquals("SELECT a / $q0_n FROM x WHERE b / 2 > $q0_n",
+                rename("SELECT a / $n FROM x WHERE b / 2 > $n", args("n", 2), params));
+        assertEquals("SELECT $q0_n / $q0_n FROM x",
+                rename("SELECT $n / $n FROM x", args("n", 2), params));
+    }
+
+    @Test
+    public void unterminatedLiteral() {
+        Map<String, Object> params = new HashMap<>();
+        assertEquals("SELECT a FROM x WHERE s = '$host", rename("SELECT a FROM x WHERE s = '$host", args("host", "h1"), params));
+        assertTrue(params.isEmpty());
+    }
+
+    @Test
+    public void closeStopsAsyncWriter() {
+        InfluxDBTemplate template = new InfluxDBTemplate((InfluxDBClientPool) null);
+        AsyncPointWriter writer = template.opsForAsyncWrite();
+        template.close();
+        template.close();
+        assertSame(writer, template.opsForAsyncWrite());
+        Point point = Point.measurement("cpu").addField("v", 1.0).build();
+        assertTrue(writer.write("db", "autogen", point).isCompletedExceptionally());
+    }
+
+    @Test(expected = InfluxDBXException.class)
+    public void closedTemplateDoesNotStartWriters() {
+        InfluxDBTemplate template = new InfluxDBTemplate((InfluxDBClientPool) null);
+        template.close();
+        template.opsForAsyncWrite();
+    }
+}
@@ -0,0 +1,84 @@
+package xyz.asitanokibou.data.influxdb;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author aimysaber@gmail.com
+ */
+public class InfluxDBUtilTest {
+
+    @Test
+    public void parsesCommonFormats() {
+        assertEquals(Instant.parse("2020-01-01T00:00:00Z"), InfluxDBUtil.parseRFC3339("2020-01-01T00:00:00Z"));
+        assertEquals(Instant.parse("2020-01-01T00:00:00.123Z"), InfluxDBUtil.parseRFC3339("2020-01-01T00:00:00.123Z"));
+        assertEquals(Instant.parse("2020-01-01T00:00:00.123456789Z"), InfluxDBUtil.parseRFC3339("2020-01-01T08:00:00.123456789+08:00"));
+        assertEquals(Instant.parse("2020-01-01T05:30:00Z"), InfluxDBUtil.parseRFC3339("2020-01-01T00:00:00-05:30"));
+        assertEquals(Instant.parse("2020-02-29T23:59:59.5Z"), InfluxDBUtil.parseRFC3339("2020-02-29T23:59:59.5Z"));
+    }
+
+    @Test
+    public void epochPrecision() {
+        String value = "1969-12-31T23:59:59.999999999Z";
+        assertEquals(-1, InfluxDBUtil.parseRFC3339Epoch(value, TimeUnit.NANOSECONDS));
+        assertEquals(-1, InfluxDBUtil.parseRFC3339Epoch(value, TimeUnit.MILLISECONDS));
+        assertEquals(-1, InfluxDBUtil.parseRFC3339Epoch(value, TimeUnit.SECONDS));
+        assertEquals(1_577_836_800_123L, InfluxDBUtil.parseRFC3339Epoch("2020-01-01T00:00:00.123999Z", TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void fallsBackOutsideFastPathYears() {
+        assertEquals(Instant.parse("2300-01-01T00:00:00Z"), InfluxDBUtil.parseRFC3339("2300-01-01T00:00:00Z"));
+        assertEquals(Instant.parse("1600-01-01T00:00:00Z"), InfluxDBUtil.parseRFC3339("1600-01-01T00:00:00Z"));
+    }
+
+    @Test
+    public void matchesFormatterOnRandomValues() {
+        Random random = new Random(42);
+        long min = Instant.parse("1678-01-01T00:00:00Z").getEpochSecond();
+        long max = Instant.parse("2261-12-31T00:00:00Z").getEpochSecond();
+        for (int i = 0; i < 10_000; i++) {
+            Instant instant = Instant.ofEpochSecond(min + (long) (random.nextDouble() * (max - min)), random.nextInt(1_000_000_000));
+            int offsetMinutes = (random.nextInt(37) - 18) * 30;
+            String value = OffsetDateTime.ofInstant(instant, ZoneOffset.ofTotalSeconds(offsetMinutes * 60)).toString();
+            assertEquals(value, instant, InfluxDBUtil.parseRFC3339(value));
+            assertEquals(value, instant.toEpochMilli(),
+                    InfluxDBUtil.parseRFC3339Epoch(value, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void rejectsInvalidValues() {
+        String[] invalid = {
+                "2020-01-01T0x:00:00Z",
+                "2020-01-01T00:x0:00Z",
+                "2020-01-01T00:00:0xZ",
+                "2020-0x-01T00:00:00Z",
+                "2020-01-0xT00:00:00Z",
+                "20x0-01-01T00:00:00Z",
+                "2020-01-01T00:60:00Z",
+                "2020-01-01T00:00:00.1234567890Z",
+                "2020-01-01T00:00:00+0x:00",
+                "2020-01-01T00:00:00+08:x0",
+                "2020-01-01T00:00:00",
+                "2020-01-01T00:00:00Zx",
+                "2020-01-01 00:00:00Z",
+        };
+        for (String value : invalid) {
+            try {
+                InfluxDBUtil.parseRFC3339Epoch(value, TimeUnit.NANOSECONDS);
+                fail(value + " should not parse");
+            } catch (DateTimeParseException expected) {
+                //ok
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package xyz.asitanokibou.data.influxdb;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author aimysaber@gmail.com
+ */
+public class PreparedInfluxQueryTest {
+
+    @Test
+    public void splitsStatements() {
+        assertEquals(Arrays.asList("SELECT a FROM x", " SELECT b FROM y"),
+                PreparedInfluxQuery.splitStatements("SELECT a FROM x; SELECT b FROM y;; "));
+        assertEquals(1, PreparedInfluxQuery.prepare("SELECT a FROM x").getStatementCount());
+        assertEquals(2, PreparedInfluxQuery.prepare("SELECT a FROM x; SELECT b FROM y;").getStatementCount());
+    }
+
+    @Test
+    public void ignoresSemicolonInLiterals() {
+        assertEquals(1, PreparedInfluxQuery.prepare("SELECT a FROM x WHERE s = 'a;b'").getStatementCount());
+        assertEquals(1, PreparedInfluxQuery.prepare("SELECT a FROM x WHERE s = 'it\\'s;'").getStatementCount());
+        assertEquals(1, PreparedInfluxQuery.prepare("SELECT \"a;b\" FROM x").getStatementCount());
+        assertEquals(1, PreparedInfluxQuery.prepare("SELECT a FROM x WHERE host =~ /a;b/").getStatementCount());
+        assertEquals(1, PreparedInfluxQuery.prepare("SELECT a FROM /x;y/").getStatementCount());
+        assertEquals(2, PreparedInfluxQuery.prepare("SELECT a FROM x WHERE host !~ /\\/;/; SELECT b FROM y").getStatementCount());
+    }
+
+    @Test
+    public void divisionIsNotRegex() {
+        assertEquals(2, PreparedInfluxQuery.prepare("SELECT a / 2 FROM x; SELECT b / 2 FROM y").getStatementCount());
+        assertEquals(2, PreparedInfluxQuery.prepare("SELECT sum(a) / count(a) FROM x; SELECT $v / 2 FROM y").getStatementCount());
+        assertEquals(2, PreparedInfluxQuery.prepare("SELECT a FROM #measurement# WHERE b / 2 > 1; SELECT c FROM y").getStatementCount());
+    }
+
+    @Test
+    public void rendersTimeZonePerStatement() {
+        PreparedInfluxQuery query = PreparedInfluxQuery.prepare("SELECT a FROM #measurement# WHERE s = 'a;b'; SELECT b FROM y");
+        assertEquals("SELECT a FROM cpu WHERE s = 'a;b' tz('UTC'); SELECT b FROM y tz('UTC')",
+                query.render("cpu", " tz('UTC')"));
+        assertEquals("SELECT a FROM cpu WHERE s = 'a;b'; SELECT b FROM y", query.render("cpu", null));
+    }
+}
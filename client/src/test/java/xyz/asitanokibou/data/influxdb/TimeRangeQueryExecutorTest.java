@@ -0,0 +1,64 @@
+package xyz.asitanokibou.data.influxdb;
+
+import org.influxdb.dto.BoundParameterQuery;
+import org.influxdb.dto.QueryResult;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author aimysaber@gmail.com
+ */
+public class TimeRangeQueryExecutorTest {
+
+    @SafeVarargs
+    private static QueryResult result(List<String> columns, List<Object>... rows) {
+        QueryResult.Series series = new QueryResult.Series();
+        series.setName("cpu");
+        series.setColumns(columns);
+        series.setValues(Arrays.asList(rows));
+        QueryResult.Result result = new QueryResult.Result();
+        result.setSeries(Collections.singletonList(series));
+        QueryResult queryResult = new QueryResult();
+        queryResult.setResults(Collections.singletonList(result));
+        return queryResult;
+    }
+
+    private static QueryResult.Series merge(QueryResult... subResults) {
+        List<BoundParameterQuery> queries = new ArrayList<>();
+        for (int i = 0; i < subResults.length; i++) {
+            queries.add(BoundParameterQuery.QueryBuilder.newQuery("SELECT * FROM cpu").forDatabase("db").bind("i", i).create());
+        }
+        TimeRangeQueryExecutor executor = new TimeRangeQueryExecutor(query -> subResults[queries.indexOf(query)], Runnable::run, 2);
+        QueryResult merged = executor.executeAndMerge(queries);
+        assertEquals(1, merged.getResults().get(0).getSeries().size());
+        return merged.getResults().get(0).getSeries().get(0);
+    }
+
+    @Test
+    public void appendsRowsWithSameColumns() {
+        QueryResult.Series series = merge(
+                result(Arrays.asList("time", "a"), Arrays.asList(1L, 1.0)),
+                result(Arrays.asList("time", "a"), Arrays.asList(2L, 2.0)));
+        assertEquals(Arrays.asList("time", "a"), series.getColumns());
+        assertEquals(Arrays.asList(Arrays.asList(1L, 1.0), Arrays.asList(2L, 2.0)), series.getValues());
+    }
+
+    @Test
+    public void mergesDifferentColumnsByName() {
+        QueryResult.Series series = merge(
+                result(Arrays.asList("time", "a", "c"), Arrays.asList(1L, 1.0, "x")),
+                result(Arrays.asList("time", "b", "c"), Arrays.asList(2L, 2.0, "y")),
+                result(Arrays.asList("time", "c"), Arrays.asList(3L, "z")));
+        assertEquals(Arrays.asList("time", "a", "c", "b"), series.getColumns());
+        assertEquals(Arrays.asList(
+                Arrays.asList(1L, 1.0, "x", null),
+                Arrays.asList(2L, null, "y", 2.0),
+                Arrays.asList(3L, null, "z", null)), series.getValues());
+    }
+}
@@ -0,0 +1,49 @@
+package xyz.asitanokibou.data.influxdb;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author aimysaber@gmail.com
+ */
+public class TimeRangeSplitTest {
+
+    @Test
+    public void alignsDaysToLocalMidnight() {
+        TimeRangeSplit split = TimeRangeSplit.builder()
+                .start(Instant.parse("2020-01-01T00:00:00Z"))
+                .end(Instant.parse("2020-01-31T00:00:00Z"))
+                .partitions(4)
+                .alignment(Duration.ofDays(1))
+                .build();
+
+        List<Instant> boundaries = split.boundaries(ZoneId.of("Asia/Shanghai"));
+        assertEquals(5, boundaries.size());
+        for (Instant boundary : boundaries.subList(1, boundaries.size() - 1)) {
+            //本地时间 00:00 为 UTC 16:00
+            assertEquals(16 * 3600, boundary.getEpochSecond() % 86400);
+        }
+    }
+
+    @Test
+    public void utcAlignment() {
+        TimeRangeSplit split = TimeRangeSplit.builder()
+                .start(Instant.parse("2020-01-01T00:00:00Z"))
+                .end(Instant.parse("2020-01-01T10:00:00Z"))
+                .partitions(3)
+                .alignment(Duration.ofHours(1))
+                .build();
+
+        List<Instant> boundaries = split.boundaries();
+        assertEquals(Instant.parse("2020-01-01T00:00:00Z"), boundaries.get(0));
+        assertEquals(Instant.parse("2020-01-01T03:00:00Z"), boundaries.get(1));
+        assertEquals(Instant.parse("2020-01-01T06:00:00Z"), boundaries.get(2));
+        assertEquals(Instant.parse("2020-01-01T10:00:00Z"), boundaries.get(3));
+    }
+}
@@ -0,0 +1,189 @@
+package xyz.asitanokibou.data.influxdb;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import xyz.asitanokibou.data.influxdb.ex.InfluxDBXException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author aimysaber@gmail.com
+ */
+public class WriteSpoolTest {
+
+    //头部9字节 + database(2+2) + retentionPolicy(2+2) + 行数4字节 + 10字节的行 = 31字节
+    private static final int RECORD_BYTES = 31;
+    //每个段放4条记录(末尾保留4个字节)
+    private static final int SEGMENT_BYTES = 128;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private WriteSpool open() throws IOException {
+        return new WriteSpool(folder.getRoot().toPath(), SEGMENT_BYTES, 1024, false);
+    }
+
+    private static String line(int i) {
+        return "cpu v=" + i + " " + i + "\n";
+    }
+
+    private static void append(WriteSpool spool, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            assertTrue(spool.append("db", "rp", line(i), 1));
+        }
+    }
+
+    private static String lines(int from, int to) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            sb.append(line(i));
+        }
+        return sb.toString();
+    }
+
+    private Path[] segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            return files.filter(file -> file.toString().endsWith(".log")).sorted().collect(Collectors.toList()).toArray(new Path[0]);
+        }
+    }
+
+    @Test
+    public void peekAndCommit() throws IOException {
+        try (WriteSpool spool = open()) {
+            assertNull(spool.peek(100));
+            append(spool, 0, 3);
+            assertEquals(3 * RECORD_BYTES, spool.pendingBytes());
+
+            WriteSpool.Batch batch = spool.peek(100);
+            assertEquals("db", batch.getDatabase());
+            assertEquals("rp", batch.getRetentionPolicy());
+            assertEquals(3, batch.getLineCount());
+            assertEquals(lines(0, 3), batch.getLines());
+            assertEquals(3 * RECORD_BYTES, batch.getBytes());
+
+            //没有提交时再次读取同一批
+            assertEquals(lines(0, 3), spool.peek(100).getLines());
+            spool.commit(batch);
+            assertNull(spool.peek(100));
+            assertEquals(0, spool.pendingBytes());
+        }
+    }
+
+    @Test
+    public void batchStopsAtTargetAndMaxLines() throws IOException {
+        try (WriteSpool spool = open()) {
+            append(spool, 0, 2);
+            assertTrue(spool.append("db", null, line(2), 1));
+
+            WriteSpool.Batch first = spool.peek(1);
+            assertEquals(lines(0, 1), first.getLines());
+            spool.commit(first);
+
+            WriteSpool.Batch second = spool.peek(100);
+            assertEquals(lines(1, 2), second.getLines());
+            spool.commit(second);
+
+            WriteSpool.Batch third = spool.peek(100);
+            assertNull(third.getRetentionPolicy());
+            assertEquals(lines(2, 3), third.getLines());
+        }
+    }
+
+    @Test
+    public void rotatesAndReadsAcrossSegments() throws IOException {
+        try (WriteSpool spool = open()) {
+            append(spool, 0, 10);
+            assertEquals(3, spool.segmentCount());
+
+            WriteSpool.Batch batch = spool.peek(6);
+            assertEquals(lines(0, 6), batch.getLines());
+            spool.commit(batch);
+
+            batch = spool.peek(100);
+            assertEquals(lines(6, 10), batch.getLines());
+            //第一个段已经全部完成, 被删除
+            assertEquals(2, spool.segmentCount());
+            assertEquals(2, segmentFiles().length);
+            spool.commit(batch);
+
+            assertNull(spool.peek(100));
+            assertEquals(1, spool.segmentCount());
+        }
+    }
+
+    @Test
+    public void rejectsAppendWhenFull() throws IOException {
+        try (WriteSpool spool = new WriteSpool(folder.getRoot().toPath(), SEGMENT_BYTES, 2 * SEGMENT_BYTES, false)) {
+            append(spool, 0, 8);
+            assertFalse(spool.append("db", "rp", line(8), 1));
+
+            //重放后释放空间(下次读取时删除已完成的段)
+            spool.commit(spool.peek(4));
+            assertEquals(lines(4, 8), spool.peek(100).getLines());
+            assertTrue(spool.append("db", "rp", line(8), 1));
+        }
+    }
+
+    @Test
+    public void recoversPendingRecordsAfterReopen() throws IOException {
+        try (WriteSpool spool = open()) {
+            append(spool, 0, 6);
+            spool.commit(spool.peek(1));
+        }
+        try (WriteSpool spool = open()) {
+            //已完成的记录被跳过, 新的追加写入新段
+            append(spool, 6, 7);
+            assertEquals(3, spool.segmentCount());
+            WriteSpool.Batch batch = spool.peek(100);
+            assertEquals(lines(1, 7), batch.getLines());
+            spool.commit(batch);
+        }
+        try (WriteSpool spool = open()) {
+            assertNull(spool.peek(100));
+            assertEquals(0, spool.segmentCount());
+        }
+    }
+
+    @Test
+    public void truncatesTornRecord() throws IOException {
+        try (WriteSpool spool = open()) {
+            append(spool, 0, 3);
+        }
+        //模拟写第三条记录时崩溃: 长度已经写入但内容不完整
+        try (FileChannel channel = FileChannel.open(segmentFiles()[0], StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'x'}), 2 * RECORD_BYTES + RECORD_BYTES - 3);
+        }
+        try (WriteSpool spool = open()) {
+            WriteSpool.Batch batch = spool.peek(100);
+            assertEquals(lines(0, 2), batch.getLines());
+            spool.commit(batch);
+            assertNull(spool.peek(100));
+        }
+    }
+
+    @Test
+    public void directoryIsLocked() throws IOException {
+        try (WriteSpool spool = open()) {
+            append(spool, 0, 1);
+            try {
+                open();
+                fail("second spool on the same directory should fail");
+            } catch (InfluxDBXException expected) {
+                //ok
+            }
+        }
+        try (WriteSpool spool = open()) {
+            assertEquals(lines(0, 1), spool.peek(100).getLines());
+        }
+    }
+}
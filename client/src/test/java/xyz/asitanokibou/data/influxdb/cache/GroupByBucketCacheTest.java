@@ -0,0 +1,112 @@
+package xyz.asitanokibou.data.influxdb.cache;
+
+import org.junit.Test;
+import xyz.asitanokibou.data.influxdb.pojo.GroupByResult;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author aimysaber@gmail.com
+ */
+public class GroupByBucketCacheTest {
+
+    private static final long INTERVAL = 60_000;
+    private static final QueryCacheKey KEY = new QueryCacheKey("db", "SELECT mean(v) FROM cpu GROUP BY time(1m), host", null, "1m");
+
+    //记录每次查询的范围, 每个host每个间隔返回一个分组, 值为查询的序号
+    private final List<long[]> loads = new ArrayList<>();
+
+    private final BiFunction<Instant, Instant, List<GroupByResult>> loader = (from, to) -> {
+        loads.add(new long[]{from.toEpochMilli(), to.toEpochMilli()});
+        List<GroupByResult> results = new ArrayList<>();
+        for (String host : new String[]{"a", "b"}) {
+            for (long time = from.toEpochMilli(); time < to.toEpochMilli(); time += INTERVAL) {
+                results.add(new GroupByResult("cpu", Collections.singletonMap("host", host), Instant.ofEpochMilli(time),
+                        Collections.singletonMap("mean", loads.size())));
+            }
+        }
+        return results;
+    };
+
+    private static long minute(int n) {
+        return n * INTERVAL;
+    }
+
+    private static void assertBuckets(List<GroupByResult> results, long start, long end, int... loadNumbers) {
+        int perSeries = (int) ((end - start) / INTERVAL);
+        assertEquals(2 * perSeries, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            GroupByResult result = results.get(i);
+            assertEquals(i < perSeries ? "a" : "b", result.getTags().get("host"));
+            assertEquals(start + (i % perSeries) * INTERVAL, result.getTime().toEpochMilli());
+            assertEquals(loadNumbers[i % perSeries], result.getGroupFieldData().get("mean"));
+        }
+    }
+
+    @Test
+    public void fetchesOnlyOpenBucketsAndStitches() {
+        GroupByBucketCache cache = new GroupByBucketCache(10);
+
+        //窗口 [0, 5), 0-3 已经结束
+        List<GroupByResult> first = cache.get(KEY, minute(0), minute(5), minute(4), loader);
+        assertBuckets(first, minute(0), minute(5), 1, 1, 1, 1, 1);
+        assertArrayEquals(new long[]{minute(0), minute(5)}, loads.get(0));
+
+        //窗口移动到 [2, 7): 只查询 [4, 7), 0-1 被淘汰
+        List<GroupByResult> second = cache.get(KEY, minute(2), minute(7), minute(6), loader);
+        assertBuckets(second, minute(2), minute(7), 1, 1, 2, 2, 2);
+        assertArrayEquals(new long[]{minute(4), minute(7)}, loads.get(1));
+
+        assertEquals(1, cache.getFullLoadCount());
+        assertEquals(1, cache.getIncrementalLoadCount());
+        assertEquals(2 * 2, cache.getCachedBucketCount());
+        assertEquals(2 * 5 + 2 * 3, cache.getFetchedBucketCount());
+    }
+
+    @Test
+    public void openBucketIsNotCached() {
+        GroupByBucketCache cache = new GroupByBucketCache(10);
+        cache.get(KEY, minute(0), minute(5), minute(4), loader);
+        //分组4还没有结束, 不能从缓存返回
+        List<GroupByResult> again = cache.get(KEY, minute(0), minute(5), minute(4), loader);
+        assertBuckets(again, minute(0), minute(5), 1, 1, 1, 1, 2);
+        assertArrayEquals(new long[]{minute(4), minute(5)}, loads.get(1));
+    }
+
+    @Test
+    public void windowBeforeCacheReloads() {
+        GroupByBucketCache cache = new GroupByBucketCache(10);
+        cache.get(KEY, minute(10), minute(15), minute(15), loader);
+        List<GroupByResult> earlier = cache.get(KEY, minute(5), minute(12), minute(12), loader);
+        assertBuckets(earlier, minute(5), minute(12), 2, 2, 2, 2, 2, 2, 2);
+        assertArrayEquals(new long[]{minute(5), minute(12)}, loads.get(1));
+        assertEquals(2, cache.getFullLoadCount());
+    }
+
+    @Test
+    public void fullyCachedWindowDoesNotQuery() {
+        GroupByBucketCache cache = new GroupByBucketCache(10);
+        cache.get(KEY, minute(0), minute(5), minute(5), loader);
+        List<GroupByResult> cached = cache.get(KEY, minute(1), minute(5), minute(5), loader);
+        assertBuckets(cached, minute(1), minute(5), 1, 1, 1, 1);
+        assertEquals(1, loads.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntry() {
+        GroupByBucketCache cache = new GroupByBucketCache(1);
+        QueryCacheKey other = new QueryCacheKey("db", "SELECT max(v) FROM cpu GROUP BY time(1m), host", null, "1m");
+        cache.get(KEY, minute(0), minute(5), minute(5), loader);
+        cache.get(other, minute(0), minute(5), minute(5), loader);
+        assertEquals(1, cache.size());
+        cache.get(KEY, minute(0), minute(5), minute(5), loader);
+        assertEquals(3, loads.size());
+        assertEquals(3, cache.getFullLoadCount());
+    }
+}
@@ -0,0 +1,78 @@
+package xyz.asitanokibou.data.influxdb.columnar;
+
+import org.influxdb.dto.QueryResult;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author aimysaber@gmail.com
+ */
+public class ColumnarResultCollectorTest {
+
+    private static Column collect(List<List<Object>> values) {
+        QueryResult.Series s = new QueryResult.Series();
+        s.setName("cpu");
+        s.setColumns(Arrays.asList("time", "v"));
+        s.setValues(values);
+        ColumnarResultCollector collector = new ColumnarResultCollector();
+        collector.call(s);
+        return collector.finish().getSeries().get(0).getColumn("v");
+    }
+
+    @Test
+    public void nullThenWidenToObject() {
+        List<List<Object>> values = new ArrayList<>();
+        values.add(Arrays.asList(0L, null));
+        for (int i = 1; i < 100; i++) {
+            values.add(Arrays.asList((long) i, i + 0.5));
+        }
+        values.add(Arrays.asList(100L, "x"));
+
+        Column column = collect(values);
+        assertEquals(Object.class, column.getType());
+        assertEquals(101, column.size());
+        assertTrue(column.isNull(0));
+        assertNull(column.get(0));
+        for (int i = 1; i < 100; i++) {
+            assertFalse(column.isNull(i));
+            assertEquals(i + 0.5, column.get(i));
+        }
+        assertEquals("x", column.get(100));
+    }
+
+    @Test
+    public void nullThenWidenLongToDouble() {
+        List<List<Object>> values = new ArrayList<>();
+        values.add(Arrays.asList(0L, null));
+        for (int i = 1; i < 100; i++) {
+            values.add(Arrays.asList((long) i, (long) i));
+        }
+        values.add(Arrays.asList(100L, 1.5));
+
+        Column column = collect(values);
+        assertEquals(double.class, column.getType());
+        assertTrue(column.isNull(0));
+        assertTrue(Double.isNaN(column.getDouble(0)));
+        assertEquals(99d, column.getDouble(99), 0);
+        assertEquals(1.5, column.getDouble(100), 0);
+    }
+
+    @Test
+    public void isNullBeyondBitmap() {
+        List<List<Object>> values = new ArrayList<>();
+        values.add(Arrays.asList(0L, null));
+        for (int i = 1; i < 200; i++) {
+            values.add(Arrays.asList((long) i, (double) i));
+        }
+
+        Column column = collect(values);
+        assertTrue(column.isNull(0));
+        assertFalse(column.isNull(64));
+        assertFalse(column.isNull(199));
+    }
+}
@@ -0,0 +1,126 @@
+package xyz.asitanokibou.data.influxdb.mapper;
+
+import org.influxdb.InfluxDBMapperException;
+import org.influxdb.annotation.Column;
+import org.influxdb.annotation.Measurement;
+import org.influxdb.dto.QueryResult;
+import org.influxdb.impl.InfluxDBResultMapper;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author aimysaber@gmail.com
+ */
+public class MeasurementResultMapperTest {
+
+    private final MeasurementResultMapper mapper = new MeasurementResultMapper();
+    private final InfluxDBResultMapper resultMapper = new InfluxDBResultMapper();
+
+    public static class BaseCpu {
+        @Column(name = "host")
+        String baseHost;
+    }
+
+    @Measurement(name = "cpu")
+    public static class Cpu extends BaseCpu {
+        @Column(name = "time")
+        Instant time;
+        @Column(name = "host")
+        String host;
+        @Column(name = "value")
+        double value;
+        @Column(name = "count")
+        Long count;
+    }
+
+    @Measurement(name = "cpu")
+    public static class UnsupportedCpu {
+        @Column(name = "time")
+        Instant time;
+        @Column(name = "amount")
+        BigDecimal amount;
+    }
+
+    @Test
+    public void superclassFieldWinsLikeInfluxDBResultMapper() {
+        QueryResult queryResult = result(series("cpu", Arrays.asList("time", "host", "value", "count"),
+                Arrays.asList("2020-01-01T00:00:00Z", "a", 1.5, 2.0)));
+
+        Cpu cpu = mapper.toPOJO(queryResult, Cpu.class).get(0);
+        Cpu expected = resultMapper.toPOJO(queryResult, Cpu.class).get(0);
+        assertEquals("a", cpu.baseHost);
+        assertNull(cpu.host);
+        assertEquals(expected.baseHost, cpu.baseHost);
+        assertEquals(expected.host, cpu.host);
+        assertEquals(expected.time, cpu.time);
+        assertEquals(expected.value, cpu.value, 0);
+        assertEquals(expected.count, cpu.count);
+    }
+
+    @Test
+    public void unsupportedFieldTypeFailsOnlyWhenMapped() {
+        QueryResult withoutAmount = result(series("cpu", Collections.singletonList("time"),
+                Collections.singletonList("2020-01-01T00:00:00Z")));
+        assertEquals(1, mapper.toPOJO(withoutAmount, UnsupportedCpu.class).size());
+        assertEquals(1, resultMapper.toPOJO(withoutAmount, UnsupportedCpu.class).size());
+
+        QueryResult nullAmount = result(series("cpu", Arrays.asList("time", "amount"),
+                Arrays.asList("2020-01-01T00:00:00Z", null)));
+        assertNull(mapper.toPOJO(nullAmount, UnsupportedCpu.class).get(0).amount);
+
+        QueryResult withAmount = result(series("cpu", Arrays.asList("time", "amount"),
+                Arrays.asList("2020-01-01T00:00:00Z", 1.0)));
+        String expectedMessage = null;
+        try {
+            resultMapper.toPOJO(withAmount, UnsupportedCpu.class);
+            fail();
+        } catch (InfluxDBMapperException e) {
+            expectedMessage = e.getMessage();
+        }
+        try {
+            mapper.toPOJO(withAmount, UnsupportedCpu.class);
+            fail();
+        } catch (InfluxDBMapperException e) {
+            assertEquals(expectedMessage, e.getMessage());
+        }
+    }
+
+    @Test
+    public void seriesWithoutMappedColumnsIsSkipped() {
+        QueryResult queryResult = result(series("cpu", Collections.singletonList("other"), Collections.singletonList(1.0)));
+        assertTrue(resultMapper.toPOJO(queryResult, Cpu.class).isEmpty());
+        assertTrue(mapper.toPOJO(queryResult, Cpu.class).isEmpty());
+    }
+
+    @Test
+    public void numericTimeKeepsPrecision() {
+        QueryResult queryResult = result(series("cpu", Collections.singletonList("time"),
+                Collections.singletonList(1_577_836_800_123_456_789L)));
+        Cpu cpu = mapper.toPOJO(queryResult, Cpu.class, TimeUnit.NANOSECONDS).get(0);
+        assertEquals(Instant.parse("2020-01-01T00:00:00.123456789Z"), cpu.time);
+    }
+
+    private static QueryResult result(QueryResult.Series series) {
+        QueryResult.Result result = new QueryResult.Result();
+        result.setSeries(Collections.singletonList(series));
+        QueryResult queryResult = new QueryResult();
+        queryResult.setResults(Collections.singletonList(result));
+        return queryResult;
+    }
+
+    private static QueryResult.Series series(String name, List<String> columns, List<Object> row) {
+        QueryResult.Series series = new QueryResult.Series();
+        series.setName(name);
+        series.setColumns(columns);
+        series.setValues(Collections.singletonList(row));
+        return series;
+    }
+}
@@ -0,0 +1,45 @@
+package xyz.asitanokibou.data.influxdb.pojo;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author aimysaber@gmail.com
+ */
+public class TimedResultTest {
+
+    private static final Instant TIME = Instant.parse("2020-01-01T00:00:00.123Z");
+
+    @Test
+    public void builderDerivesEpochFromTime() {
+        TimedResult<Double> result = TimedResult.<Double>builder().name("v").time(TIME).value(1.0).build();
+        assertEquals(TimeUnit.NANOSECONDS, result.getPrecision());
+        assertEquals(1_577_836_800_123_000_000L, result.getEpoch());
+    }
+
+    @Test
+    public void setTimeUpdatesEpoch() {
+        TimedResult<Double> result = new TimedResult<>("cpu", "v", null, 0, TimeUnit.MILLISECONDS, 1.0);
+        result.setTime(TIME);
+        assertEquals(TIME, result.getTime());
+        assertEquals(TimeUnit.NANOSECONDS.convert(TIME.toEpochMilli(), TimeUnit.MILLISECONDS), result.getEpoch());
+    }
+
+    @Test
+    public void equalityIgnoresPrecision() {
+        TimedResult<Double> fromInstant = new TimedResult<>("cpu", "v", null, TIME, 1.0);
+        TimedResult<Double> fromEpoch = new TimedResult<>("cpu", "v", null, TIME.toEpochMilli(), TimeUnit.MILLISECONDS, 1.0);
+        assertEquals(fromInstant, fromEpoch);
+        assertEquals(fromInstant.hashCode(), fromEpoch.hashCode());
+
+        GroupByResult g1 = new GroupByResult("cpu", null, TIME, Collections.singletonMap("mean", 1.0));
+        GroupByResult g2 = new GroupByResult("cpu", null, TIME.toEpochMilli(), TimeUnit.MILLISECONDS, Collections.singletonMap("mean", 1.0));
+        assertEquals(g1, g2);
+        assertEquals(1_577_836_800_123_000_000L, GroupByResult.builder().time(TIME).build().getEpoch());
+    }
+}